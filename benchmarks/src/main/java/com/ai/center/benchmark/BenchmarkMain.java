@@ -0,0 +1,27 @@
+package com.ai.center.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基准测试入口：未指定结果格式时以 JSON 写入 jmh-result.json，其余参数原样交给 JMH
+ * 示例: java -jar benchmarks.jar WorkflowRender -rff results/$(git rev-parse --short HEAD).json
+ */
+public class BenchmarkMain {
+
+    private static final String DEFAULT_RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList(args));
+        if (!jmhArgs.contains("-rf")) {
+            jmhArgs.add("-rf");
+            jmhArgs.add("json");
+        }
+        if (!jmhArgs.contains("-rff")) {
+            jmhArgs.add("-rff");
+            jmhArgs.add(DEFAULT_RESULT_FILE);
+        }
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,35 @@
+package com.ai.center.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * 基准测试数据：按真实接口响应结构录制的 JSON（位于 fixtures/）
+ */
+final class Fixtures {
+
+    static final String COMFYUI_HISTORY = "fixtures/comfyui-history.json";
+    static final String COMFYUI_QUEUE = "fixtures/comfyui-queue.json";
+    static final String SOHU_HOT_NEWS = "fixtures/sohu-hot-news.json";
+
+    // comfyui-history.json 中的任务ID
+    static final String HISTORY_PROMPT_ID = "6f1c2a3e-5b7d-4c8e-9a0b-1d2e3f4a5b6c";
+
+    private Fixtures() {
+    }
+
+    /**
+     * 读取 classpath 资源
+     */
+    static byte[] load(String path) {
+        try (InputStream in = Fixtures.class.getClassLoader().getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalStateException("基准测试数据不存在: " + path);
+            }
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取基准测试数据失败: " + path, e);
+        }
+    }
+}
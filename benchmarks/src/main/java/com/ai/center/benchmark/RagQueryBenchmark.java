@@ -0,0 +1,108 @@
+package com.ai.center.benchmark;
+
+import com.ai.center.service.RagService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RAG 查询路径：RagService.query 对内存向量库（SimpleVectorStore）检索 topK
+ * 向量由本地哈希嵌入生成，不经过 Ollama，测得的是查询封装与相似度检索本身的开销
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RagQueryBenchmark {
+
+    private static final int DIMENSIONS = 384;
+
+    @Param({"1000", "10000"})
+    public int documents;
+
+    private RagService ragService;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        VectorStore vectorStore = SimpleVectorStore.builder(new HashingEmbeddingModel()).build();
+        List<Document> batch = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            batch.add(new Document("第" + i + "篇文档：关于" + TOPICS[i % TOPICS.length] + "的说明与案例，编号" + i));
+            if (batch.size() == 1000) {
+                vectorStore.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            vectorStore.add(batch);
+        }
+
+        ragService = new RagService();
+        Field field = RagService.class.getDeclaredField("vectorStore");
+        field.setAccessible(true);
+        field.set(ragService, vectorStore);
+    }
+
+    @Benchmark
+    public List<Document> query() {
+        return ragService.query("向量数据库的索引与检索案例");
+    }
+
+    private static final String[] TOPICS = {"向量数据库", "图像生成", "新闻聚合", "服务监控", "任务调度", "缓存策略"};
+
+    /**
+     * 哈希嵌入：字符二元组哈希到固定维度后归一化，结果确定且无外部依赖
+     */
+    private static final class HashingEmbeddingModel implements EmbeddingModel {
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            List<String> inputs = request.getInstructions();
+            for (int i = 0; i < inputs.size(); i++) {
+                embeddings.add(new Embedding(embed(inputs.get(i)), i));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public float[] embed(String text) {
+            float[] vector = new float[DIMENSIONS];
+            for (int i = 0; i + 1 < text.length(); i++) {
+                int hash = text.charAt(i) * 31 + text.charAt(i + 1);
+                vector[Math.floorMod(hash, DIMENSIONS)] += 1;
+            }
+            double norm = 0;
+            for (float value : vector) {
+                norm += value * value;
+            }
+            float scale = norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < DIMENSIONS; i++) {
+                vector[i] *= scale;
+            }
+            return vector;
+        }
+
+        @Override
+        public int dimensions() {
+            return DIMENSIONS;
+        }
+    }
+}
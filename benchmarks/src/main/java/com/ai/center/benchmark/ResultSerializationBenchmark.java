@@ -0,0 +1,80 @@
+package com.ai.center.benchmark;
+
+import com.ai.center.model.QueueStatusResponse;
+import com.ai.center.model.Result;
+import com.ai.center.model.SohuHotNewsResponse;
+import com.alibaba.fastjson2.JSON;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result 响应封装序列化：Spring MVC 使用 Jackson 输出，fastjson2 作为对照
+ * 三种典型响应：生图结果（图片地址列表）、队列状态（21 个任务）、热闻列表（100 条）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultSerializationBenchmark {
+
+    @Param({"images", "queue", "news"})
+    public String payload;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Result<?> result;
+
+    @Setup
+    public void setup() {
+        result = switch (payload) {
+            case "images" -> Result.ok(List.of(
+                    "/comfyui/image/127.0.0.1:8188/ComfyUI_00001_.png",
+                    "/comfyui/image/127.0.0.1:8188/ComfyUI_00002_.png",
+                    "/comfyui/image/127.0.0.1:8188/ComfyUI_00003_.png",
+                    "/comfyui/image/127.0.0.1:8188/ComfyUI_00004_.png"));
+            case "queue" -> Result.ok(queueStatus());
+            case "news" -> Result.ok(JSON.parseObject(Fixtures.load(Fixtures.SOHU_HOT_NEWS), SohuHotNewsResponse.class)
+                    .getData().getCoze_ark_001().getList());
+            default -> throw new IllegalArgumentException("未知的响应类型: " + payload);
+        };
+    }
+
+    @Benchmark
+    public byte[] jackson() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(result);
+    }
+
+    @Benchmark
+    public byte[] fastjson() {
+        return JSON.toJSONBytes(result);
+    }
+
+    private static QueueStatusResponse queueStatus() {
+        List<QueueStatusResponse.TaskInfo> pending = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            QueueStatusResponse.TaskInfo task = new QueueStatusResponse.TaskInfo();
+            task.setPromptId("6f1c2a3e-5b7d-4c8e-9a0b-" + String.format("%012d", i));
+            task.setTaskType("image_generation");
+            task.setSubmitTime(1792300000000L + i * 1000L);
+            task.setStatus("queued");
+            task.setBackend("127.0.0.1:8188");
+            pending.add(task);
+        }
+        QueueStatusResponse status = new QueueStatusResponse();
+        status.setRunning(List.of(pending.removeFirst()));
+        status.setPending(pending);
+        status.setTotalTasks(20);
+        status.setSystemStatus("busy");
+        status.setMaxConcurrentTasks(1);
+        status.setSnapshotTime(1792300030000L);
+        status.setNodes(List.of());
+        return status;
+    }
+}
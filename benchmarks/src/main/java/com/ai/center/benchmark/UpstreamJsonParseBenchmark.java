@@ -0,0 +1,64 @@
+package com.ai.center.benchmark;
+
+import com.ai.center.model.ComfyUIImage;
+import com.ai.center.model.SohuHotNewsResponse;
+import com.ai.center.util.ComfyUIClientUtil;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上游响应解析：与 UpstreamHttpClient 相同，直接从响应流解析
+ * /history 解析后提取输出图片，/queue 解析后遍历队列项（每项含完整工作流，是最大的响应），
+ * 搜狐热闻解析为 SohuHotNewsResponse
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UpstreamJsonParseBenchmark {
+
+    private byte[] history;
+    private byte[] queue;
+    private byte[] sohuHotNews;
+
+    @Setup
+    public void setup() {
+        history = Fixtures.load(Fixtures.COMFYUI_HISTORY);
+        queue = Fixtures.load(Fixtures.COMFYUI_QUEUE);
+        sohuHotNews = Fixtures.load(Fixtures.SOHU_HOT_NEWS);
+    }
+
+    @Benchmark
+    public List<ComfyUIImage> history() {
+        JSONObject historyObj = JSON.parseObject(new ByteArrayInputStream(history), JSONObject.class);
+        return ComfyUIClientUtil.parseHistoryImages(historyObj, Fixtures.HISTORY_PROMPT_ID);
+    }
+
+    @Benchmark
+    public void queue(Blackhole blackhole) {
+        JSONObject queueObj = JSON.parseObject(new ByteArrayInputStream(queue), JSONObject.class);
+        for (String key : new String[]{"queue_running", "queue_pending"}) {
+            JSONArray items = queueObj.getJSONArray(key);
+            for (int i = 0; i < items.size(); i++) {
+                JSONArray item = items.getJSONArray(i);
+                blackhole.consume(item.getLongValue(0));
+                blackhole.consume(item.getString(1));
+                blackhole.consume(item.getJSONObject(3).getLongValue("create_time"));
+            }
+        }
+    }
+
+    @Benchmark
+    public SohuHotNewsResponse sohuHotNews() {
+        return JSON.parseObject(new ByteArrayInputStream(sohuHotNews), SohuHotNewsResponse.class);
+    }
+}
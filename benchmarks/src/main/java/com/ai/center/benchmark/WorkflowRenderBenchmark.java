@@ -0,0 +1,70 @@
+package com.ai.center.benchmark;
+
+import com.ai.center.util.ComfyUIResultCache;
+import com.ai.center.util.ComfyUIWorkflowTemplate;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 工作流渲染：生图请求提交前的热路径
+ * render* 为预编译模板拼接请求体，workflowKey 为合并/缓存键计算（渲染 + SHA-256），
+ * parseAndSerialize 为逐次解析工作流 JSON 再序列化的做法，作为对照
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkflowRenderBenchmark {
+
+    private static final String WORKFLOW = "comfyui_workflow/image.json";
+
+    private String workflowJson;
+    private ComfyUIWorkflowTemplate template;
+    private Map<String, Object> params;
+
+    @Setup
+    public void setup() {
+        workflowJson = new String(Fixtures.load(WORKFLOW), StandardCharsets.UTF_8);
+        template = ComfyUIWorkflowTemplate.compile("image", workflowJson);
+        params = new HashMap<>();
+        params.put(ComfyUIWorkflowTemplate.PARAM_SEED, 1234567890123L);
+        params.put(ComfyUIWorkflowTemplate.PARAM_PROMPT, "一只在雨夜霓虹街道上行走的橘猫，电影感光影，超高细节");
+        params.put(ComfyUIWorkflowTemplate.PARAM_WIDTH, 768);
+        params.put(ComfyUIWorkflowTemplate.PARAM_HEIGHT, 1344);
+        params.put(ComfyUIWorkflowTemplate.PARAM_STEPS, 4);
+    }
+
+    @Benchmark
+    public byte[] renderRequestBody() {
+        return template.renderRequestBody(params, "tool_client_bench", "6f1c2a3e-5b7d-4c8e-9a0b-1d2e3f4a5b6c");
+    }
+
+    @Benchmark
+    public String workflowKey() {
+        return ComfyUIResultCache.key(template.renderWorkflow(params));
+    }
+
+    @Benchmark
+    public ComfyUIWorkflowTemplate compile() {
+        return ComfyUIWorkflowTemplate.compile("image", workflowJson);
+    }
+
+    @Benchmark
+    public byte[] parseAndSerialize() {
+        JSONObject workflow = JSON.parseObject(workflowJson);
+        workflow.getJSONObject("2").getJSONObject("inputs").put("seed", params.get(ComfyUIWorkflowTemplate.PARAM_SEED));
+        workflow.getJSONObject("3").getJSONObject("inputs").put("prompt", params.get(ComfyUIWorkflowTemplate.PARAM_PROMPT));
+        JSONObject body = new JSONObject();
+        body.put("prompt", workflow);
+        body.put("client_id", "tool_client_bench");
+        return JSON.toJSONBytes(body);
+    }
+}
@@ -0,0 +1,254 @@
+package com.ai.center.loadtest;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ComfyUI 桩节点
+ * 实现服务用到的 /prompt、/queue、/history/{id}、/view 和 /ws：
+ * 提交的任务进入本地队列，由 workers 个渲染线程按“渲染耗时 ± 抖动”模拟执行（真实 ComfyUI 为 1），
+ * 执行过程中向提交方 clientId 的 WebSocket 推送 execution_start / progress / executed / execution_success，
+ * 完成后写入历史，图片数量取工作流中的 batch_size
+ */
+final class ComfyUIStub implements Closeable {
+
+    /**
+     * 桩节点配置
+     * @param renderMillis 单个任务的平均渲染耗时（毫秒）
+     * @param jitter 渲染耗时的随机抖动比例（0 ~ 1）
+     * @param workers 同时渲染的任务数
+     * @param imageBytes 每张图片的字节数
+     */
+    record Settings(long renderMillis, double jitter, int workers, int imageBytes) {
+    }
+
+    // 历史记录保留条数，超出后淘汰最早的任务
+    private static final int HISTORY_LIMIT = 10_000;
+
+    // 无 steps 参数时的默认采样步数
+    private static final int DEFAULT_STEPS = 20;
+
+    private final Settings settings;
+    private final StubHttpServer server;
+    private final byte[] image;
+    private final AtomicInteger number = new AtomicInteger();
+    private final BlockingQueue<Job> pending = new LinkedBlockingQueue<>();
+    private final Map<String, Job> running = new ConcurrentHashMap<>();
+    private final Map<String, JSONObject> history = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JSONObject> eldest) {
+            return size() > HISTORY_LIMIT;
+        }
+    });
+    private final Map<String, Set<StubHttpServer.WebSocket>> sessions = new ConcurrentHashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+
+    private record Job(int number, String promptId, String clientId, int steps, int images) {
+    }
+
+    ComfyUIStub(int port, Settings settings) throws IOException {
+        this.settings = settings;
+        this.image = pngBytes(settings.imageBytes());
+        this.server = new StubHttpServer("comfyui-" + port, port)
+                .route("POST", "/prompt", this::prompt)
+                .route("GET", "/queue", request -> StubHttpServer.Response.json(200, queue().toJSONString()))
+                .route("GET", "/history/*", this::history)
+                .route("GET", "/view", this::view)
+                .webSocket("/ws", this::onOpen);
+    }
+
+    ComfyUIStub start() {
+        server.start();
+        for (int i = 0; i < settings.workers(); i++) {
+            workers.add(Thread.ofPlatform().name("comfyui-stub-worker-" + i).daemon().start(this::work));
+        }
+        return this;
+    }
+
+    String baseUrl() {
+        return server.baseUrl();
+    }
+
+    @Override
+    public void close() throws IOException {
+        workers.forEach(Thread::interrupt);
+        server.close();
+    }
+
+    private StubHttpServer.Response prompt(StubHttpServer.Request request) {
+        JSONObject body = JSON.parseObject(request.body);
+        JSONObject workflow = body == null ? null : body.getJSONObject("prompt");
+        if (workflow == null || workflow.isEmpty()) {
+            return StubHttpServer.Response.json(400, "{\"error\":{\"type\":\"prompt_no_outputs\"},\"node_errors\":{}}");
+        }
+        String promptId = body.getString("prompt_id");
+        if (promptId == null || promptId.isBlank()) {
+            promptId = UUID.randomUUID().toString();
+        }
+        Job job = new Job(number.getAndIncrement(), promptId, body.getString("client_id"),
+                intInput(workflow, "steps", DEFAULT_STEPS), intInput(workflow, "batch_size", 1));
+        pending.add(job);
+        broadcastStatus();
+
+        JSONObject response = new JSONObject();
+        response.put("prompt_id", promptId);
+        response.put("number", job.number());
+        response.put("node_errors", new JSONObject());
+        return StubHttpServer.Response.json(200, response.toJSONString());
+    }
+
+    private StubHttpServer.Response history(StubHttpServer.Request request) {
+        String promptId = request.path.substring("/history/".length());
+        JSONObject result = new JSONObject();
+        JSONObject entry = history.get(promptId);
+        if (entry != null) {
+            result.put(promptId, entry);
+        }
+        return StubHttpServer.Response.json(200, result.toJSONString());
+    }
+
+    private StubHttpServer.Response view(StubHttpServer.Request request) {
+        if (request.query("filename") == null) {
+            return StubHttpServer.Response.json(400, "{\"error\":\"filename required\"}");
+        }
+        // 支持断点续传的 Range: bytes=N-
+        String range = request.header("range");
+        if (range != null && range.startsWith("bytes=") && range.endsWith("-")) {
+            int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            if (start > 0 && start < image.length) {
+                return new StubHttpServer.Response(206, "image/png", Arrays.copyOfRange(image, start, image.length))
+                        .header("Content-Range", "bytes " + start + "-" + (image.length - 1) + "/" + image.length);
+            }
+        }
+        return new StubHttpServer.Response(200, "image/png", image);
+    }
+
+    private void onOpen(StubHttpServer.WebSocket webSocket) {
+        String clientId = Objects.requireNonNullElse(webSocket.request.query("clientId"), "");
+        sessions.computeIfAbsent(clientId, key -> ConcurrentHashMap.newKeySet()).add(webSocket);
+        webSocket.send(statusEvent().toJSONString());
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Job job;
+            try {
+                job = pending.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            running.put(job.promptId(), job);
+            try {
+                execute(job);
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                running.remove(job.promptId());
+                broadcastStatus();
+            }
+        }
+    }
+
+    private void execute(Job job) throws InterruptedException {
+        send(job.clientId(), event("execution_start", job.promptId()));
+        send(job.clientId(), event("executing", job.promptId()).fluentPut("node", "3"));
+
+        double factor = 1 + settings.jitter() * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        long stepMillis = Math.max(0, Math.round(settings.renderMillis() * factor / job.steps()));
+        for (int step = 1; step <= job.steps(); step++) {
+            TimeUnit.MILLISECONDS.sleep(stepMillis);
+            send(job.clientId(), event("progress", job.promptId())
+                    .fluentPut("node", "3").fluentPut("value", step).fluentPut("max", job.steps()));
+        }
+
+        JSONArray images = new JSONArray();
+        for (int i = 0; i < job.images(); i++) {
+            images.add(new JSONObject()
+                    .fluentPut("filename", "ComfyUI_" + job.number() + "_" + i + ".png")
+                    .fluentPut("subfolder", "")
+                    .fluentPut("type", "output"));
+        }
+        JSONObject output = new JSONObject().fluentPut("images", images);
+        history.put(job.promptId(), new JSONObject()
+                .fluentPut("outputs", new JSONObject().fluentPut("9", output))
+                .fluentPut("status", new JSONObject().fluentPut("status_str", "success").fluentPut("completed", true)));
+
+        send(job.clientId(), event("executed", job.promptId()).fluentPut("node", "9").fluentPut("output", output));
+        send(job.clientId(), event("executing", job.promptId()).fluentPut("node", null));
+        send(job.clientId(), event("execution_success", job.promptId()));
+    }
+
+    private JSONObject queue() {
+        JSONArray queueRunning = new JSONArray();
+        running.values().forEach(job -> queueRunning.add(queueItem(job)));
+        JSONArray queuePending = new JSONArray();
+        pending.forEach(job -> queuePending.add(queueItem(job)));
+        return new JSONObject().fluentPut("queue_running", queueRunning).fluentPut("queue_pending", queuePending);
+    }
+
+    /**
+     * 队列项格式: [number, prompt_id, prompt, extra_data, outputs_to_execute]
+     */
+    private static JSONArray queueItem(Job job) {
+        return JSONArray.of(job.number(), job.promptId(), new JSONObject(),
+                new JSONObject().fluentPut("client_id", job.clientId()), JSONArray.of("9"));
+    }
+
+    private JSONObject statusEvent() {
+        JSONObject execInfo = new JSONObject().fluentPut("queue_remaining", pending.size() + running.size());
+        return new JSONObject()
+                .fluentPut("type", "status")
+                .fluentPut("data", new JSONObject().fluentPut("status", new JSONObject().fluentPut("exec_info", execInfo)));
+    }
+
+    private void broadcastStatus() {
+        String message = statusEvent().toJSONString();
+        sessions.values().forEach(sockets -> sockets.removeIf(socket -> !socket.send(message)));
+    }
+
+    private void send(String clientId, JSONObject data) {
+        Set<StubHttpServer.WebSocket> sockets = clientId == null ? null : sessions.get(clientId);
+        if (sockets == null) {
+            return;
+        }
+        String message = new JSONObject().fluentPut("type", data.remove("_type")).fluentPut("data", data).toJSONString();
+        sockets.removeIf(socket -> !socket.send(message));
+    }
+
+    private static JSONObject event(String type, String promptId) {
+        return new JSONObject().fluentPut("_type", type).fluentPut("prompt_id", promptId);
+    }
+
+    /**
+     * 取工作流中任一节点的整数输入
+     */
+    private static int intInput(JSONObject workflow, String name, int defaultValue) {
+        for (String key : workflow.keySet()) {
+            JSONObject node = workflow.getJSONObject(key);
+            JSONObject inputs = node == null ? null : node.getJSONObject("inputs");
+            Object value = inputs == null ? null : inputs.get(name);
+            if (value instanceof Number number && number.intValue() > 0) {
+                return number.intValue();
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * 指定大小的图片内容：PNG 文件头 + 随机字节（服务只转存不解码）
+     */
+    private static byte[] pngBytes(int size) {
+        byte[] bytes = new byte[Math.max(size, 8)];
+        new Random(42).nextBytes(bytes);
+        byte[] signature = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        System.arraycopy(signature, 0, bytes, 0, signature.length);
+        return bytes;
+    }
+}
@@ -0,0 +1,340 @@
+package com.ai.center.loadtest;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+
+/**
+ * 压测驱动
+ * 依次对每个场景（一个接口）做闭环压测：concurrency 个虚拟线程循环发送请求，先预热再计时，
+ * 统计吞吐、延迟分位和错误数；压测期间每秒从服务的 actuator 采样线程数、堆内存和 CPU，记录峰值和均值。
+ * 请求成功的判定为 HTTP 200 且响应体 code 为 200
+ */
+final class LoadDriver {
+
+    /**
+     * 压测场景
+     * @param name 场景名称
+     * @param method 请求方法
+     * @param endpoint 接口路径（报表中的分组）
+     * @param request 按序号生成请求（路径含查询参数，请求体为空时不发送）
+     */
+    record Scenario(String name, String method, String endpoint, LongFunction<Call> request) {
+    }
+
+    record Call(String pathAndQuery, String jsonBody) {
+    }
+
+    /**
+     * 内置场景，覆盖 ComfyUiController、NewsController、RagController 的主要接口
+     * 生图提示词按序号变化，避免命中结果缓存和请求合并
+     */
+    static final Map<String, Scenario> SCENARIOS = new LinkedHashMap<>();
+
+    private static final String[] KEYWORDS = {"科技", "财经", "体育", "汽车", "教育", "健康"};
+
+    static {
+        register(new Scenario("comfyui.generate", "GET", "/comfyui/generate",
+                n -> new Call("/comfyui/generate?prompt=" + encode("a watercolor lighthouse at dusk, variant " + n), null)));
+        register(new Scenario("comfyui.submit", "POST", "/comfyui/submit",
+                n -> new Call("/comfyui/submit?priority=batch&prompt=" + encode("a quiet mountain village, variant " + n), null)));
+        register(new Scenario("comfyui.queue", "GET", "/comfyui/queue",
+                n -> new Call("/comfyui/queue", null)));
+        register(new Scenario("news.hot", "GET", "/news/hot",
+                n -> new Call("/news/hot?count=10", null)));
+        register(new Scenario("news.list", "GET", "/news/list",
+                n -> new Call("/news/list?count=20&keyword=" + encode(KEYWORDS[(int) (n % KEYWORDS.length)]), null)));
+        register(new Scenario("news.search", "GET", "/news/search",
+                n -> new Call("/news/search?count=10&q=" + encode(KEYWORDS[(int) (n % KEYWORDS.length)]), null)));
+        register(new Scenario("rag.add", "POST", "/rag/add",
+                n -> new Call("/rag/add", new JSONObject().fluentPut("documents", JSONArray.of(
+                        new JSONObject().fluentPut("content", "压测写入文档第" + n + "条：关于任务调度与缓存策略的说明")
+                                .fluentPut("metadata", new JSONObject().fluentPut("source", "loadtest")))).toJSONString())));
+        register(new Scenario("rag.query", "GET", "/rag/query",
+                n -> new Call("/rag/query?query=" + encode("如何配置" + KEYWORDS[(int) (n % KEYWORDS.length)] + "相关的缓存策略"), null)));
+    }
+
+    private static void register(Scenario scenario) {
+        SCENARIOS.put(scenario.name(), scenario);
+    }
+
+    // 单个请求的超时（生图接口需要覆盖渲染耗时）
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(120);
+
+    // 报表中保留的错误样例数
+    private static final int ERROR_SAMPLES = 5;
+
+    private final String target;
+    private final String management;
+    private final HttpClient client;
+
+    LoadDriver(String target, String management) {
+        this.target = target;
+        this.management = management;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+    }
+
+    /**
+     * 执行单个场景
+     * @param concurrency 并发请求数
+     * @param warmup 预热时长，结果不计入
+     * @param duration 计时时长
+     * @return 场景结果
+     */
+    JSONObject run(Scenario scenario, int concurrency, Duration warmup, Duration duration) throws InterruptedException {
+        AtomicLong sequence = new AtomicLong();
+        if (!warmup.isZero()) {
+            drive(scenario, concurrency, warmup, sequence, null);
+        }
+        MetricsSampler sampler = new MetricsSampler();
+        Thread samplerThread = Thread.ofVirtual().start(sampler);
+        Stats stats = new Stats();
+        long start = System.nanoTime();
+        drive(scenario, concurrency, duration, sequence, stats);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+        samplerThread.interrupt();
+        samplerThread.join();
+
+        long[] latencies = stats.latencies();
+        Arrays.sort(latencies);
+        JSONObject result = new JSONObject()
+                .fluentPut("name", scenario.name())
+                .fluentPut("method", scenario.method())
+                .fluentPut("endpoint", scenario.endpoint())
+                .fluentPut("concurrency", concurrency)
+                .fluentPut("durationSeconds", round(elapsed))
+                .fluentPut("requests", latencies.length)
+                .fluentPut("errors", stats.errors.get())
+                .fluentPut("throughput", round((latencies.length - stats.errors.get()) / elapsed))
+                .fluentPut("latencyMs", new JSONObject()
+                        .fluentPut("mean", round(mean(latencies) / 1e6))
+                        .fluentPut("p50", round(percentile(latencies, 50) / 1e6))
+                        .fluentPut("p90", round(percentile(latencies, 90) / 1e6))
+                        .fluentPut("p99", round(percentile(latencies, 99) / 1e6))
+                        .fluentPut("max", round(latencies.length == 0 ? 0 : latencies[latencies.length - 1] / 1e6)))
+                .fluentPut("service", sampler.summary());
+        if (!stats.errorSamples.isEmpty()) {
+            result.put("errorSamples", new ArrayList<>(stats.errorSamples));
+        }
+        return result;
+    }
+
+    /**
+     * 服务是否就绪（actuator health 为 UP）
+     */
+    boolean ready() {
+        try {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(management + "/actuator/health"))
+                    .timeout(Duration.ofSeconds(2)).build(), HttpResponse.BodyHandlers.ofString());
+            return response.statusCode() == 200 && response.body().contains("\"UP\"");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private void drive(Scenario scenario, int concurrency, Duration duration, AtomicLong sequence, Stats stats)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + duration.toNanos();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < concurrency; i++) {
+                executor.execute(() -> {
+                    LongList latencies = new LongList();
+                    while (System.nanoTime() < deadline) {
+                        Call call = scenario.request().apply(sequence.getAndIncrement());
+                        long begin = System.nanoTime();
+                        String error = call(scenario.method(), call);
+                        latencies.add(System.nanoTime() - begin);
+                        if (error != null && stats != null) {
+                            stats.error(scenario.endpoint() + " " + error);
+                        }
+                    }
+                    if (stats != null) {
+                        stats.merge(latencies);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 发送请求
+     * @return 失败原因，成功时返回 null
+     */
+    private String call(String method, Call call) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(target + call.pathAndQuery())).timeout(REQUEST_TIMEOUT);
+        if (call.jsonBody() != null) {
+            builder.header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofString(call.jsonBody()));
+        } else {
+            builder.method(method, HttpRequest.BodyPublishers.noBody());
+        }
+        try {
+            HttpResponse<String> response = client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                return "HTTP " + response.statusCode();
+            }
+            JSONObject body = JSON.parseObject(response.body());
+            if (body == null || body.getIntValue("code") != 200) {
+                return body == null ? "空响应" : "code " + body.getIntValue("code") + ": " + body.getString("msg");
+            }
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "interrupted";
+        } catch (Exception e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+    private static final class Stats {
+        private final AtomicLong errors = new AtomicLong();
+        private final Set<String> errorSamples = ConcurrentHashMap.newKeySet();
+        private final List<LongList> latencies = Collections.synchronizedList(new ArrayList<>());
+
+        void error(String message) {
+            errors.incrementAndGet();
+            if (errorSamples.size() < ERROR_SAMPLES) {
+                errorSamples.add(message.length() > 200 ? message.substring(0, 200) : message);
+            }
+        }
+
+        void merge(LongList list) {
+            latencies.add(list);
+        }
+
+        long[] latencies() {
+            int size = latencies.stream().mapToInt(list -> list.size).sum();
+            long[] all = new long[size];
+            int offset = 0;
+            for (LongList list : latencies) {
+                System.arraycopy(list.values, 0, all, offset, list.size);
+                offset += list.size;
+            }
+            return all;
+        }
+    }
+
+    private static final class LongList {
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    /**
+     * 服务资源采样：jvm.threads.live、堆内存（jvm.memory.used{area=heap}）、process.cpu.usage
+     */
+    private final class MetricsSampler implements Runnable {
+        private final List<double[]> samples = new ArrayList<>();
+        private volatile boolean available = true;
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted() && available) {
+                try {
+                    double threads = metric("jvm.threads.live", null);
+                    double heap = metric("jvm.memory.used", "area:heap");
+                    double cpu = metric("process.cpu.usage", null);
+                    synchronized (samples) {
+                        samples.add(new double[]{threads, heap, cpu});
+                    }
+                    TimeUnit.SECONDS.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    // actuator 不可达时只报告客户端数据
+                    available = false;
+                }
+            }
+        }
+
+        private double metric(String name, String tag) throws Exception {
+            String url = management + "/actuator/metrics/" + name + (tag == null ? "" : "?tag=" + encode(tag));
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url))
+                    .timeout(Duration.ofSeconds(2)).build(), HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("读取指标失败: " + name + "，状态码: " + response.statusCode());
+            }
+            return JSON.parseObject(response.body()).getJSONArray("measurements").getJSONObject(0).getDoubleValue("value");
+        }
+
+        JSONObject summary() {
+            synchronized (samples) {
+                if (samples.isEmpty()) {
+                    return null;
+                }
+                DoubleSummaryStatistics threads = samples.stream().mapToDouble(s -> s[0]).summaryStatistics();
+                DoubleSummaryStatistics heap = samples.stream().mapToDouble(s -> s[1] / (1024 * 1024)).summaryStatistics();
+                DoubleSummaryStatistics cpu = samples.stream().mapToDouble(s -> s[2]).summaryStatistics();
+                return new JSONObject()
+                        .fluentPut("samples", samples.size())
+                        .fluentPut("threadsPeak", (long) threads.getMax())
+                        .fluentPut("threadsAvg", round(threads.getAverage()))
+                        .fluentPut("heapPeakMb", round(heap.getMax()))
+                        .fluentPut("heapAvgMb", round(heap.getAverage()))
+                        .fluentPut("cpuPeak", round(cpu.getMax()))
+                        .fluentPut("cpuAvg", round(cpu.getAverage()));
+            }
+        }
+    }
+
+    /**
+     * 控制台报表（threads、heap 为服务端峰值）
+     */
+    static String table(List<JSONObject> results) {
+        StringBuilder table = new StringBuilder(String.format("%-18s %5s %8s %7s %9s %9s %9s %9s %8s %9s%n",
+                "scenario", "conc", "requests", "errors", "ok/s", "p50(ms)", "p99(ms)", "max(ms)", "threads", "heap(MB)"));
+        for (JSONObject result : results) {
+            JSONObject latency = result.getJSONObject("latencyMs");
+            JSONObject service = result.getJSONObject("service");
+            table.append(String.format("%-18s %5d %8d %7d %9.1f %9.1f %9.1f %9.1f %8s %9s%n",
+                    result.getString("name"), result.getIntValue("concurrency"), result.getLongValue("requests"),
+                    result.getLongValue("errors"), result.getDoubleValue("throughput"),
+                    latency.getDoubleValue("p50"), latency.getDoubleValue("p99"), latency.getDoubleValue("max"),
+                    service == null ? "-" : service.getString("threadsPeak"),
+                    service == null ? "-" : service.getString("heapPeakMb")));
+        }
+        return table.toString();
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.min(Math.max(rank - 1, 0), sorted.length - 1)];
+    }
+
+    private static double mean(long[] values) {
+        return values.length == 0 ? 0 : Arrays.stream(values).average().orElse(0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,284 @@
+package com.ai.center.loadtest;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONWriter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端压测入口
+ * <pre>
+ * java -jar loadtest/target/loadtest.jar stubs [桩参数]          只启动桩服务，打印服务需要的启动参数
+ * java -jar loadtest/target/loadtest.jar run   [压测参数]        对已启动的服务压测
+ * java -jar loadtest/target/loadtest.jar all   [桩参数] [压测参数] 启动桩服务和服务进程（service 可执行 jar），压测后退出
+ * </pre>
+ * 参数均为 --名称=值，见 {@link #usage()}；结果输出控制台表格并写入 JSON 报表
+ */
+public final class LoadTestMain {
+
+    private LoadTestMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0 || !Set.of("stubs", "run", "all").contains(args[0])) {
+            System.out.println(usage());
+            return;
+        }
+        Options options = Options.parse(Arrays.copyOfRange(args, 1, args.length));
+        switch (args[0]) {
+            case "stubs" -> {
+                Stubs stubs = Stubs.start(options);
+                System.out.println("桩服务已启动，服务启动参数:");
+                stubs.serviceArgs().forEach(arg -> System.out.println("  " + arg));
+                Runtime.getRuntime().addShutdownHook(new Thread(stubs::close));
+                Thread.currentThread().join();
+            }
+            case "run" -> runDriver(options, null);
+            case "all" -> {
+                try (Stubs stubs = Stubs.start(options); ServiceProcess service = ServiceProcess.start(options, stubs)) {
+                    runDriver(options, stubs.settings());
+                }
+            }
+            default -> throw new IllegalStateException();
+        }
+        System.exit(0);
+    }
+
+    private static void runDriver(Options options, JSONObject stubSettings) throws Exception {
+        String target = options.get("target", "http://127.0.0.1:8786");
+        String management = options.get("management", "http://127.0.0.1:8787");
+        int concurrency = options.getInt("concurrency", 16);
+        Duration duration = Duration.ofSeconds(options.getInt("duration", 30));
+        Duration warmup = Duration.ofSeconds(options.getInt("warmup", 5));
+        String scenarios = options.get("scenarios", String.join(",", LoadDriver.SCENARIOS.keySet()));
+
+        LoadDriver driver = new LoadDriver(target, management);
+        List<JSONObject> results = new ArrayList<>();
+        // 场景格式: 名称[:并发]
+        for (String item : scenarios.split(",")) {
+            String[] parts = item.trim().split(":");
+            LoadDriver.Scenario scenario = LoadDriver.SCENARIOS.get(parts[0]);
+            if (scenario == null) {
+                throw new IllegalArgumentException("未知的压测场景: " + parts[0] + "，可选: " + LoadDriver.SCENARIOS.keySet());
+            }
+            int scenarioConcurrency = parts.length > 1 ? Integer.parseInt(parts[1]) : concurrency;
+            System.out.printf("压测 %s，并发 %d，预热 %d 秒，持续 %d 秒%n",
+                    scenario.name(), scenarioConcurrency, warmup.toSeconds(), duration.toSeconds());
+            results.add(driver.run(scenario, scenarioConcurrency, warmup, duration));
+        }
+
+        System.out.println();
+        System.out.print(LoadDriver.table(results));
+
+        JSONObject report = new JSONObject()
+                .fluentPut("target", target)
+                .fluentPut("finishedAt", Instant.now().toString())
+                .fluentPut("stubs", stubSettings)
+                .fluentPut("scenarios", results);
+        Path output = Paths.get(options.get("output", "loadtest-report.json"));
+        Files.writeString(output, report.toJSONString(JSONWriter.Feature.PrettyFormat));
+        System.out.println("报表已写入: " + output.toAbsolutePath());
+    }
+
+    private static String usage() {
+        return """
+                用法: java -jar loadtest.jar <stubs|run|all> [--名称=值 ...]
+
+                桩参数:
+                  --comfy-nodes=1          ComfyUI 桩节点数（端口从 comfy-port 起递增）
+                  --comfy-port=18188
+                  --comfy-render-ms=3000   单个任务平均渲染耗时
+                  --comfy-jitter=0.2       渲染耗时随机抖动比例
+                  --comfy-workers=1        每个节点同时渲染的任务数
+                  --image-kb=512           每张图片大小
+                  --sohu-port=18081
+                  --sohu-latency-ms=80
+                  --ollama-port=18434
+                  --ollama-latency-ms=30   向量化基础耗时（另加每段输入 2 毫秒）
+                  --embedding-dims=1024
+                  --qdrant-port=16334      gRPC 端口
+                  --qdrant-seed=10000      预置文档数
+
+                压测参数:
+                  --target=http://127.0.0.1:8786
+                  --management=http://127.0.0.1:8787   actuator 地址，用于采样线程数和堆内存
+                  --scenarios=名称[:并发],...          默认全部: %s
+                  --concurrency=16
+                  --warmup=5               预热秒数
+                  --duration=30            每个场景的计时秒数
+                  --output=loadtest-report.json
+
+                all 模式额外参数:
+                  --service-jar=service/target/service-1.0-SNAPSHOT.jar
+                  --service-jvm-args=      服务进程 JVM 参数，空格分隔
+                  --service-startup-timeout=120
+                """.formatted(String.join(",", LoadDriver.SCENARIOS.keySet()));
+    }
+
+    /**
+     * --名称=值 形式的参数
+     */
+    private record Options(Map<String, String> values) {
+
+        static Options parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("参数格式应为 --名称=值: " + arg);
+                }
+                int eq = arg.indexOf('=');
+                values.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+            return new Options(values);
+        }
+
+        String get(String name, String defaultValue) {
+            return values.getOrDefault(name, defaultValue);
+        }
+
+        int getInt(String name, int defaultValue) {
+            return values.containsKey(name) ? Integer.parseInt(values.get(name)) : defaultValue;
+        }
+
+        double getDouble(String name, double defaultValue) {
+            return values.containsKey(name) ? Double.parseDouble(values.get(name)) : defaultValue;
+        }
+    }
+
+    /**
+     * 全部桩服务
+     */
+    private record Stubs(List<ComfyUIStub> comfyNodes, SohuStub sohu, OllamaStub ollama, QdrantStub qdrant,
+                         JSONObject settings) implements Closeable {
+
+        // 与 application.yml 中 spring.ai.vectorstore.qdrant.collection-name 一致
+        private static final String COLLECTION = "rag_vector_store";
+
+        static Stubs start(Options options) throws IOException {
+            int dimensions = options.getInt("embedding-dims", 1024);
+            ComfyUIStub.Settings comfySettings = new ComfyUIStub.Settings(
+                    options.getInt("comfy-render-ms", 3000), options.getDouble("comfy-jitter", 0.2),
+                    options.getInt("comfy-workers", 1), options.getInt("image-kb", 512) * 1024);
+            List<ComfyUIStub> comfyNodes = new ArrayList<>();
+            int comfyPort = options.getInt("comfy-port", 18188);
+            for (int i = 0; i < options.getInt("comfy-nodes", 1); i++) {
+                comfyNodes.add(new ComfyUIStub(comfyPort + i, comfySettings).start());
+            }
+            SohuStub sohu = new SohuStub(options.getInt("sohu-port", 18081), options.getInt("sohu-latency-ms", 80)).start();
+            OllamaStub ollama = new OllamaStub(options.getInt("ollama-port", 18434), dimensions,
+                    options.getInt("ollama-latency-ms", 30), 2).start();
+            QdrantStub qdrant = new QdrantStub(options.getInt("qdrant-port", 16334)).start();
+            int seed = options.getInt("qdrant-seed", 10_000);
+            if (seed > 0) {
+                qdrant.seed(COLLECTION, seed, dimensions);
+            }
+
+            JSONObject settings = new JSONObject()
+                    .fluentPut("comfyNodes", comfyNodes.size())
+                    .fluentPut("comfy", comfySettings)
+                    .fluentPut("sohuLatencyMs", options.getInt("sohu-latency-ms", 80))
+                    .fluentPut("ollamaLatencyMs", options.getInt("ollama-latency-ms", 30))
+                    .fluentPut("embeddingDims", dimensions)
+                    .fluentPut("qdrantSeed", seed);
+            return new Stubs(comfyNodes, sohu, ollama, qdrant, settings);
+        }
+
+        /**
+         * 服务指向桩服务所需的启动参数
+         */
+        List<String> serviceArgs() {
+            String comfyUrls = String.join(",", comfyNodes.stream().map(ComfyUIStub::baseUrl).toList());
+            return List.of(
+                    "--comfyUi.base-url=" + comfyNodes.getFirst().baseUrl(),
+                    "--comfyUi.base-urls=" + comfyUrls,
+                    "--sohu.base-url=" + sohu.baseUrl(),
+                    "--spring.ai.ollama.base-url=" + ollama.baseUrl(),
+                    "--spring.ai.vectorstore.qdrant.host=127.0.0.1",
+                    "--spring.ai.vectorstore.qdrant.port=" + qdrant.port(),
+                    "--spring.ai.vectorstore.qdrant.use-tls=false");
+        }
+
+        @Override
+        public void close() {
+            for (Closeable closeable : concat(comfyNodes, sohu, ollama, qdrant)) {
+                try {
+                    closeable.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        private static List<Closeable> concat(List<? extends Closeable> list, Closeable... others) {
+            List<Closeable> all = new ArrayList<>(list);
+            all.addAll(List.of(others));
+            return all;
+        }
+    }
+
+    /**
+     * all 模式下启动的服务进程：工作目录为临时目录（data/ 下的日志、缓存等不落在仓库中），输出写入其中的 service.log
+     */
+    private record ServiceProcess(Process process) implements Closeable {
+
+        static ServiceProcess start(Options options, Stubs stubs) throws Exception {
+            File jar = new File(options.get("service-jar", "service/target/service-1.0-SNAPSHOT.jar")).getAbsoluteFile();
+            if (!jar.isFile()) {
+                throw new IllegalArgumentException("服务 jar 不存在，请先执行 mvn -pl service -am package: " + jar);
+            }
+            String target = options.get("target", "http://127.0.0.1:8786");
+            String management = options.get("management", "http://127.0.0.1:8787");
+
+            List<String> command = new ArrayList<>();
+            command.add(ProcessHandle.current().info().command().orElse("java"));
+            String jvmArgs = options.get("service-jvm-args", "");
+            if (!jvmArgs.isBlank()) {
+                command.addAll(List.of(jvmArgs.trim().split("\\s+")));
+            }
+            command.addAll(List.of("-jar", jar.getPath(),
+                    "--server.port=" + URI.create(target).getPort(), "--management.server.port=" + URI.create(management).getPort()));
+            command.addAll(stubs.serviceArgs());
+
+            Path workDir = Files.createTempDirectory("loadtest-service");
+            File log = workDir.resolve("service.log").toFile();
+            System.out.println("启动服务，工作目录: " + workDir);
+            Process process = new ProcessBuilder(command).directory(workDir.toFile())
+                    .redirectErrorStream(true).redirectOutput(log).start();
+            ServiceProcess service = new ServiceProcess(process);
+
+            LoadDriver probe = new LoadDriver(target, management);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(options.getInt("service-startup-timeout", 120));
+            while (!probe.ready()) {
+                if (!process.isAlive() || System.nanoTime() > deadline) {
+                    service.close();
+                    throw new IllegalStateException("服务启动失败，日志: " + log);
+                }
+                TimeUnit.MILLISECONDS.sleep(500);
+            }
+            System.out.println("服务已就绪");
+            return service;
+        }
+
+        @Override
+        public void close() {
+            process.destroy();
+            try {
+                if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
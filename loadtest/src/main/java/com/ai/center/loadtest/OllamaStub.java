@@ -0,0 +1,85 @@
+package com.ai.center.loadtest;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ollama 向量化接口桩
+ * POST /api/embed 为每段输入返回 dimensions 维的确定性向量（按字符 bigram 哈希并归一化，相同文本向量相同，
+ * 相近文本余弦相似度较高），响应前等待 latencyMillis + 每段输入 perInputMillis
+ */
+final class OllamaStub implements Closeable {
+
+    private final int dimensions;
+    private final long latencyMillis;
+    private final long perInputMillis;
+    private final StubHttpServer server;
+
+    OllamaStub(int port, int dimensions, long latencyMillis, long perInputMillis) throws IOException {
+        this.dimensions = dimensions;
+        this.latencyMillis = latencyMillis;
+        this.perInputMillis = perInputMillis;
+        this.server = new StubHttpServer("ollama", port)
+                .route("POST", "/api/embed", this::embed)
+                .route("GET", "/api/tags", request -> StubHttpServer.Response.json(200, "{\"models\":[]}"));
+    }
+
+    OllamaStub start() {
+        server.start();
+        return this;
+    }
+
+    String baseUrl() {
+        return server.baseUrl();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private StubHttpServer.Response embed(StubHttpServer.Request request) throws InterruptedException {
+        JSONObject body = JSON.parseObject(request.body);
+        Object input = body.get("input");
+        List<String> inputs = input instanceof JSONArray array ? array.toJavaList(String.class) : List.of(String.valueOf(input));
+        TimeUnit.MILLISECONDS.sleep(latencyMillis + perInputMillis * inputs.size());
+
+        JSONArray embeddings = new JSONArray(inputs.size());
+        for (String text : inputs) {
+            embeddings.add(embedding(text, dimensions));
+        }
+        JSONObject response = new JSONObject()
+                .fluentPut("model", body.getString("model"))
+                .fluentPut("embeddings", embeddings);
+        return StubHttpServer.Response.json(200, response.toJSONString());
+    }
+
+    static float[] embedding(String text, int dimensions) {
+        float[] vector = new float[dimensions];
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i + 1 < bytes.length; i++) {
+            int hash = (bytes[i] * 31 + bytes[i + 1]) * 0x9E3779B1;
+            vector[Math.floorMod(hash, dimensions)] += (hash & 1) == 0 ? 1 : -1;
+        }
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0) {
+            vector[0] = 1;
+            return vector;
+        }
+        float scale = (float) (1 / Math.sqrt(norm));
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,183 @@
+package com.ai.center.loadtest;
+
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.CollectionsGrpc;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+import io.qdrant.client.grpc.PointsGrpc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Qdrant gRPC 桩
+ * 服务通过 QdrantVectorStore 访问 Qdrant，用到集合的 list / create 和点的 upsert / search / delete，
+ * 这里用 Qdrant 客户端自带的 gRPC 服务定义实现这几个方法：向量常驻内存，检索为暴力余弦相似度排序（忽略过滤条件），
+ * 启动时可预置 seedDocuments 条文档，使检索开销接近真实数据量
+ */
+final class QdrantStub implements Closeable {
+
+    private static final String CONTENT_FIELD = "doc_content";
+
+    // 预置文档的主题
+    private static final String[] TOPICS = {"图像生成", "热点新闻", "向量检索", "任务调度", "缓存策略", "连接池", "限流", "监控告警"};
+
+    private record Point(Points.PointId id, float[] vector, Map<String, JsonWithInt.Value> payload) {
+    }
+
+    private final Map<String, Map<Points.PointId, Point>> collections = new ConcurrentHashMap<>();
+    private final Server server;
+
+    QdrantStub(int port) {
+        this.server = NettyServerBuilder.forAddress(new InetSocketAddress("127.0.0.1", port))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .addService(new CollectionsService())
+                .addService(new PointsService())
+                .build();
+    }
+
+    QdrantStub start() throws IOException {
+        server.start();
+        return this;
+    }
+
+    int port() {
+        return server.getPort();
+    }
+
+    /**
+     * 预置文档，向量与 Ollama 桩的算法一致
+     */
+    void seed(String collection, int count, int dimensions) {
+        Map<Points.PointId, Point> points = collection(collection);
+        for (int i = 0; i < count; i++) {
+            String text = "知识库文档第" + i + "条：关于" + TOPICS[i % TOPICS.length] + "的说明，编号 " + i;
+            Points.PointId id = Points.PointId.newBuilder().setUuid(UUID.nameUUIDFromBytes(text.getBytes()).toString()).build();
+            points.put(id, new Point(id, OllamaStub.embedding(text, dimensions),
+                    Map.of(CONTENT_FIELD, JsonWithInt.Value.newBuilder().setStringValue(text).build())));
+        }
+    }
+
+    @Override
+    public void close() {
+        server.shutdownNow();
+        try {
+            server.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Map<Points.PointId, Point> collection(String name) {
+        return collections.computeIfAbsent(name, key -> new ConcurrentHashMap<>());
+    }
+
+    private final class CollectionsService extends CollectionsGrpc.CollectionsImplBase {
+
+        @Override
+        public void list(Collections.ListCollectionsRequest request,
+                         StreamObserver<Collections.ListCollectionsResponse> observer) {
+            Collections.ListCollectionsResponse.Builder response = Collections.ListCollectionsResponse.newBuilder();
+            collections.keySet().forEach(name -> response.addCollections(
+                    Collections.CollectionDescription.newBuilder().setName(name)));
+            observer.onNext(response.build());
+            observer.onCompleted();
+        }
+
+        @Override
+        public void create(Collections.CreateCollection request,
+                           StreamObserver<Collections.CollectionOperationResponse> observer) {
+            boolean created = collections.putIfAbsent(request.getCollectionName(), new ConcurrentHashMap<>()) == null;
+            observer.onNext(Collections.CollectionOperationResponse.newBuilder().setResult(created).build());
+            observer.onCompleted();
+        }
+    }
+
+    private final class PointsService extends PointsGrpc.PointsImplBase {
+
+        @Override
+        public void upsert(Points.UpsertPoints request, StreamObserver<Points.PointsOperationResponse> observer) {
+            Map<Points.PointId, Point> points = collection(request.getCollectionName());
+            for (Points.PointStruct point : request.getPointsList()) {
+                points.put(point.getId(), new Point(point.getId(), vectorOf(point.getVectors().getVector()), point.getPayloadMap()));
+            }
+            observer.onNext(completed());
+            observer.onCompleted();
+        }
+
+        @Override
+        public void delete(Points.DeletePoints request, StreamObserver<Points.PointsOperationResponse> observer) {
+            Map<Points.PointId, Point> points = collection(request.getCollectionName());
+            if (request.getPoints().hasPoints()) {
+                request.getPoints().getPoints().getIdsList().forEach(points::remove);
+            }
+            observer.onNext(completed());
+            observer.onCompleted();
+        }
+
+        @Override
+        public void search(Points.SearchPoints request, StreamObserver<Points.SearchResponse> observer) {
+            float[] query = new float[request.getVectorCount()];
+            for (int i = 0; i < query.length; i++) {
+                query[i] = request.getVector(i);
+            }
+            float threshold = request.hasScoreThreshold() ? request.getScoreThreshold() : Float.NEGATIVE_INFINITY;
+            int limit = (int) Math.max(1, request.getLimit());
+
+            // 按相似度保留前 limit 个
+            PriorityQueue<Points.ScoredPoint> top = new PriorityQueue<>(Comparator.comparingDouble(Points.ScoredPoint::getScore));
+            for (Point point : collection(request.getCollectionName()).values()) {
+                float score = cosine(query, point.vector());
+                if (score < threshold) {
+                    continue;
+                }
+                if (top.size() < limit || score > top.peek().getScore()) {
+                    top.add(Points.ScoredPoint.newBuilder()
+                            .setId(point.id()).setScore(score).putAllPayload(point.payload()).build());
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                }
+            }
+            List<Points.ScoredPoint> result = new ArrayList<>(top);
+            result.sort(Comparator.comparingDouble(Points.ScoredPoint::getScore).reversed());
+            observer.onNext(Points.SearchResponse.newBuilder().addAllResult(result).build());
+            observer.onCompleted();
+        }
+
+        private Points.PointsOperationResponse completed() {
+            return Points.PointsOperationResponse.newBuilder()
+                    .setResult(Points.UpdateResult.newBuilder().setStatus(Points.UpdateStatus.Completed))
+                    .build();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static float[] vectorOf(Points.Vector vector) {
+        List<Float> data = vector.getDense().getDataCount() > 0 ? vector.getDense().getDataList() : vector.getDataList();
+        float[] result = new float[data.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = data.get(i);
+        }
+        return result;
+    }
+
+    private static float cosine(float[] a, float[] b) {
+        int length = Math.min(a.length, b.length);
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return normA == 0 || normB == 0 ? 0 : (float) (dot / Math.sqrt(normA * normB));
+    }
+}
@@ -0,0 +1,64 @@
+package com.ai.center.loadtest;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 搜狐热闻接口桩
+ * GET /blog/outer/temp/feeds/ark?count=N&q=关键词，按 count 返回固定格式的新闻列表，响应前等待 latencyMillis
+ */
+final class SohuStub implements Closeable {
+
+    private static final String API_PATH = "/blog/outer/temp/feeds/ark";
+
+    private final long latencyMillis;
+    private final StubHttpServer server;
+
+    SohuStub(int port, long latencyMillis) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.server = new StubHttpServer("sohu", port).route("GET", API_PATH, this::feed);
+    }
+
+    SohuStub start() {
+        server.start();
+        return this;
+    }
+
+    String baseUrl() {
+        return server.baseUrl();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private StubHttpServer.Response feed(StubHttpServer.Request request) throws InterruptedException {
+        TimeUnit.MILLISECONDS.sleep(latencyMillis);
+        int count = request.query("count") == null ? 10 : Integer.parseInt(request.query("count"));
+        String keyword = request.query("q") == null ? "城市更新" : request.query("q");
+        // 不同关键词的新闻 URL 不同，同一关键词的 URL 稳定
+        int base = 800_000_000 + Math.floorMod(keyword.hashCode(), 10_000) * 1000;
+
+        JSONArray list = new JSONArray(count);
+        for (int i = 0; i < count; i++) {
+            list.add(new JSONObject()
+                    .fluentPut("title", "热点新闻标题第" + i + "条：" + keyword + "的最新进展")
+                    .fluentPut("brief", "这是第" + i + "条新闻的摘要，介绍了事件的背景、进展以及各方观点，供读者快速了解。")
+                    .fluentPut("url", "https://www.sohu.com/a/" + (base + i) + "_" + (12_100_000 + i)));
+        }
+        JSONObject response = new JSONObject()
+                .fluentPut("code", 200)
+                .fluentPut("message", "success")
+                .fluentPut("success", true)
+                .fluentPut("total", count)
+                .fluentPut("traceId", UUID.randomUUID().toString().replace("-", ""))
+                .fluentPut("data", new JSONObject().fluentPut("coze_ark_001", new JSONObject().fluentPut("list", list)));
+        return StubHttpServer.Response.json(200, response.toJSONString());
+    }
+}
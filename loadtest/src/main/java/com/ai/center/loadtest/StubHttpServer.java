@@ -0,0 +1,384 @@
+package com.ai.center.loadtest;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * 桩服务用的最小 HTTP/1.1 服务器
+ * 每个连接一个虚拟线程，支持长连接、Content-Length 和 chunked 请求体以及 WebSocket 升级（仅服务端推送文本帧），
+ * ComfyUI 的 /ws 与 HTTP 接口共用端口，JDK 自带的 HttpServer 不支持升级，因此自行实现
+ */
+final class StubHttpServer implements Closeable {
+
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    /**
+     * 请求处理
+     */
+    interface Handler {
+        Response handle(Request request) throws Exception;
+    }
+
+    private final String name;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<Route> routes = new ArrayList<>();
+    private final Map<String, Consumer<WebSocket>> webSocketRoutes = new ConcurrentHashMap<>();
+
+    StubHttpServer(String name, int port) throws IOException {
+        this.name = name;
+        this.serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * 注册路由，路径以 * 结尾时按前缀匹配
+     */
+    StubHttpServer route(String method, String path, Handler handler) {
+        routes.add(new Route(method, path, handler));
+        return this;
+    }
+
+    /**
+     * 注册 WebSocket 路径，连接建立后回调
+     */
+    StubHttpServer webSocket(String path, Consumer<WebSocket> onOpen) {
+        webSocketRoutes.put(path, onOpen);
+        return this;
+    }
+
+    StubHttpServer start() {
+        Thread.ofPlatform().name("stub-" + name).daemon().start(() -> {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    socket.setTcpNoDelay(true);
+                    executor.execute(() -> serve(socket));
+                } catch (IOException e) {
+                    if (!serverSocket.isClosed()) {
+                        System.err.println("[" + name + "] 接受连接失败: " + e.getMessage());
+                    }
+                }
+            }
+        });
+        return this;
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             InputStream in = new BufferedInputStream(socket.getInputStream());
+             OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+            while (true) {
+                Request request = Request.read(in);
+                if (request == null) {
+                    return;
+                }
+                Consumer<WebSocket> onOpen = webSocketRoutes.get(request.path);
+                if (onOpen != null && "websocket".equalsIgnoreCase(request.header("upgrade"))) {
+                    upgrade(request, in, out, onOpen);
+                    return;
+                }
+                Response response = dispatch(request);
+                response.write(out, "HEAD".equals(request.method));
+                out.flush();
+                if ("close".equalsIgnoreCase(request.header("connection"))) {
+                    return;
+                }
+            }
+        } catch (SocketException | EOFException e) {
+            // 客户端关闭连接
+        } catch (IOException e) {
+            System.err.println("[" + name + "] 连接异常: " + e.getMessage());
+        }
+    }
+
+    private Response dispatch(Request request) {
+        for (Route route : routes) {
+            if (route.matches(request)) {
+                try {
+                    return route.handler.handle(request);
+                } catch (Exception e) {
+                    return Response.json(500, "{\"error\":\"" + e.getClass().getSimpleName() + "\"}");
+                }
+            }
+        }
+        // 预热等 HEAD 请求统一返回 200
+        if ("HEAD".equals(request.method)) {
+            return Response.json(200, "");
+        }
+        return Response.json(404, "{\"error\":\"not found\"}");
+    }
+
+    private void upgrade(Request request, InputStream in, OutputStream out, Consumer<WebSocket> onOpen) throws IOException {
+        String accept;
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            accept = Base64.getEncoder().encodeToString(sha1.digest(
+                    (request.header("sec-websocket-key") + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        WebSocket webSocket = new WebSocket(request, out);
+        onOpen.accept(webSocket);
+        try {
+            // 只处理客户端的关闭帧和 ping，其余帧丢弃
+            while (true) {
+                int first = in.read();
+                int second = in.read();
+                if (first < 0 || second < 0) {
+                    break;
+                }
+                long length = second & 0x7F;
+                if (length == 126) {
+                    length = (in.read() << 8) | in.read();
+                } else if (length == 127) {
+                    length = new DataInputStream(in).readLong();
+                }
+                byte[] mask = (second & 0x80) != 0 ? in.readNBytes(4) : null;
+                byte[] payload = in.readNBytes((int) length);
+                if (mask != null) {
+                    for (int i = 0; i < payload.length; i++) {
+                        payload[i] ^= mask[i % 4];
+                    }
+                }
+                int opcode = first & 0x0F;
+                if (opcode == 0x8) {
+                    webSocket.frame(0x8, payload);
+                    break;
+                } else if (opcode == 0x9) {
+                    webSocket.frame(0xA, payload);
+                }
+            }
+        } finally {
+            webSocket.closed = true;
+        }
+    }
+
+    private record Route(String method, String path, Handler handler) {
+        boolean matches(Request request) {
+            if (!method.equals(request.method)) {
+                return false;
+            }
+            return path.endsWith("*") ? request.path.startsWith(path.substring(0, path.length() - 1)) : path.equals(request.path);
+        }
+    }
+
+    /**
+     * HTTP 请求
+     */
+    static final class Request {
+        final String method;
+        final String path;
+        final Map<String, String> query;
+        final Map<String, String> headers;
+        final byte[] body;
+
+        private Request(String method, String path, Map<String, String> query, Map<String, String> headers, byte[] body) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        String header(String name) {
+            return headers.get(name);
+        }
+
+        String query(String name) {
+            return query.get(name);
+        }
+
+        static Request read(InputStream in) throws IOException {
+            String requestLine = readLine(in);
+            if (requestLine == null) {
+                return null;
+            }
+            String[] parts = requestLine.split(" ");
+            if (parts.length < 2) {
+                throw new IOException("请求行不合法: " + requestLine);
+            }
+            Map<String, String> headers = new HashMap<>();
+            for (String line = readLine(in); line != null && !line.isEmpty(); line = readLine(in)) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+                }
+            }
+            String length = headers.get("content-length");
+            byte[] body;
+            if ("chunked".equalsIgnoreCase(headers.get("transfer-encoding"))) {
+                body = readChunked(in);
+            } else {
+                body = length == null ? new byte[0] : in.readNBytes(Integer.parseInt(length));
+            }
+
+            String target = parts[1];
+            int question = target.indexOf('?');
+            Map<String, String> query = new HashMap<>();
+            if (question >= 0) {
+                for (String pair : target.substring(question + 1).split("&")) {
+                    int eq = pair.indexOf('=');
+                    if (eq > 0) {
+                        query.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+            return new Request(parts[0], question >= 0 ? target.substring(0, question) : target, query, headers, body);
+        }
+
+        private static byte[] readChunked(InputStream in) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            while (true) {
+                String sizeLine = readLine(in);
+                if (sizeLine == null) {
+                    throw new EOFException();
+                }
+                int semicolon = sizeLine.indexOf(';');
+                int size = Integer.parseInt((semicolon >= 0 ? sizeLine.substring(0, semicolon) : sizeLine).trim(), 16);
+                if (size == 0) {
+                    // 跳过 trailer
+                    for (String line = readLine(in); line != null && !line.isEmpty(); line = readLine(in)) {
+                    }
+                    return body.toByteArray();
+                }
+                body.write(in.readNBytes(size));
+                readLine(in);
+            }
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b == '\n') {
+                    break;
+                }
+                if (b != '\r') {
+                    line.write(b);
+                }
+            }
+            return b < 0 && line.size() == 0 ? null : line.toString(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * HTTP 响应
+     */
+    static final class Response {
+        final int status;
+        final String contentType;
+        final byte[] body;
+        final Map<String, String> headers = new LinkedHashMap<>();
+
+        Response(int status, String contentType, byte[] body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        static Response json(int status, String json) {
+            return new Response(status, "application/json", json.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        void write(OutputStream out, boolean headOnly) throws IOException {
+            StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append(' ').append(reason()).append("\r\n")
+                    .append("Content-Type: ").append(contentType).append("\r\n")
+                    .append("Content-Length: ").append(body.length).append("\r\n");
+            headers.forEach((name, value) -> head.append(name).append(": ").append(value).append("\r\n"));
+            out.write(head.append("\r\n").toString().getBytes(StandardCharsets.ISO_8859_1));
+            if (!headOnly) {
+                out.write(body);
+            }
+        }
+
+        private String reason() {
+            return switch (status) {
+                case 200 -> "OK";
+                case 206 -> "Partial Content";
+                case 400 -> "Bad Request";
+                case 404 -> "Not Found";
+                default -> "Status";
+            };
+        }
+    }
+
+    /**
+     * 服务端 WebSocket 连接（只发送文本帧）
+     */
+    static final class WebSocket {
+        final Request request;
+        private final OutputStream out;
+        private volatile boolean closed;
+
+        private WebSocket(Request request, OutputStream out) {
+            this.request = request;
+            this.out = out;
+        }
+
+        boolean isOpen() {
+            return !closed;
+        }
+
+        /**
+         * 发送文本消息，连接已断开时返回 false
+         */
+        boolean send(String text) {
+            try {
+                frame(0x1, text.getBytes(StandardCharsets.UTF_8));
+                return true;
+            } catch (IOException e) {
+                closed = true;
+                return false;
+            }
+        }
+
+        private synchronized void frame(int opcode, byte[] payload) throws IOException {
+            if (closed) {
+                throw new IOException("连接已关闭");
+            }
+            out.write(0x80 | opcode);
+            if (payload.length < 126) {
+                out.write(payload.length);
+            } else if (payload.length < 65536) {
+                out.write(126);
+                out.write(payload.length >>> 8);
+                out.write(payload.length & 0xFF);
+            } else {
+                out.write(127);
+                new DataOutputStream(out).writeLong(payload.length);
+            }
+            out.write(payload);
+            out.flush();
+        }
+    }
+}
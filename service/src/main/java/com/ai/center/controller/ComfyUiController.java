@@ -2,15 +2,39 @@ package com.ai.center.controller;
 
 import cn.hutool.core.util.StrUtil;
 import com.ai.center.model.AsyncTaskResponse;
+import com.ai.center.model.BatchGenerateRequest;
+import com.ai.center.model.BatchStatusResponse;
+import com.ai.center.model.CacheStatsResponse;
+import com.ai.center.model.ImageGenerationParams;
 import com.ai.center.model.QueueStatusResponse;
 import com.ai.center.model.Result;
+import com.ai.center.model.TaskPriority;
 import com.ai.center.model.TaskStatusResponse;
+import com.ai.center.util.ComfyUIBatchManager;
 import com.ai.center.util.ComfyUIClientUtil;
+import com.ai.center.util.ComfyUIImageStore;
+import com.ai.center.util.FileResponder;
+import com.ai.center.util.TaskRejectedException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/comfyui")
@@ -19,37 +43,185 @@ public class ComfyUiController {
     @Autowired
     private ComfyUIClientUtil comfyUIClientUtil;
 
+    @Autowired
+    private ComfyUIBatchManager batchManager;
+
+
+    @Value("${comfyui.default-timeout:60}")
+    private int timeout;
 
+    // SSE 推送连接最长保持时间（毫秒）
+    private static final long STREAM_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * 同步生图（异步完成，不占用 Servlet 线程）
+     * @param params 生图参数：prompt、workflow、seed、deterministic，以及可选的 width、height、steps、cfg、sampler、
+     *               scheduler、negativePrompt、batchSize，未指定时使用工作流默认值
+     */
     @GetMapping("/generate")
-    public Result<List<String>> generate(@RequestParam("prompt") String prompt) {
+    public DeferredResult<Result<List<String>>> generate(ImageGenerationParams params,
+                                                         @RequestHeader(value = "X-Client-Id", required = false) String clientId,
+                                                         HttpServletRequest request, HttpServletResponse servletResponse) {
+        // 生图超时由客户端工具类的调度器控制，这里只兜底
+        DeferredResult<Result<List<String>>> deferred = new DeferredResult<>(
+                TimeUnit.SECONDS.toMillis(timeout + 10L), Result.fail("图像生成超时"));
+        // 输入验证
+        if (StrUtil.isBlank(params.getPrompt()) || params.getPrompt().length() > 1000) {
+            deferred.setResult(Result.fail(400, "提示词不能为空且长度不能超过1000字符"));
+            return deferred;
+        }
+        CompletableFuture<List<String>> future;
         try {
-            // 输入验证
-            if (StrUtil.isBlank(prompt) || prompt.length() > 1000) {
-                return Result.fail(400, "提示词不能为空且长度不能超过1000字符");
-            }
-            return Result.ok(comfyUIClientUtil.generateImage(prompt));
-        } catch (Exception e) {
-            return Result.fail("图像生成失败: " + e.getMessage());
+            future = comfyUIClientUtil.generateImageAsync(params, TaskPriority.INTERACTIVE, clientKey(clientId, request));
+        } catch (TaskRejectedException e) {
+            servletResponse.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            deferred.setResult(Result.fail(Result.ResultCode.TOO_MANY_REQUESTS.getCode(), e.getMessage()));
+            return deferred;
+        } catch (IllegalArgumentException e) {
+            deferred.setResult(Result.fail(400, e.getMessage()));
+            return deferred;
         }
+        future.whenComplete((images, e) -> {
+            if (e == null) {
+                deferred.setResult(Result.ok(images));
+            } else {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                deferred.setResult(Result.fail("图像生成失败: " + cause.getMessage()));
+            }
+        });
+        return deferred;
     }
 
     /**
      * 异步提交图像生成任务
+     * @param priority 优先级：interactive（默认）/ batch
+     * @param clientId 调用方标识，同一优先级内各调用方轮流调度，缺省按来源IP区分
+     * @param params 生图参数，同 /generate
+     * @param callbackUrl 任务完成回调地址
      */
     @PostMapping("/submit")
-    public Result<AsyncTaskResponse> submitAsync(@RequestParam("prompt") String prompt) {
+    public Result<AsyncTaskResponse> submitAsync(ImageGenerationParams params,
+                                                 @RequestParam(value = "priority", required = false) String priority,
+                                                 @RequestParam(value = "callbackUrl", required = false) String callbackUrl,
+                                                 @RequestHeader(value = "X-Client-Id", required = false) String clientId,
+                                                 HttpServletRequest request, HttpServletResponse servletResponse) {
         try {
             // 输入验证
-            if (StrUtil.isBlank(prompt) || prompt.length() > 1000) {
+            if (StrUtil.isBlank(params.getPrompt()) || params.getPrompt().length() > 1000) {
                 return Result.fail(400, "提示词不能为空且长度不能超过1000字符");
             }
-            AsyncTaskResponse response = comfyUIClientUtil.submitTaskAsync(prompt);
+            TaskPriority taskPriority;
+            try {
+                taskPriority = TaskPriority.of(priority, TaskPriority.INTERACTIVE);
+            } catch (IllegalArgumentException e) {
+                return Result.fail(400, "不支持的优先级: " + priority);
+            }
+            AsyncTaskResponse response = comfyUIClientUtil.submitTaskAsync(params, taskPriority, clientKey(clientId, request), StrUtil.emptyToNull(StrUtil.trim(callbackUrl)));
             return Result.ok(response);
+        } catch (TaskRejectedException e) {
+            servletResponse.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            return Result.fail(Result.ResultCode.TOO_MANY_REQUESTS.getCode(), e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return Result.fail(400, e.getMessage());
         } catch (Exception e) {
             return Result.fail("异步提交任务失败: " + e.getMessage());
         }
     }
 
+    /**
+     * 批量生图：任务在服务端流水线提交，立即返回批次ID，结果通过批次查询或推送获取
+     */
+    @PostMapping("/batch")
+    public Result<BatchStatusResponse> submitBatch(@RequestBody BatchGenerateRequest batchRequest,
+                                                   @RequestHeader(value = "X-Client-Id", required = false) String clientId,
+                                                   HttpServletRequest request) {
+        try {
+            List<ImageGenerationParams> items = batchRequest.getItems();
+            if (items == null || items.isEmpty()) {
+                return Result.fail(400, "批量任务不能为空");
+            }
+            for (ImageGenerationParams item : items) {
+                if (item == null || StrUtil.isBlank(item.getPrompt()) || item.getPrompt().length() > 1000) {
+                    return Result.fail(400, "提示词不能为空且长度不能超过1000字符");
+                }
+                comfyUIClientUtil.validateParams(item);
+            }
+            TaskPriority taskPriority;
+            try {
+                taskPriority = TaskPriority.of(batchRequest.getPriority(), TaskPriority.BATCH);
+            } catch (IllegalArgumentException e) {
+                return Result.fail(400, "不支持的优先级: " + batchRequest.getPriority());
+            }
+            return Result.ok(batchManager.submit(items, taskPriority, clientKey(clientId, request)));
+        } catch (IllegalArgumentException e) {
+            return Result.fail(400, e.getMessage());
+        } catch (Exception e) {
+            return Result.fail("批量提交任务失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 查询批次状态
+     */
+    @GetMapping("/batch/{batchId}")
+    public Result<BatchStatusResponse> getBatchStatus(@PathVariable("batchId") String batchId) {
+        try {
+            BatchStatusResponse status = batchManager.getStatus(batchId);
+            if (status == null) {
+                return Result.fail(404, "批次不存在");
+            }
+            return Result.ok(status);
+        } catch (Exception e) {
+            return Result.fail("查询批次状态失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 批次进度推送（SSE），每个任务结束推送一次批次状态，全部结束后关闭连接
+     */
+    @GetMapping(value = "/batch/{batchId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamBatchStatus(@PathVariable("batchId") String batchId) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT);
+        ExecutorService sender = Executors.newSingleThreadExecutor(Thread.ofVirtual().factory());
+        Consumer<BatchStatusResponse> push = status -> sender.execute(() -> sendBatchStatus(emitter, status));
+        Runnable unsubscribe = batchManager.subscribe(batchId, push);
+        if (unsubscribe == null) {
+            sender.shutdown();
+            emitter.completeWithError(new IllegalArgumentException("批次不存在"));
+            return emitter;
+        }
+        Runnable cleanup = () -> {
+            unsubscribe.run();
+            sender.shutdown();
+        };
+        emitter.onCompletion(cleanup);
+        emitter.onTimeout(cleanup);
+        emitter.onError(e -> cleanup.run());
+
+        // 先订阅再推送当前状态，避免漏掉两者之间的事件
+        push.accept(batchManager.getStatus(batchId));
+        return emitter;
+    }
+
+    private void sendBatchStatus(SseEmitter emitter, BatchStatusResponse status) {
+        try {
+            boolean completed = "completed".equals(status.getStatus());
+            emitter.send(SseEmitter.event().name(completed ? "completed" : "progress").data(status, MediaType.APPLICATION_JSON));
+            if (completed) {
+                emitter.complete();
+            }
+        } catch (Exception e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 调用方标识：优先取 X-Client-Id 请求头，否则取来源IP
+     */
+    private String clientKey(String clientId, HttpServletRequest request) {
+        return StrUtil.isNotBlank(clientId) ? clientId : request.getRemoteAddr();
+    }
+
     /**
      * 查询任务状态
      */
@@ -66,6 +238,108 @@ public class ComfyUiController {
         }
     }
 
+    /**
+     * 任务状态推送（SSE），实时推送排队位置、采样进度和最终图片地址，任务结束后关闭连接
+     */
+    @GetMapping(value = "/stream/{taskId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamTaskStatus(@PathVariable("taskId") String taskId) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT);
+        if (StrUtil.isBlank(taskId)) {
+            emitter.completeWithError(new IllegalArgumentException("任务ID不能为空"));
+            return emitter;
+        }
+
+        // 状态事件在 WebSocket 线程上产生，按连接串行交给虚拟线程发送，慢客户端不阻塞事件分发
+        ExecutorService sender = Executors.newSingleThreadExecutor(Thread.ofVirtual().factory());
+        Consumer<TaskStatusResponse> push = status -> sender.execute(() -> sendStatus(emitter, status));
+        Runnable unsubscribe = comfyUIClientUtil.subscribeTaskStatus(taskId, push);
+        Runnable cleanup = () -> {
+            if (unsubscribe != null) {
+                unsubscribe.run();
+            }
+            sender.shutdown();
+        };
+        emitter.onCompletion(cleanup);
+        emitter.onTimeout(cleanup);
+        emitter.onError(e -> cleanup.run());
+
+        // 先订阅再推送当前状态，避免漏掉两者之间的事件
+        TaskStatusResponse current = comfyUIClientUtil.queryTaskStatus(taskId);
+        push.accept(current);
+        if (unsubscribe == null && !current.isFinished()) {
+            // 未被跟踪的任务无法接收实时事件
+            sender.execute(emitter::complete);
+        }
+        return emitter;
+    }
+
+    private void sendStatus(SseEmitter emitter, TaskStatusResponse status) {
+        try {
+            String event = status.isFinished() ? status.getStatus() : "status";
+            emitter.send(SseEmitter.event().name(event).data(status, MediaType.APPLICATION_JSON));
+            if (status.isFinished()) {
+                emitter.complete();
+            }
+        } catch (Exception e) {
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 图片代理：首次访问从生成图片的节点下载到本地磁盘，之后直接从磁盘输出，支持 Range 和 ETag
+     * @param backend 节点ID，为空时使用默认节点
+     * @param subfolder 子目录
+     * @param type 图片类型，默认 output
+     */
+    @GetMapping("/image/{filename}")
+    public void getImage(@PathVariable("filename") String filename,
+                         @RequestParam(value = "backend", required = false) String backend,
+                         @RequestParam(value = "subfolder", required = false) String subfolder,
+                         @RequestParam(value = "type", required = false) String type,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path file;
+        try {
+            file = comfyUIClientUtil.fetchImage(backend, filename, subfolder, type);
+        } catch (IllegalArgumentException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+            return;
+        } catch (Exception e) {
+            response.sendError(HttpServletResponse.SC_BAD_GATEWAY, "获取图片失败: " + e.getMessage());
+            return;
+        }
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        FileResponder.serve(file, ComfyUIImageStore.etag(file), request, response);
+    }
+
+    /**
+     * 缓存图片（内容寻址，内容不会变化）
+     */
+    @GetMapping("/cache/{key}/{filename}")
+    public void getCachedImage(@PathVariable("key") String key, @PathVariable("filename") String filename,
+                               HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Path file = comfyUIClientUtil.resolveCachedImage(key, filename);
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        FileResponder.serve(file, "\"" + key + "-" + filename + "\"", request, response);
+    }
+
+    /**
+     * 生图结果缓存统计（含命中率）
+     */
+    @GetMapping("/cache/stats")
+    public Result<CacheStatsResponse> getCacheStats() {
+        try {
+            return Result.ok(comfyUIClientUtil.getCacheStats());
+        } catch (Exception e) {
+            return Result.fail("查询缓存统计失败: " + e.getMessage());
+        }
+    }
+
     /**
      * 查询队列状态
      */
@@ -78,4 +352,27 @@ public class ComfyUiController {
             return Result.fail("查询队列状态失败: " + e.getMessage());
         }
     }
+
+    /**
+     * 查询可用工作流
+     */
+    @GetMapping("/workflows")
+    public Result<Map<String, Object>> listWorkflows() {
+        return Result.ok(comfyUIClientUtil.listWorkflows());
+    }
+
+    /**
+     * 查询工作流支持的生图参数、默认值及上限
+     * @param workflow 工作流名称，为空时为默认工作流
+     */
+    @GetMapping("/params")
+    public Result<Map<String, Object>> getWorkflowParams(@RequestParam(value = "workflow", required = false) String workflow) {
+        try {
+            return Result.ok(comfyUIClientUtil.getWorkflowParams(workflow));
+        } catch (IllegalArgumentException e) {
+            return Result.fail(404, e.getMessage());
+        } catch (Exception e) {
+            return Result.fail("查询生图参数失败: " + e.getMessage());
+        }
+    }
 }
@@ -3,7 +3,7 @@ package com.ai.center.controller;
 import cn.hutool.core.util.StrUtil;
 import com.ai.center.model.Result;
 import com.ai.center.model.SohuHotNewsResponse;
-import com.ai.center.util.SohuHotNewsClient;
+import com.ai.center.service.NewsService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
@@ -12,14 +12,14 @@ import java.util.List;
 
 /**
  * 新闻资讯控制器
- * 提供搜狐热闻获取相关的API接口
+ * 提供搜狐热闻获取相关的API接口，数据来自后台采集的本地热闻库（尚无采集结果时直接请求搜狐）
  */
 @RestController
 @RequestMapping("/news")
 public class NewsController {
 
     @Autowired
-    private SohuHotNewsClient sohuHotNewsClient;
+    private NewsService newsService;
 
 
     /**
@@ -39,7 +39,7 @@ public class NewsController {
                 return Result.fail(400, "搜索关键词长度不能超过100字符");
             }
             
-            SohuHotNewsResponse response = sohuHotNewsClient.getHotNews(count, keyword);
+            SohuHotNewsResponse response = newsService.getHotNews(count, keyword);
             return Result.ok(response);
             
         } catch (Exception e) {
@@ -64,7 +64,7 @@ public class NewsController {
                 return Result.fail(400, "搜索关键词长度不能超过100字符");
             }
             
-            List<SohuHotNewsResponse.NewsItem> newsList = sohuHotNewsClient.getNewsList(count, keyword);
+            List<SohuHotNewsResponse.NewsItem> newsList = newsService.getNewsList(count, keyword);
             return Result.ok(newsList);
             
         } catch (Exception e) {
@@ -78,7 +78,7 @@ public class NewsController {
     @GetMapping("/latest")
     public Result<SohuHotNewsResponse> getLatestNews() {
         try {
-            SohuHotNewsResponse response = sohuHotNewsClient.getHotNews();
+            SohuHotNewsResponse response = newsService.getLatestNews();
             return Result.ok(response);
             
         } catch (Exception e) {
@@ -108,7 +108,7 @@ public class NewsController {
             }
             
             // 使用分类作为关键词进行搜索
-            SohuHotNewsResponse response = sohuHotNewsClient.getHotNews(count, category);
+            SohuHotNewsResponse response = newsService.getHotNews(count, category);
             return Result.ok(response);
             
         } catch (Exception e) {
@@ -118,6 +118,7 @@ public class NewsController {
 
     /**
      * 搜索新闻
+     * 启用后台采集时，不在采集关键词中的搜索词会在本地全部新闻的标题和摘要中逐条匹配
      */
     @GetMapping("/search")
     public Result<SohuHotNewsResponse> searchNews(
@@ -137,7 +138,7 @@ public class NewsController {
                 return Result.fail(400, "新闻条数必须在1-50之间");
             }
             
-            SohuHotNewsResponse response = sohuHotNewsClient.getHotNews(count, query.trim());
+            SohuHotNewsResponse response = newsService.getHotNews(count, query.trim());
             return Result.ok(response);
             
         } catch (Exception e) {
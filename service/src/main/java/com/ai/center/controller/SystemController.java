@@ -0,0 +1,35 @@
+package com.ai.center.controller;
+
+import com.ai.center.model.Result;
+import com.ai.center.model.UpstreamStats;
+import com.ai.center.util.UpstreamHttpClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * 系统状态控制器
+ * 提供上游连接池等运行状态查询接口
+ */
+@RestController
+@RequestMapping("/system")
+public class SystemController {
+
+    @Autowired
+    private UpstreamHttpClient upstreamHttpClient;
+
+    /**
+     * 上游连接池统计
+     */
+    @GetMapping("/upstreams")
+    public Result<List<UpstreamStats>> getUpstreams() {
+        try {
+            return Result.ok(upstreamHttpClient.getStats());
+        } catch (Exception e) {
+            return Result.fail("查询上游状态失败: " + e.getMessage());
+        }
+    }
+}
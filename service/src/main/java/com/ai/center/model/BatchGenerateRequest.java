@@ -0,0 +1,26 @@
+package com.ai.center.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批量生图请求
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchGenerateRequest {
+
+    /**
+     * 生图参数列表
+     */
+    private List<ImageGenerationParams> items;
+
+    /**
+     * 优先级，默认 batch
+     */
+    private String priority;
+}
@@ -0,0 +1,99 @@
+package com.ai.center.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 批量生图状态响应模型
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchStatusResponse {
+
+    /**
+     * 批次ID
+     */
+    private String batchId;
+
+    /**
+     * 批次状态：running / completed
+     */
+    private String status;
+
+    /**
+     * 任务总数
+     */
+    private int total;
+
+    /**
+     * 已成功数
+     */
+    private int succeeded;
+
+    /**
+     * 已失败数
+     */
+    private int failed;
+
+    /**
+     * 创建时间（毫秒时间戳）
+     */
+    private long createdAt;
+
+    /**
+     * 完成时间（毫秒时间戳），未完成为0
+     */
+    private long completedAt;
+
+    /**
+     * 各任务结果
+     */
+    private List<ItemResult> items;
+
+    /**
+     * 单个任务结果
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ItemResult {
+        /**
+         * 在批次中的序号
+         */
+        private int index;
+
+        /**
+         * 提示词
+         */
+        private String prompt;
+
+        /**
+         * 任务ID，尚未提交时为空
+         */
+        private String taskId;
+
+        /**
+         * 任务状态：waiting（未提交）/ pending / running / completed / error
+         */
+        private String status;
+
+        /**
+         * 任务进度（百分比）
+         */
+        private double progress;
+
+        /**
+         * 生成的图片访问地址列表
+         */
+        private List<String> imageUrls;
+
+        /**
+         * 错误信息
+         */
+        private String error;
+    }
+}
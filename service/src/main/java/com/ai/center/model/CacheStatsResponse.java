@@ -0,0 +1,49 @@
+package com.ai.center.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 生图结果缓存统计
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheStatsResponse {
+
+    /**
+     * 缓存条目数
+     */
+    private int entries;
+
+    /**
+     * 最大条目数
+     */
+    private int maxEntries;
+
+    /**
+     * 条目有效期（小时）
+     */
+    private long ttlHours;
+
+    /**
+     * 命中次数
+     */
+    private long hits;
+
+    /**
+     * 未命中次数
+     */
+    private long misses;
+
+    /**
+     * 命中率（0-1）
+     */
+    private double hitRate;
+
+    /**
+     * 合并到进行中相同任务的请求数
+     */
+    private long deduplicated;
+}
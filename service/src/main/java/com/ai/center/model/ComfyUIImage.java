@@ -0,0 +1,29 @@
+package com.ai.center.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * ComfyUI 输出图片信息
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ComfyUIImage {
+
+    /**
+     * 文件名
+     */
+    private String filename;
+
+    /**
+     * 子目录
+     */
+    private String subfolder;
+
+    /**
+     * 图片类型（output/temp/input）
+     */
+    private String type;
+}
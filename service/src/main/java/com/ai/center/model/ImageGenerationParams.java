@@ -0,0 +1,80 @@
+package com.ai.center.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 生图参数
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageGenerationParams {
+
+    /**
+     * 提示词
+     */
+    private String prompt;
+
+    /**
+     * 工作流名称（如 preview、final），为空时使用默认工作流
+     */
+    private String workflow;
+
+    /**
+     * 随机种子，为空时随机生成（确定性模式下由提示词派生）
+     */
+    private Long seed;
+
+    /**
+     * 确定性模式：相同工作流参数复用缓存结果，不再重复生成
+     */
+    private boolean deterministic;
+
+    /**
+     * 反向提示词，为空时使用工作流默认值
+     */
+    private String negativePrompt;
+
+    /**
+     * 图片宽度（像素，8的倍数），为空时使用工作流默认值
+     */
+    private Integer width;
+
+    /**
+     * 图片高度（像素，8的倍数），为空时使用工作流默认值
+     */
+    private Integer height;
+
+    /**
+     * 采样步数，为空时使用工作流默认值
+     */
+    private Integer steps;
+
+    /**
+     * CFG 引导系数，为空时使用工作流默认值
+     */
+    private Double cfg;
+
+    /**
+     * 采样器名称，为空时使用工作流默认值
+     */
+    private String sampler;
+
+    /**
+     * 调度器名称，为空时使用工作流默认值
+     */
+    private String scheduler;
+
+    /**
+     * 一次执行生成的图片数，为空时使用工作流默认值
+     */
+    private Integer batchSize;
+
+    public static ImageGenerationParams of(String prompt) {
+        ImageGenerationParams params = new ImageGenerationParams();
+        params.setPrompt(prompt);
+        return params;
+    }
+}
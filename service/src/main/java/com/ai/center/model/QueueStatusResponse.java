@@ -5,6 +5,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * ComfyUI队列状态响应模型
@@ -30,7 +31,7 @@ public class QueueStatusResponse {
     private int totalTasks;
     
     /**
-     * 系统状态
+     * 系统状态（idle / busy / degraded：部分节点查询失败）
      */
     private String systemStatus;
     
@@ -39,6 +40,21 @@ public class QueueStatusResponse {
      */
     private int maxConcurrentTasks;
     
+    /**
+     * 队列快照时间（毫秒时间戳）
+     */
+    private long snapshotTime;
+    
+    /**
+     * 各节点状态
+     */
+    private List<NodeStatus> nodes;
+    
+    /**
+     * 本地调度队列状态
+     */
+    private SchedulerStatus scheduler;
+    
     /**
      * 任务信息
      */
@@ -75,6 +91,107 @@ public class QueueStatusResponse {
          * 任务状态
          */
         private String status;
+        
+        /**
+         * 所在节点ID
+         */
+        private String backend;
+    }
+    
+    /**
+     * 节点状态
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class NodeStatus {
+        /**
+         * 节点ID
+         */
+        private String backend;
+        
+        /**
+         * 节点地址
+         */
+        private String baseUrl;
+        
+        /**
+         * 是否健康
+         */
+        private boolean healthy;
+        
+        /**
+         * 事件连接是否在线
+         */
+        private boolean connected;
+        
+        /**
+         * 正在执行的任务数
+         */
+        private int running;
+        
+        /**
+         * 等待中的任务数
+         */
+        private int pending;
+        
+        /**
+         * 最大并发任务数
+         */
+        private int maxConcurrentTasks;
+        
+        /**
+         * 队列查询失败原因，查询成功时为空
+         */
+        private String error;
+    }
+    
+    /**
+     * 本地调度队列状态
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SchedulerStatus {
+        /**
+         * 本地排队中的任务数
+         */
+        private int queued;
+        
+        /**
+         * 本地队列容量
+         */
+        private int capacity;
+        
+        /**
+         * 各优先级排队任务数
+         */
+        private Map<String, Integer> queuedByPriority;
+        
+        /**
+         * 排队中的调用方数量
+         */
+        private int queuedClients;
+        
+        /**
+         * 已提交到 ComfyUI 尚未完成的任务数
+         */
+        private int inFlight;
+        
+        /**
+         * 每个节点允许同时提交的任务数
+         */
+        private int maxInFlightPerBackend;
+        
+        /**
+         * 累计调度的任务数
+         */
+        private long dispatched;
+        
+        /**
+         * 累计因队列已满被拒绝的任务数
+         */
+        private long rejected;
     }
     
     public static QueueStatusResponse empty() {
@@ -84,6 +201,7 @@ public class QueueStatusResponse {
         response.setTotalTasks(0);
         response.setSystemStatus("idle");
         response.setMaxConcurrentTasks(1);
+        response.setNodes(List.of());
         return response;
     }
 }
\ No newline at end of file
@@ -42,6 +42,7 @@ public class Result<T> implements Serializable {
         BUSINESS_ERROR(401, "业务异常"),
         UNAUTHORIZED(403, "未授权/登录失效"),
         NOT_FOUND(404, "资源不存在"),
+        TOO_MANY_REQUESTS(429, "请求过多，请稍后重试"),
         SYSTEM_ERROR(500, "系统异常");
 
         private final int code;
@@ -0,0 +1,27 @@
+package com.ai.center.model;
+
+/**
+ * 生图任务优先级（数值越小越先调度）
+ */
+public enum TaskPriority {
+
+    /**
+     * 交互式请求（同步生图、前端提交）
+     */
+    INTERACTIVE,
+
+    /**
+     * 批量任务
+     */
+    BATCH;
+
+    /**
+     * 按名称解析，忽略大小写，为空时返回默认值
+     */
+    public static TaskPriority of(String name, TaskPriority defaultValue) {
+        if (name == null || name.isBlank()) {
+            return defaultValue;
+        }
+        return valueOf(name.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,92 @@
+package com.ai.center.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任务日志中的任务记录
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TaskRecord {
+
+    /**
+     * 任务ID
+     */
+    private String promptId;
+
+    /**
+     * ComfyUI 上的 prompt_id（与任务ID不一致时）
+     */
+    private String upstreamPromptId;
+
+    /**
+     * 所属节点ID，未提交到节点时为空
+     */
+    private String backendId;
+
+    /**
+     * 工作流参数
+     */
+    private Map<String, Object> params;
+
+    /**
+     * 优先级
+     */
+    private String priority;
+
+    /**
+     * 调用方标识
+     */
+    private String clientKey;
+
+    /**
+     * 完成回调地址
+     */
+    private List<String> callbackUrls;
+
+    /**
+     * 任务状态：pending / running / success / error
+     */
+    private String status;
+
+    /**
+     * 最近记录的进度（0-100）
+     */
+    private double progress;
+
+    /**
+     * 输出图片
+     */
+    private List<ComfyUIImage> images;
+
+    /**
+     * 图片访问地址
+     */
+    private List<String> imageUrls;
+
+    /**
+     * 错误信息
+     */
+    private String error;
+
+    /**
+     * 提交时间（毫秒时间戳）
+     */
+    private long createdAt;
+
+    /**
+     * 开始执行时间（毫秒时间戳），0 表示未开始
+     */
+    private long startedAt;
+
+    /**
+     * 完成时间（毫秒时间戳），0 表示未完成
+     */
+    private long completedAt;
+}
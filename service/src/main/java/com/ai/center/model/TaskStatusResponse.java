@@ -24,6 +24,11 @@ public class TaskStatusResponse {
      */
     private List<String> images;
     
+    /**
+     * 生成的图片访问地址列表
+     */
+    private List<String> imageUrls;
+    
     /**
      * 任务错误信息（如果有）
      */
@@ -38,6 +43,31 @@ public class TaskStatusResponse {
      * 任务状态描述
      */
     private String status;
+
+    /**
+     * 排队位置（前方等待的任务数，执行中为0）
+     */
+    private Integer queuePosition;
+
+    /**
+     * 当前执行的节点ID
+     */
+    private String currentNode;
+
+    /**
+     * 当前节点已完成步数
+     */
+    private Integer step;
+
+    /**
+     * 当前节点总步数
+     */
+    private Integer totalSteps;
+
+    /**
+     * 预计剩余时间（秒），未知时为空
+     */
+    private Integer etaSeconds;
     
     public static TaskStatusResponse success(List<String> images) {
         TaskStatusResponse response = new TaskStatusResponse();
@@ -48,6 +78,12 @@ public class TaskStatusResponse {
         return response;
     }
     
+    public static TaskStatusResponse success(List<String> images, List<String> imageUrls) {
+        TaskStatusResponse response = success(images);
+        response.setImageUrls(imageUrls);
+        return response;
+    }
+    
     public static TaskStatusResponse running(double progress) {
         TaskStatusResponse response = new TaskStatusResponse();
         response.setFinished(false);
@@ -56,6 +92,26 @@ public class TaskStatusResponse {
         return response;
     }
     
+    public static TaskStatusResponse pending(Integer queuePosition, Integer etaSeconds) {
+        TaskStatusResponse response = new TaskStatusResponse();
+        response.setFinished(false);
+        response.setProgress(0.0);
+        response.setStatus("pending");
+        response.setQueuePosition(queuePosition);
+        response.setEtaSeconds(etaSeconds);
+        return response;
+    }
+
+    public static TaskStatusResponse running(String currentNode, int step, int totalSteps, double progress, Integer etaSeconds) {
+        TaskStatusResponse response = running(progress);
+        response.setQueuePosition(0);
+        response.setCurrentNode(currentNode);
+        response.setStep(step);
+        response.setTotalSteps(totalSteps);
+        response.setEtaSeconds(etaSeconds);
+        return response;
+    }
+    
     public static TaskStatusResponse error(String error) {
         TaskStatusResponse response = new TaskStatusResponse();
         response.setFinished(true);
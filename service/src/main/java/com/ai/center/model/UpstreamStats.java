@@ -0,0 +1,71 @@
+package com.ai.center.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 上游连接池统计
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UpstreamStats {
+
+    /**
+     * 上游名称
+     */
+    private String name;
+
+    /**
+     * HTTP 协议版本
+     */
+    private String httpVersion;
+
+    /**
+     * 最大并发连接数
+     */
+    private int maxConnections;
+
+    /**
+     * 进行中的请求数
+     */
+    private int active;
+
+    /**
+     * 等待连接的请求数
+     */
+    private int waiting;
+
+    /**
+     * 累计请求数
+     */
+    private long requests;
+
+    /**
+     * 累计失败数（网络异常、超时、5xx、429、熔断快速失败）
+     */
+    private long failures;
+
+    /**
+     * 平均耗时（毫秒）
+     */
+    private double avgLatencyMillis;
+
+    /**
+     * 累计重试次数
+     */
+    private long retries;
+
+    /**
+     * 累计对冲请求数
+     */
+    private long hedges;
+
+    /**
+     * 熔断打开或半开的接口
+     */
+    private List<String> openCircuits;
+}
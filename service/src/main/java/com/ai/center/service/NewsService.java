@@ -0,0 +1,89 @@
+package com.ai.center.service;
+
+import com.ai.center.model.SohuHotNewsResponse;
+import com.ai.center.util.SohuHotNewsClient;
+import com.ai.center.util.SohuNewsIngester;
+import com.ai.center.util.SohuNewsStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 新闻查询
+ * 启用后台采集时全部从本地热闻库读取，不访问搜狐；未启用时直接请求搜狐（经缓存）。
+ * 热闻库还没有采集结果时（首次部署、数据目录丢失后首轮采集成功前，或启动时搜狐不可用）同样直接请求搜狐，不把空库当作结果返回
+ */
+@Slf4j
+@Service
+public class NewsService {
+
+    @Value("${sohu.default-count:10}")
+    private int defaultCount;
+
+    @Autowired
+    private SohuHotNewsClient sohuHotNewsClient;
+
+    @Autowired
+    private SohuNewsIngester newsIngester;
+
+    @Autowired
+    private SohuNewsStore newsStore;
+
+    /**
+     * 获取热闻
+     * @param count 条数
+     * 从本地热闻库读取时，后台采集过的关键词直接按索引返回，其他关键词需在全部新闻中逐条匹配（结果缓存到下次采集写入）
+     * @param keyword 关键词，为空时返回全部热闻
+     */
+    public SohuHotNewsResponse getHotNews(int count, String keyword) {
+        if (!newsIngester.isEnabled() || !newsStore.isReady()) {
+            return sohuHotNewsClient.getHotNews(count, keyword);
+        }
+        if (count <= 0 || count > SohuHotNewsClient.MAX_COUNT) {
+            throw new IllegalArgumentException("新闻条数必须在1-100之间");
+        }
+        SohuNewsStore.Page page = newsStore.query(count, SohuHotNewsClient.normalizeKeyword(keyword));
+        return response(page);
+    }
+
+    /**
+     * 获取默认条数的最新热闻
+     */
+    public SohuHotNewsResponse getLatestNews() {
+        return getHotNews(defaultCount, null);
+    }
+
+    /**
+     * 获取新闻列表，失败时返回空列表
+     */
+    public List<SohuHotNewsResponse.NewsItem> getNewsList(int count, String keyword) {
+        try {
+            return getHotNews(count, keyword).getData().getCoze_ark_001().getList();
+        } catch (Exception e) {
+            log.warn("获取新闻列表失败，返回空列表", e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 按搜狐接口的响应格式组装
+     */
+    private static SohuHotNewsResponse response(SohuNewsStore.Page page) {
+        SohuHotNewsResponse.DataObject.CozeArk001 feed = new SohuHotNewsResponse.DataObject.CozeArk001();
+        feed.setList(page.items());
+        SohuHotNewsResponse.DataObject data = new SohuHotNewsResponse.DataObject();
+        data.setCoze_ark_001(feed);
+
+        SohuHotNewsResponse response = new SohuHotNewsResponse();
+        response.setCode(200);
+        response.setMessage("success");
+        response.setSuccess(true);
+        response.setTotal(page.total());
+        response.setData(data);
+        return response;
+    }
+}
@@ -0,0 +1,124 @@
+package com.ai.center.util;
+
+/**
+ * 熔断器
+ * 按最近 N 次调用的失败率判断：失败率达到阈值后打开，打开期间直接失败；
+ * 打开时长结束后进入半开状态，只放行一个探测请求，探测成功则关闭，失败则重新打开
+ */
+public final class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int window;
+    private final int minCalls;
+    private final double failureRateThreshold;
+    private final long openDurationMillis;
+
+    // 最近 window 次调用结果的环形缓冲
+    private final boolean[] outcomes;
+    private int position;
+    private int recorded;
+    private int failed;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probing;
+
+    /**
+     * @param window 统计的最近调用次数
+     * @param failureRateThreshold 打开熔断的失败率（0-1）
+     * @param openDurationMillis 打开时长（毫秒）
+     */
+    public CircuitBreaker(int window, double failureRateThreshold, long openDurationMillis) {
+        this.window = window;
+        this.minCalls = Math.max(1, window / 2);
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationMillis = openDurationMillis;
+        this.outcomes = new boolean[window];
+    }
+
+    /**
+     * 申请调用
+     * @return 是否允许调用，允许后必须调用 onSuccess 或 onFailure
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openDurationMillis) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            default:
+                if (probing) {
+                    return false;
+                }
+                probing = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            reset();
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && recorded >= minCalls && (double) failed / recorded >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * 调用被取消，不计入统计（半开状态下释放探测名额）
+     */
+    public synchronized void onIgnored() {
+        probing = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == window) {
+            if (outcomes[position]) {
+                failed--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[position] = failure;
+        if (failure) {
+            failed++;
+        }
+        position = (position + 1) % window;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        probing = false;
+    }
+
+    private void reset() {
+        state = State.CLOSED;
+        probing = false;
+        position = 0;
+        recorded = 0;
+        failed = 0;
+    }
+}
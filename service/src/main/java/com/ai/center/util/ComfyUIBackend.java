@@ -0,0 +1,117 @@
+package com.ai.center.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ComfyUI 后端节点
+ * 记录节点地址、队列深度和健康状态，由 {@link ComfyUIBackendPool} 统一管理
+ */
+public class ComfyUIBackend {
+
+    // 连续失败达到该次数后视为不健康，直到下一次调用或探活成功
+    private static final int FAILURE_THRESHOLD = 3;
+
+    private final String id;
+    private final String baseUrl;
+
+    // ComfyUI 队列剩余任务数（status 事件或 /queue 探测更新）
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    // 正在提交中的任务数（提交完成到 status 事件到达之间的空窗由它补齐）
+    private final AtomicInteger submitting = new AtomicInteger();
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    // 本服务已提交到该节点、尚未完成的任务数（由本地调度器控制上限）
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile ComfyUIWebSocketListener listener;
+
+    public ComfyUIBackend(String id, String baseUrl) {
+        this.id = id;
+        this.baseUrl = baseUrl;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * 节点负载（队列深度 + 提交中任务数）
+     */
+    public int getLoad() {
+        return queueDepth.get() + submitting.get();
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public void setQueueDepth(int depth) {
+        queueDepth.set(depth);
+    }
+
+    public void beginSubmit() {
+        submitting.incrementAndGet();
+    }
+
+    public void endSubmit() {
+        submitting.decrementAndGet();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 占用一个提交名额
+     * @param max 名额上限
+     * @return 是否占用成功
+     */
+    public boolean tryAcquireSlot(int max) {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= max) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    public void releaseSlot() {
+        inFlight.decrementAndGet();
+    }
+
+    public boolean isHealthy() {
+        return consecutiveFailures.get() < FAILURE_THRESHOLD;
+    }
+
+    public void recordSuccess() {
+        consecutiveFailures.set(0);
+    }
+
+    public void recordFailure() {
+        consecutiveFailures.incrementAndGet();
+    }
+
+    public ComfyUIWebSocketListener getListener() {
+        return listener;
+    }
+
+    void setListener(ComfyUIWebSocketListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * WebSocket 是否在线
+     */
+    public boolean isConnected() {
+        ComfyUIWebSocketListener current = listener;
+        return current != null && current.isConnected();
+    }
+}
@@ -0,0 +1,205 @@
+package com.ai.center.util;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * ComfyUI 后端节点池
+ * 管理多个 GPU 节点：每个节点一条 WebSocket 事件连接，按队列深度选择负载最低的健康节点提交任务，
+ * 任务的后续状态、历史和图片查询固定路由到提交时的节点
+ */
+@Slf4j
+@Component
+public class ComfyUIBackendPool {
+
+    // 上游名称，对应 upstream.comfyui.* 连接池配置
+    public static final String UPSTREAM = "comfyui";
+
+    @Value("${comfyUi.base-url:http://127.0.0.1:8188}")
+    private String baseUrl;
+
+    // 多节点地址，逗号分隔；配置后覆盖 base-url
+    @Value("${comfyUi.base-urls:}")
+    private String baseUrls;
+
+    @Value("${comfyUi.client-id:}")
+    private String configuredClientId;
+
+    // 探活间隔（秒）
+    @Value("${comfyUi.health-check-interval:10}")
+    private int healthCheckInterval;
+
+    // 探活超时（毫秒）
+    private static final int PROBE_TIMEOUT = 5000;
+
+    @Autowired
+    private ComfyUITaskTracker taskTracker;
+
+    @Autowired
+    private UpstreamHttpClient upstreamHttpClient;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("comfyui-backend").daemon().factory());
+
+    // 负载相同时轮转
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    private List<ComfyUIBackend> backends;
+    private Map<String, ComfyUIBackend> backendsById;
+    private String clientId;
+
+    @PostConstruct
+    public void start() {
+        List<String> urls = StrUtil.isNotBlank(baseUrls) ? StrUtil.splitTrim(baseUrls, ',') : List.of(baseUrl);
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("ComfyUI base-url不能为空");
+        }
+        clientId = StrUtil.isNotBlank(configuredClientId) ? configuredClientId : "tool_client_" + IdUtil.fastSimpleUUID();
+
+        List<ComfyUIBackend> list = new ArrayList<>();
+        Map<String, ComfyUIBackend> byId = new LinkedHashMap<>();
+        for (String url : urls) {
+            if (!url.startsWith("http://") && !url.startsWith("https://")) {
+                throw new IllegalArgumentException("ComfyUI base-url必须以http://或https://开头: " + url);
+            }
+            String normalized = StrUtil.removeSuffix(url, "/");
+            String id = URI.create(normalized).getAuthority();
+            if (byId.containsKey(id)) {
+                throw new IllegalArgumentException("ComfyUI 节点地址重复: " + url);
+            }
+            ComfyUIBackend backend = new ComfyUIBackend(id, normalized);
+            backend.setListener(new ComfyUIWebSocketListener(backend, clientId,
+                    upstreamHttpClient.upstream(UPSTREAM).getClient(), scheduler, taskTracker));
+            list.add(backend);
+            byId.put(id, backend);
+        }
+        backends = List.copyOf(list);
+        backendsById = Collections.unmodifiableMap(byId);
+
+        backends.forEach(backend -> backend.getListener().start());
+        scheduler.scheduleWithFixedDelay(this::probeBackends, healthCheckInterval, healthCheckInterval, TimeUnit.SECONDS);
+        log.info("ComfyUI节点池初始化完成，节点: {}", backendsById.keySet());
+    }
+
+    @PreDestroy
+    public void stop() {
+        backends.forEach(backend -> backend.getListener().stop());
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 提交任务时使用的固定 clientId
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    public List<ComfyUIBackend> getBackends() {
+        return backends;
+    }
+
+    /**
+     * 按节点ID获取节点
+     */
+    public ComfyUIBackend get(String backendId) {
+        return backendId == null ? null : backendsById.get(backendId);
+    }
+
+    /**
+     * 默认节点（未关联任务的调用使用）
+     */
+    public ComfyUIBackend getDefault() {
+        return backends.get(0);
+    }
+
+    /**
+     * 任务所属节点
+     * @param promptId 任务ID
+     * @return 节点，未被跟踪的任务返回 null
+     */
+    public ComfyUIBackend ownerOf(String promptId) {
+        return get(taskTracker.getBackendId(promptId));
+    }
+
+    /**
+     * 选择负载最低的健康节点，全部不健康时在所有节点中选择
+     */
+    public ComfyUIBackend select() {
+        return select(backend -> true);
+    }
+
+    /**
+     * 在满足条件的节点中选择负载最低的，优先健康节点
+     * @param eligible 节点条件
+     * @return 节点，没有满足条件的节点时返回 null
+     */
+    public ComfyUIBackend select(Predicate<ComfyUIBackend> eligible) {
+        List<ComfyUIBackend> candidates = backends.stream().filter(eligible).filter(ComfyUIBackend::isHealthy).toList();
+        if (candidates.isEmpty()) {
+            candidates = backends.stream().filter(eligible).toList();
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        int offset = Math.floorMod(roundRobin.getAndIncrement(), candidates.size());
+        ComfyUIBackend selected = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            ComfyUIBackend backend = candidates.get((offset + i) % candidates.size());
+            if (selected == null || backend.getLoad() < selected.getLoad()) {
+                selected = backend;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 探活：WebSocket 断开或不健康的节点通过 /queue 刷新队列深度和健康状态
+     */
+    private void probeBackends() {
+        for (ComfyUIBackend backend : backends) {
+            if (backend.isConnected() && backend.isHealthy()) {
+                continue;
+            }
+            try {
+                UpstreamHttpClient.Upstream upstream = upstreamHttpClient.upstream(UPSTREAM);
+                HttpRequest request = upstream.request(backend.getBaseUrl() + "/queue")
+                        .timeout(Duration.ofMillis(PROBE_TIMEOUT))
+                        .GET()
+                        .build();
+                UpstreamHttpClient.JsonResponse<JSONObject> response = upstream.exchange(request, JSONObject.class);
+                if (!response.isSuccess()) {
+                    backend.recordFailure();
+                    continue;
+                }
+                JSONObject queueObj = response.getBody();
+                backend.setQueueDepth(size(queueObj.getJSONArray("queue_running")) + size(queueObj.getJSONArray("queue_pending")));
+                backend.recordSuccess();
+            } catch (Exception e) {
+                backend.recordFailure();
+                log.warn("ComfyUI节点探活失败，节点: {}，{}", backend.getId(), e.getMessage());
+            }
+        }
+    }
+
+    private static int size(JSONArray array) {
+        return array == null ? 0 : array.size();
+    }
+}
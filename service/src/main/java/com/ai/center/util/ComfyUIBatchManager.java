@@ -0,0 +1,248 @@
+package com.ai.center.util;
+
+import cn.hutool.core.util.IdUtil;
+import com.ai.center.model.BatchStatusResponse;
+import com.ai.center.model.ImageGenerationParams;
+import com.ai.center.model.TaskPriority;
+import com.ai.center.model.TaskStatusResponse;
+import io.micrometer.context.ContextSnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * ComfyUI 批量生图
+ * 批次内任务按窗口流水线提交：每完成一个补交一个，始终保持 window 个任务在调度队列中，
+ * 既让 GPU 队列保持饱和，又不会一次性占满本地队列；任务结果由任务完成事件回填，不做轮询
+ */
+@Slf4j
+@Component
+public class ComfyUIBatchManager {
+
+    // 单批次最大任务数
+    @Value("${comfyUi.batch.max-size:100}")
+    private int maxBatchSize;
+
+    // 每个批次同时在调度队列中的任务数
+    @Value("${comfyUi.batch.window:8}")
+    private int window;
+
+    // 单个任务最长等待时间（秒）
+    @Value("${comfyUi.batch.item-timeout:600}")
+    private int itemTimeout;
+
+    // 已完成批次的保留时间（毫秒）
+    private static final long COMPLETED_RETENTION = TimeUnit.HOURS.toMillis(1);
+
+    // 本地队列已满时的重试间隔（毫秒）
+    private static final long REJECTED_RETRY_DELAY = 2000;
+
+    @Autowired
+    private ComfyUIClientUtil comfyUIClientUtil;
+
+    @Autowired
+    private ComfyUITaskTracker taskTracker;
+
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("comfyui-batch").daemon().factory());
+
+    @PostConstruct
+    public void validateConfig() {
+        if (maxBatchSize <= 0 || window <= 0 || itemTimeout <= 0) {
+            throw new IllegalArgumentException("ComfyUI批量生图配置必须大于0");
+        }
+        scheduler.scheduleWithFixedDelay(this::evictExpired, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 创建批次并开始提交
+     * @param items 生图参数列表
+     * @param priority 优先级
+     * @param clientKey 调用方标识
+     * @return 批次状态
+     */
+    public BatchStatusResponse submit(List<ImageGenerationParams> items, TaskPriority priority, String clientKey) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("批量任务不能为空");
+        }
+        if (items.size() > maxBatchSize) {
+            throw new IllegalArgumentException("批量任务数不能超过" + maxBatchSize);
+        }
+        Batch batch = new Batch(IdUtil.fastSimpleUUID(), List.copyOf(items), priority, clientKey);
+        batches.put(batch.id, batch);
+        log.info("批量生图开始，批次: {}，任务数: {}", batch.id, items.size());
+        for (int i = 0; i < Math.min(window, items.size()); i++) {
+            submitNext(batch);
+        }
+        return snapshot(batch);
+    }
+
+    /**
+     * 查询批次状态
+     * @param batchId 批次ID
+     * @return 批次状态，不存在返回 null
+     */
+    public BatchStatusResponse getStatus(String batchId) {
+        Batch batch = batches.get(batchId);
+        return batch == null ? null : snapshot(batch);
+    }
+
+    /**
+     * 订阅批次进度：每个任务结束推送一次批次状态
+     * @param batchId 批次ID
+     * @param subscriber 状态回调
+     * @return 取消订阅的操作，批次不存在时返回 null
+     */
+    public Runnable subscribe(String batchId, Consumer<BatchStatusResponse> subscriber) {
+        Batch batch = batches.get(batchId);
+        if (batch == null) {
+            return null;
+        }
+        batch.subscribers.add(subscriber);
+        return () -> batch.subscribers.remove(subscriber);
+    }
+
+    private void submitNext(Batch batch) {
+        int index = batch.nextIndex.getAndIncrement();
+        if (index < batch.params.size()) {
+            submitItem(batch, index);
+        }
+    }
+
+    private void submitItem(Batch batch, int index) {
+        ImageGenerationParams params = batch.params.get(index);
+        String taskId;
+        // 后续任务由完成回调或重试线程提交，沿用创建批次的请求的追踪上下文
+        try (ContextSnapshot.Scope ignored = batch.context.setThreadLocals()) {
+            taskId = comfyUIClientUtil.submitTask(params, batch.priority, batch.clientKey);
+        } catch (TaskRejectedException e) {
+            // 本地队列已满，稍后重试，不计为失败
+            scheduler.schedule(() -> submitItem(batch, index), REJECTED_RETRY_DELAY, TimeUnit.MILLISECONDS);
+            return;
+        } catch (Exception e) {
+            log.warn("批量任务提交失败，批次: {}，序号: {}，{}", batch.id, index, e.getMessage());
+            finishItem(batch, index, TaskStatusResponse.error("提交任务失败: " + e.getMessage()));
+            return;
+        }
+        synchronized (batch) {
+            batch.taskIds[index] = taskId;
+        }
+        taskTracker.awaitCompletion(taskId).copy()
+                .orTimeout(itemTimeout, TimeUnit.SECONDS)
+                .whenComplete((images, e) -> {
+                    TaskStatusResponse status = taskTracker.getStatus(taskId);
+                    if (status == null || !status.isFinished()) {
+                        status = TaskStatusResponse.error(e instanceof TimeoutException
+                                ? "任务超时（超时时间: " + itemTimeout + " 秒）" : "任务状态丢失");
+                    }
+                    finishItem(batch, index, status);
+                });
+    }
+
+    private void finishItem(Batch batch, int index, TaskStatusResponse status) {
+        BatchStatusResponse snapshot;
+        synchronized (batch) {
+            if (batch.results[index] != null) {
+                return;
+            }
+            batch.results[index] = status;
+            if (batch.finished.incrementAndGet() == batch.params.size()) {
+                batch.completedAt = System.currentTimeMillis();
+                log.info("批量生图完成，批次: {}，耗时 {} 毫秒", batch.id, batch.completedAt - batch.createdAt);
+            }
+            snapshot = snapshot(batch);
+        }
+        for (Consumer<BatchStatusResponse> subscriber : batch.subscribers) {
+            try {
+                subscriber.accept(snapshot);
+            } catch (Exception e) {
+                log.warn("批次状态订阅回调异常: {}", e.getMessage());
+            }
+        }
+        submitNext(batch);
+    }
+
+    private BatchStatusResponse snapshot(Batch batch) {
+        synchronized (batch) {
+            List<BatchStatusResponse.ItemResult> items = new ArrayList<>(batch.params.size());
+            int succeeded = 0;
+            int failed = 0;
+            for (int i = 0; i < batch.params.size(); i++) {
+                String taskId = batch.taskIds[i];
+                TaskStatusResponse status = batch.results[i];
+                if (status == null && taskId != null) {
+                    status = taskTracker.getStatus(taskId);
+                }
+                BatchStatusResponse.ItemResult item = new BatchStatusResponse.ItemResult();
+                item.setIndex(i);
+                item.setPrompt(batch.params.get(i).getPrompt());
+                item.setTaskId(taskId);
+                if (status == null) {
+                    item.setStatus("waiting");
+                } else {
+                    item.setStatus(status.getStatus());
+                    item.setProgress(status.getProgress());
+                    item.setImageUrls(status.getImageUrls());
+                    item.setError(status.getError());
+                }
+                if (batch.results[i] != null) {
+                    if (batch.results[i].getError() == null) {
+                        succeeded++;
+                    } else {
+                        failed++;
+                    }
+                }
+                items.add(item);
+            }
+            return new BatchStatusResponse(batch.id, batch.completedAt > 0 ? "completed" : "running",
+                    batch.params.size(), succeeded, failed, batch.createdAt, batch.completedAt, items);
+        }
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        batches.values().removeIf(batch -> batch.completedAt > 0 && batch.completedAt < now - COMPLETED_RETENTION);
+    }
+
+    /**
+     * 批次
+     */
+    private static final class Batch {
+        private final String id;
+        private final List<ImageGenerationParams> params;
+        private final TaskPriority priority;
+        private final String clientKey;
+        private final String[] taskIds;
+        private final TaskStatusResponse[] results;
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final AtomicInteger finished = new AtomicInteger();
+        private final List<Consumer<BatchStatusResponse>> subscribers = new CopyOnWriteArrayList<>();
+        private final long createdAt = System.currentTimeMillis();
+        private final ContextSnapshot context = TraceContext.capture();
+        private volatile long completedAt;
+
+        private Batch(String id, List<ImageGenerationParams> params, TaskPriority priority, String clientKey) {
+            this.id = id;
+            this.params = params;
+            this.priority = priority;
+            this.clientKey = clientKey;
+            this.taskIds = new String[params.size()];
+            this.results = new TaskStatusResponse[params.size()];
+        }
+    }
+}
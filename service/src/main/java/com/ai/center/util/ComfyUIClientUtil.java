@@ -1,52 +1,94 @@
 package com.ai.center.util;
 
-import cn.hutool.core.io.FileUtil;
-import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.map.MapUtil;
 import cn.hutool.core.util.IdUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.http.HttpRequest;
-import cn.hutool.http.HttpResponse;
 import com.ai.center.model.AsyncTaskResponse;
+import com.ai.center.model.CacheStatsResponse;
+import com.ai.center.model.ComfyUIImage;
+import com.ai.center.model.ImageGenerationParams;
 import com.ai.center.model.QueueStatusResponse;
+import com.ai.center.model.TaskPriority;
+import com.ai.center.model.TaskRecord;
 import com.ai.center.model.TaskStatusResponse;
-import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.ResourceLoader;
 import org.springframework.stereotype.Component;
 
-import java.io.BufferedReader;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
- * ComfyUI 生图工具类（Hutool-HTTP + JSON文件工作流）
+ * ComfyUI 生图工具类（共享上游连接池 + 工作流注册表）
  */
 @Slf4j
 @Component
 public class ComfyUIClientUtil {
-    // ComfyUI 基础地址
-    @Value("${comfyUi.base-url:http://127.0.0.1:8188}")
-    private String baseUrl;
-    @Value("${comfyUi.workflow-path:comfyui_workflow/image.json}")
-    private String imageWorkflowPath;
-
     @Value("${comfyui.default-timeout:60}")
     private int timeout;
 
-    // 超时时间（毫秒）
-    private static final int DEFAULT_TIMEOUT = 30000;
+    // WebSocket 断开时的降级轮询间隔（毫秒）
+    private static final long POLL_INTERVAL = 2000;
+
+    @Autowired
+    private ComfyUIWorkflowRegistry workflowRegistry;
+
+    @Autowired
+    private ComfyUIBackendPool backendPool;
+
+    @Autowired
+    private ComfyUITaskTracker taskTracker;
+
+    @Autowired
+    private ComfyUITaskScheduler taskScheduler;
+
+    @Autowired
+    private ComfyUIResultCache resultCache;
+
+    @Autowired
+    private ComfyUIImageStore imageStore;
+
+    @Autowired
+    private ComfyUIImageDownloader imageDownloader;
 
     @Autowired
-    private ResourceLoader resourceLoader;
+    private UpstreamHttpClient upstreamHttpClient;
+
+    @Autowired
+    private ComfyUIQueueSnapshot queueSnapshot;
+
+    @Autowired
+    private ComfyUITaskJournal taskJournal;
+
+    @Autowired
+    private ComfyUIWebhookDispatcher webhookDispatcher;
+
+    @Autowired
+    private ComfyUIParamResolver paramResolver;
+
+    // 阻塞的上游调用在虚拟线程上执行，等待完成不占用线程
+    private final ExecutorService ioExecutor = TraceContext.wrap(Executors.newVirtualThreadPerTaskExecutor());
+
+    // 降级轮询调度
+    private final ScheduledExecutorService pollScheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("comfyui-poll").daemon().factory());
+
+    // 工作流键 -> 进行中的任务（合并并发的相同请求）
+    private final Map<String, ComfyUITaskScheduler.ScheduledTask> inFlightByWorkflow = new ConcurrentHashMap<>();
+
+    // 合并到已有任务的请求数
+    private final AtomicLong deduplicatedCount = new AtomicLong();
 
     /**
      * 生图参数配置（仅需配置动态替换的参数，工作流由JSON文件定义）
@@ -59,150 +101,252 @@ public class ComfyUIClientUtil {
             throw new IllegalArgumentException("ComfyUI超时时间必须在1-600秒之间");
         }
 
-        if (baseUrl == null || baseUrl.trim().isEmpty()) {
-            throw new IllegalArgumentException("ComfyUI base-url不能为空");
-        }
-        if (!baseUrl.startsWith("http://") && !baseUrl.startsWith("https://")) {
-            throw new IllegalArgumentException("ComfyUI base-url必须以http://或https://开头");
-        }
-        log.info("ComfyUI客户端初始化完成，服务地址: {}", baseUrl);
+        taskTracker.setImageUrlResolver(this::imageUrl);
+        taskScheduler.setDispatcher((task, backend) -> submitTask(task.getPromptId(), task.getParams(), backend));
+        ioExecutor.execute(this::recoverJournaledTasks);
+        log.info("ComfyUI客户端初始化完成，节点数: {}", backendPool.getBackends().size());
     }
 
+    @PreDestroy
+    public void shutdown() {
+        pollScheduler.shutdownNow();
+        ioExecutor.shutdownNow();
+    }
+
+
+
+    /**
+     * 校验生图参数并生成工作流注入参数
+     * @throws IllegalArgumentException 参数不合法或当前工作流不支持
+     */
+    private Map<String, Object> buildParams(ImageGenerationParams request) {
+        ComfyUIWorkflowTemplate workflow = workflowRegistry.get(request.getWorkflow());
+        Map<String, Object> params = paramResolver.resolve(request, workflow);
+        params.put(ComfyUIWorkflowRegistry.PARAM_WORKFLOW, workflow.getName());
+        return params;
+    }
+
+    /**
+     * 注入参数对应的工作流（服务重启前提交、未记录工作流的任务使用默认工作流）
+     */
+    private ComfyUIWorkflowTemplate workflowOf(Map<String, Object> params) {
+        return workflowRegistry.get((String) params.get(ComfyUIWorkflowRegistry.PARAM_WORKFLOW));
+    }
+
+    /**
+     * 校验生图参数（批量提交前统一校验）
+     * @throws IllegalArgumentException 参数不合法或当前工作流不支持
+     */
+    public void validateParams(ImageGenerationParams request) {
+        buildParams(request);
+    }
 
+    /**
+     * 工作流支持的参数及默认值、参数上限
+     * @param name 工作流名称，为空时为默认工作流
+     * @throws IllegalArgumentException 工作流不存在
+     */
+    public Map<String, Object> getWorkflowParams(String name) {
+        ComfyUIWorkflowTemplate workflow = workflowRegistry.get(name);
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("workflow", workflow.getName());
+        result.put("defaults", workflow.getDefaults());
+        result.put("limits", paramResolver.getLimits());
+        return result;
+    }
 
     /**
-     * 加载工作流JSON文件并替换动态参数
-     * @return 替换后的工作流JSON字符串
+     * 全部工作流名称及默认工作流
      */
-    private String loadAndReplaceWorkflow(String promptStr) {
+    public Map<String, Object> listWorkflows() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("default", workflowRegistry.getDefaultWorkflow());
+        result.put("workflows", workflowRegistry.names());
+        return result;
+    }
 
+    /**
+     * 工作流键：渲染后工作流的哈希，既是结果缓存键也是并发合并键
+     */
+    private String workflowKey(Map<String, Object> params) {
+        return ComfyUIResultCache.key(workflowOf(params).renderWorkflow(params));
+    }
 
-        long seedStr = IdUtil.getSnowflakeNextId();
-        // 1. 读取工作流文件
-        Resource resource = resourceLoader.getResource("classpath:" + "comfyui_workflow/image.json");
-        StringBuilder flowStr = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(resource.getInputStream()))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                flowStr.append(line);
+    /**
+     * 相同工作流的进行中任务已存在时直接复用（single-flight），否则入队
+     * @param workflowKey 工作流键
+     * @return 调度任务及是否为新建任务
+     */
+    private Flight admitOrJoin(String workflowKey, Map<String, Object> params, TaskPriority priority, String clientKey) {
+        boolean[] created = new boolean[1];
+        ComfyUITaskScheduler.ScheduledTask task = inFlightByWorkflow.compute(workflowKey, (key, existing) -> {
+            if (existing != null && !existing.getDispatched().isCompletedExceptionally()
+                    && !taskTracker.awaitCompletion(existing.getPromptId()).isCompletedExceptionally()) {
+                return existing;
             }
-        } catch (IOException e) {
-            log.error("读取工作流文件失败: {}", imageWorkflowPath, e);
-            throw new RuntimeException("读取工作流文件失败: " + e.getMessage(), e);
+            created[0] = true;
+            return taskScheduler.admit(params, priority, clientKey);
+        });
+        if (created[0]) {
+            taskTracker.awaitCompletion(task.getPromptId())
+                    .whenComplete((images, e) -> inFlightByWorkflow.remove(workflowKey, task));
+        } else {
+            deduplicatedCount.incrementAndGet();
+            log.info("合并相同生图请求，prompt_id: {}", task.getPromptId());
         }
+        return new Flight(task, created[0]);
+    }
 
-        // 2. 动态替换工作流中的参数（核心：适配通用工作流的JSONPath路径）
-        String workflowJson = StrUtil.format(flowStr.toString(), seedStr, promptStr);
-
+    /**
+     * 任务成功后把图片下载到缓存目录，全部下载成功才写入缓存
+     */
+    private void cacheOnCompletion(String promptId, String cacheKey) {
+        taskTracker.awaitCompletion(promptId).thenAcceptAsync(images -> {
+            if (images.isEmpty()) {
+                return;
+            }
+            ComfyUIBackend backend = backendPool.ownerOf(promptId);
+            List<String> names = images.stream().map(ComfyUIImage::getFilename).toList();
+            Path staging = resultCache.newStagingDir();
+            List<Path> saved = imageDownloader.download(backend == null ? backendPool.getDefault() : backend, images, staging, false);
+            if (saved.size() == names.size()) {
+                resultCache.commit(cacheKey, staging, names);
+            } else {
+                resultCache.discard(staging);
+                log.warn("缓存图片下载不完整，跳过缓存，prompt_id: {}", promptId);
+            }
+        }, ioExecutor);
+    }
 
-        return workflowJson;
+    /**
+     * 生图结果缓存统计
+     */
+    public CacheStatsResponse getCacheStats() {
+        CacheStatsResponse stats = resultCache.getStats();
+        stats.setDeduplicated(deduplicatedCount.get());
+        return stats;
     }
 
+    /**
+     * 缓存图片的本地路径
+     * @return 文件路径，不存在返回 null
+     */
+    public Path resolveCachedImage(String key, String filename) {
+        return resultCache.resolveImage(key, filename);
+    }
 
     /**
-     * 提交生图任务=
+     * 提交生图任务（经本地调度队列，等待任务提交到节点后返回）
      * @return 任务ID（prompt_id）
      */
     public String submitTask(String promptStr) {
+        ComfyUITaskScheduler.ScheduledTask task = taskScheduler.admit(
+                buildParams(ImageGenerationParams.of(promptStr)), TaskPriority.INTERACTIVE, null);
         try {
-            // 1. 加载并替换工作流
-            String workflowJson = loadAndReplaceWorkflow(promptStr);
+            task.getDispatched().join();
+            return task.getPromptId();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+        }
+    }
 
-            // 2. 构建请求体
-            JSONObject requestBody = new JSONObject();
-            requestBody.put("prompt", JSON.parseObject(workflowJson));
-            requestBody.put("client_id", "tool_client_" + System.currentTimeMillis());
+    /**
+     * 提交生图任务到指定节点（由本地调度器调用）
+     * @param promptId 本地生成的任务ID，作为 prompt_id 提交
+     * @param params 工作流参数
+     * @param backend 节点
+     */
+    private void submitTask(String promptId, Map<String, Object> params, ComfyUIBackend backend) {
+        backend.beginSubmit();
+        boolean reached = false;
+        try {
+            // 1. 渲染工作流请求体
+            byte[] requestBody = workflowOf(params).renderRequestBody(params, backendPool.getClientId(), promptId);
 
-            // 3. 提交任务
-            HttpResponse response = HttpRequest.post(baseUrl + "/prompt")
-                    .body(requestBody.toJSONString())
-                    .contentType("application/json")
-                    .timeout(DEFAULT_TIMEOUT)
-                    .execute();
+            // 2. 提交任务
+            UpstreamHttpClient.JsonResponse<JSONObject> response = comfyUpstream()
+                    .postJson(backend.getBaseUrl() + "/prompt", requestBody, JSONObject.class);
+            reached = response.getStatus() < 500;
 
             if (response.getStatus() != 200) {
-                throw new RuntimeException("提交任务失败，状态码: " + response.getStatus() + "，响应: " + response.body());
+                throw new RuntimeException("提交任务失败，状态码: " + response.getStatus() + "，响应: " + response.getErrorBody());
             }
 
-            // 4. 解析任务ID
-            JSONObject responseObj = JSON.parseObject(response.body());
-            String promptId = responseObj.getString("prompt_id");
-            if (StrUtil.isBlank(promptId)) {
-                throw new RuntimeException("响应中未获取到prompt_id: " + response.body());
+            // 3. 解析任务ID（旧版 ComfyUI 忽略指定的 prompt_id，按返回值登记别名）
+            JSONObject responseObj = response.getBody();
+            String upstreamPromptId = responseObj == null ? null : responseObj.getString("prompt_id");
+            if (StrUtil.isBlank(upstreamPromptId)) {
+                throw new RuntimeException("响应中未获取到prompt_id: " + responseObj);
             }
 
-            log.info("任务提交成功，prompt_id: {}", promptId);
-            return promptId;
+            taskTracker.alias(promptId, upstreamPromptId);
+            taskTracker.register(promptId, backend.getId());
+            log.info("任务提交成功，节点: {}，prompt_id: {}", backend.getId(), upstreamPromptId);
         } catch (Exception e) {
-            log.error("提交任务异常", e);
+            log.error("提交任务异常，节点: {}", backend.getId(), e);
             throw new RuntimeException("提交任务异常: " + e.getMessage(), e);
+        } finally {
+            backend.endSubmit();
+            if (reached) {
+                backend.recordSuccess();
+            } else {
+                backend.recordFailure();
+            }
         }
     }
 
     /**
-     * 查询队列状态
+     * 查询队列状态（汇总所有节点，读取共享队列快照）
      * @return 队列状态信息
+     * @throws UpstreamException 所有节点均查询失败
      */
     public QueueStatusResponse getQueueStatus() {
-        try {
-            HttpResponse response = HttpRequest.get(baseUrl + "/queue")
-                    .timeout(DEFAULT_TIMEOUT)
-                    .execute();
-
-            if (response.getStatus() != 200) {
-                log.warn("查询队列状态失败，状态码: {}", response.getStatus());
-                return QueueStatusResponse.empty();
-            }
+        QueueStatusResponse result = queueSnapshot.getStatus();
+        result.setScheduler(taskScheduler.getStatus());
+        return result;
+    }
 
-            JSONObject queueObj = JSON.parseObject(response.body());
-            QueueStatusResponse result = new QueueStatusResponse();
-            
-            // 解析正在执行的任务
-            JSONObject runningObj = queueObj.getJSONObject("queue_running");
-            if (runningObj != null) {
-                result.setRunning(parseTaskInfos(runningObj.getJSONArray("tasks")));
-            } else {
-                result.setRunning(List.of());
-            }
-            
-            // 解析等待中的任务
-            JSONObject pendingObj = queueObj.getJSONObject("queue_pending");
-            if (pendingObj != null) {
-                result.setPending(parseTaskInfos(pendingObj.getJSONArray("tasks")));
-            } else {
-                result.setPending(List.of());
+    /**
+     * 解析输出节点中的图片（仅保留 output 类型，预览图为 temp 类型）
+     */
+    static List<ComfyUIImage> parseOutputImages(JSONArray images) {
+        List<ComfyUIImage> result = new ArrayList<>();
+        for (Object imgObj : images) {
+            JSONObject img = (JSONObject) imgObj;
+            if ("output".equals(img.getString("type"))) {
+                result.add(new ComfyUIImage(img.getString("filename"), img.getString("subfolder"), img.getString("type")));
             }
-            
-            result.setTotalTasks(result.getRunning().size() + result.getPending().size());
-            result.setSystemStatus(result.getTotalTasks() > 0 ? "busy" : "idle");
-            result.setMaxConcurrentTasks(1); // ComfyUI默认单任务执行
-            
-            return result;
-            
-        } catch (Exception e) {
-            log.error("查询队列状态异常", e);
-            return QueueStatusResponse.empty();
         }
+        return result;
     }
 
     /**
-     * 解析任务信息列表
+     * 提交任务（进入本地调度队列后立即返回），确定性模式命中缓存时任务直接完成，相同的进行中任务直接复用
+     * @param request 生图参数
+     * @param priority 优先级
+     * @param clientKey 调用方标识（公平调度）
+     * @return 任务ID
+     * @throws TaskRejectedException 本地队列已满
      */
-    private List<QueueStatusResponse.TaskInfo> parseTaskInfos(com.alibaba.fastjson2.JSONArray tasksArray) {
-        List<QueueStatusResponse.TaskInfo> taskInfos = new ArrayList<>();
-        if (tasksArray != null) {
-            for (Object taskObj : tasksArray) {
-                JSONObject task = (JSONObject) taskObj;
-                QueueStatusResponse.TaskInfo taskInfo = new QueueStatusResponse.TaskInfo();
-                taskInfo.setPromptId(task.getString("prompt_id"));
-                taskInfo.setTaskType("image_generation");
-                taskInfo.setSubmitTime(task.getLongValue("timestamp"));
-                taskInfo.setStatus("queued");
-                taskInfo.setProgress(0.0);
-                taskInfos.add(taskInfo);
-            }
+    public String submitTask(ImageGenerationParams request, TaskPriority priority, String clientKey) {
+        Map<String, Object> params = buildParams(request);
+        String workflowKey = workflowKey(params);
+        ComfyUIResultCache.CacheEntry cached = request.isDeterministic() ? resultCache.get(workflowKey) : null;
+        if (cached != null) {
+            String promptId = IdUtil.fastUUID();
+            taskJournal.submit(promptId, params, priority.name(), clientKey);
+            taskTracker.completeCached(promptId,
+                    cached.getImages().stream().map(name -> new ComfyUIImage(name, cached.getKey(), "cache")).toList(),
+                    resultCache.imageUrls(cached));
+            return promptId;
+        }
+
+        Flight flight = admitOrJoin(workflowKey, params, priority, clientKey);
+        String promptId = flight.task.getPromptId();
+        if (flight.created && request.isDeterministic()) {
+            cacheOnCompletion(promptId, workflowKey);
         }
-        return taskInfos;
+        return promptId;
     }
 
     /**
@@ -211,18 +355,49 @@ public class ComfyUIClientUtil {
      * @return 异步任务响应
      */
     public AsyncTaskResponse submitTaskAsync(String promptStr) {
+        return submitTaskAsync(ImageGenerationParams.of(promptStr), TaskPriority.INTERACTIVE, null);
+    }
+
+    /**
+     * 异步提交任务
+     * @param request 生图参数
+     * @param priority 优先级
+     * @param clientKey 调用方标识（公平调度）
+     * @return 异步任务响应
+     * @throws TaskRejectedException 本地队列已满
+     */
+    public AsyncTaskResponse submitTaskAsync(ImageGenerationParams request, TaskPriority priority, String clientKey) {
+        return submitTaskAsync(request, priority, clientKey, null);
+    }
+
+    /**
+     * 异步提交任务，任务完成后向回调地址投递完成通知
+     * @param request 生图参数
+     * @param priority 优先级
+     * @param clientKey 调用方标识（公平调度）
+     * @param callbackUrl 完成回调地址，可为空
+     * @return 异步任务响应
+     * @throws TaskRejectedException 本地队列已满
+     * @throws IllegalArgumentException 生图参数或回调地址不合法
+     */
+    public AsyncTaskResponse submitTaskAsync(ImageGenerationParams request, TaskPriority priority, String clientKey, String callbackUrl) {
+        if (callbackUrl != null) {
+            webhookDispatcher.validate(callbackUrl);
+        }
         try {
-            String promptId = submitTask(promptStr);
-            if (StrUtil.isBlank(promptId)) {
-                return AsyncTaskResponse.error("提交任务失败");
+            String promptId = submitTask(request, priority, clientKey);
+            if (callbackUrl != null) {
+                webhookDispatcher.register(promptId, callbackUrl);
             }
-            
-            // 获取队列位置
-            QueueStatusResponse queueStatus = getQueueStatus();
-            int queuePosition = queueStatus.getPending().size(); // 当前在队尾
+
+            // 本地排队位置；已提交到节点的任务由 status 事件刷新节点上的位置
+            TaskStatusResponse status = taskTracker.getStatus(promptId);
+            int queuePosition = status != null && status.getQueuePosition() != null ? status.getQueuePosition() : 0;
             
             return AsyncTaskResponse.success(promptId, queuePosition);
             
+        } catch (TaskRejectedException | IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             log.error("异步提交任务异常", e);
             return AsyncTaskResponse.error("提交任务异常: " + e.getMessage());
@@ -230,62 +405,53 @@ public class ComfyUIClientUtil {
     }
 
     /**
-     * 查询任务状态（改进版）
+     * 查询任务状态，已跟踪的任务直接读内存状态表，未跟踪的任务（如服务重启前提交）回退逐个节点查询 ComfyUI
      * @param promptId 任务ID
      * @return 任务状态响应
      */
     public TaskStatusResponse queryTaskStatus(String promptId) {
+        TaskStatusResponse tracked = taskTracker.getStatus(promptId);
+        if (tracked != null) {
+            return tracked;
+        }
+        // 内存状态已过期或服务重启：已完成的任务直接读任务日志
+        TaskRecord record = taskJournal.find(promptId);
+        if (record != null && record.getCompletedAt() > 0) {
+            return statusOf(record);
+        }
         try {
-            HttpResponse response = HttpRequest.get(baseUrl + "/history/" + promptId)
-                    .timeout(DEFAULT_TIMEOUT)
-                    .execute();
-
-            if (response.getStatus() != 200) {
-                log.warn("查询任务状态失败，状态码: {}", response.getStatus());
-                return TaskStatusResponse.running(0.0);
-            }
-
-            JSONObject historyObj = JSON.parseObject(response.body());
-            if (historyObj.isEmpty() || !historyObj.containsKey(promptId)) {
-                // 检查队列状态
-                QueueStatusResponse queueStatus = getQueueStatus();
-                boolean isRunning = queueStatus.getRunning().stream()
-                    .anyMatch(task -> promptId.equals(task.getPromptId()));
-                
-                if (isRunning) {
-                    return TaskStatusResponse.running(50.0); // 执行中
-                } else {
-                    boolean isPending = queueStatus.getPending().stream()
-                        .anyMatch(task -> promptId.equals(task.getPromptId()));
-                    if (isPending) {
-                        return TaskStatusResponse.running(0.0); // 等待中
-                    }
+            String upstreamId = record != null && record.getUpstreamPromptId() != null
+                    ? record.getUpstreamPromptId() : taskTracker.getUpstreamId(promptId);
+            // 任务日志记录了所属节点时只查询该节点
+            ComfyUIBackend owner = record == null ? null : backendPool.get(record.getBackendId());
+            for (ComfyUIBackend backend : owner != null ? List.of(owner) : backendPool.getBackends()) {
+                List<ComfyUIImage> images;
+                try {
+                    images = fetchHistoryImages(backend, upstreamId);
+                } catch (UpstreamException e) {
+                    log.warn("查询任务历史失败，节点: {}，{}", backend.getId(), e.getMessage());
+                    continue;
                 }
-                
-                return TaskStatusResponse.error("任务不存在");
-            }
-
-            // 解析生成的图片列表
-            JSONObject taskObj = historyObj.getJSONObject(promptId);
-            JSONObject outputsObj = taskObj.getJSONObject("outputs");
-            List<String> imageNames = new ArrayList<>();
-
-            for (String key : outputsObj.keySet()) {
-                JSONObject nodeObj = outputsObj.getJSONObject(key);
-                if (nodeObj.containsKey("images")) {
-                    for (Object imgObj : nodeObj.getJSONArray("images")) {
-                        JSONObject imgJson = (JSONObject) imgObj;
-                        imageNames.add(imgJson.getString("filename"));
+                if (images != null) {
+                    List<String> imageUrls = images.stream().map(image -> imageUrl(backend.getId(), image)).toList();
+                    String error = images.isEmpty() ? "任务完成但未生成图片" : null;
+                    if (record != null) {
+                        taskJournal.complete(promptId, images, imageUrls, error);
                     }
+                    return error != null ? TaskStatusResponse.error(error)
+                            : TaskStatusResponse.success(images.stream().map(ComfyUIImage::getFilename).toList(), imageUrls);
                 }
             }
 
-            if (imageNames.isEmpty()) {
-                return TaskStatusResponse.error("任务完成但未生成图片");
+            // 检查队列快照（排队位置按所在节点计算）
+            ComfyUIQueueSnapshot.Position position = queueSnapshot.getPosition(upstreamId);
+            if (position == null) {
+                return TaskStatusResponse.error("任务不存在");
             }
+            return position.running()
+                    ? TaskStatusResponse.running(null, 0, 0, record == null ? 0.0 : record.getProgress(), null)
+                    : TaskStatusResponse.pending(position.ahead(), null);
 
-            return TaskStatusResponse.success(imageNames);
-            
         } catch (Exception e) {
             log.error("查询任务状态异常，promptId: {}", promptId, e);
             return TaskStatusResponse.error("查询任务状态异常: " + e.getMessage());
@@ -293,92 +459,325 @@ public class ComfyUIClientUtil {
     }
 
     /**
-     * 下载图片
+     * 任务日志中已完成任务的状态
+     */
+    private static TaskStatusResponse statusOf(TaskRecord record) {
+        if (record.getError() != null) {
+            return TaskStatusResponse.error(record.getError());
+        }
+        return TaskStatusResponse.success(record.getImages().stream().map(ComfyUIImage::getFilename).toList(),
+                record.getImageUrls());
+    }
+
+    /**
+     * 恢复重启前已提交到节点但未完成的任务：重新登记到状态表，已完成的按 /history 补全结果，
+     * 既不在历史也不在队列中的（节点已重启）标记失败，节点不可用时保持排队状态等待后续事件
+     */
+    private void recoverJournaledTasks() {
+        List<TaskRecord> unfinished = taskJournal.unfinished();
+        if (unfinished.isEmpty()) {
+            return;
+        }
+        log.info("恢复未完成任务: {} 个", unfinished.size());
+        for (TaskRecord record : unfinished) {
+            String promptId = record.getPromptId();
+            ComfyUIBackend backend = backendPool.get(record.getBackendId());
+            if (backend == null) {
+                taskJournal.complete(promptId, List.of(), List.of(), "任务所属节点已不存在: " + record.getBackendId());
+                continue;
+            }
+            String upstreamId = record.getUpstreamPromptId() == null ? promptId : record.getUpstreamPromptId();
+            taskTracker.alias(promptId, upstreamId);
+            taskTracker.register(promptId, backend.getId());
+            webhookDispatcher.resume(record);
+            try {
+                List<ComfyUIImage> images = fetchHistoryImages(backend, upstreamId);
+                if (images != null) {
+                    taskTracker.completeFromHistory(promptId, images);
+                } else if (queueSnapshot.getPosition(upstreamId) == null) {
+                    taskTracker.fail(promptId, "任务已不在节点队列中（节点可能已重启）");
+                }
+            } catch (UpstreamException e) {
+                log.warn("恢复任务时查询节点失败，节点: {}，prompt_id: {}，{}", backend.getId(), promptId, e.getMessage());
+            } catch (Exception e) {
+                taskTracker.fail(promptId, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 订阅任务状态变化
+     * @param promptId 任务ID
+     * @param subscriber 状态回调
+     * @return 取消订阅的操作，任务未被跟踪时返回 null
+     */
+    public Runnable subscribeTaskStatus(String promptId, Consumer<TaskStatusResponse> subscriber) {
+        return taskTracker.subscribe(promptId, subscriber);
+    }
+
+    private UpstreamHttpClient.Upstream comfyUpstream() {
+        return upstreamHttpClient.upstream(ComfyUIBackendPool.UPSTREAM);
+    }
+
+    /**
+     * 图片访问地址（经本服务图片代理，不暴露节点地址）
+     */
+    private String imageUrl(String backendId, ComfyUIImage image) {
+        return imageStore.imageUrl(backendId, image);
+    }
+
+    /**
+     * 图片代理：获取图片的本地缓存文件，未缓存时从节点下载
+     * @return 本地文件，节点上不存在时返回 null
+     */
+    public Path fetchImage(String backendId, String filename, String subfolder, String type) {
+        return imageStore.fetch(backendId, filename, subfolder, type);
+    }
+
+    /**
+     * 从节点 /history 查询任务输出图片
+     * @param backend 节点
+     * @param promptId 任务ID
+     * @return 图片列表，任务尚未完成时返回 null
+     * @throws UpstreamException 节点不可用或返回非 200（调用方可继续查询其他节点）
+     */
+    private List<ComfyUIImage> fetchHistoryImages(ComfyUIBackend backend, String promptId) {
+        UpstreamHttpClient.JsonResponse<JSONObject> response = comfyUpstream()
+                .getJson(backend.getBaseUrl() + "/history/" + promptId, JSONObject.class);
+
+        if (response.getStatus() != 200) {
+            throw new UpstreamException("查询任务历史失败，节点: " + backend.getId() + "，状态码: " + response.getStatus(),
+                    UpstreamException.SERVER_ERROR);
+        }
+
+        return parseHistoryImages(response.getBody(), promptId);
+    }
+
+    /**
+     * 解析 /history 响应中的任务输出图片
+     * @param historyObj /history/{prompt_id} 响应
+     * @param promptId 任务ID
+     * @return 图片列表，历史中没有该任务时返回 null
+     * @throws RuntimeException 任务执行失败
+     */
+    public static List<ComfyUIImage> parseHistoryImages(JSONObject historyObj, String promptId) {
+        JSONObject taskObj = historyObj == null ? null : historyObj.getJSONObject(promptId);
+        if (taskObj == null) {
+            return null;
+        }
+
+        JSONObject statusObj = taskObj.getJSONObject("status");
+        if (statusObj != null && "error".equals(statusObj.getString("status_str"))) {
+            throw new RuntimeException("任务执行失败");
+        }
+
+        // 解析生成的图片列表
+        List<ComfyUIImage> images = new ArrayList<>();
+        JSONObject outputsObj = taskObj.getJSONObject("outputs");
+        if (outputsObj != null) {
+            for (String key : outputsObj.keySet()) {
+                JSONArray nodeImages = outputsObj.getJSONObject(key).getJSONArray("images");
+                if (nodeImages != null) {
+                    images.addAll(parseOutputImages(nodeImages));
+                }
+            }
+        }
+        return images;
+    }
+
+    /**
+     * 下载图片（默认节点）
      * @param imageNames 图片文件名列表
      * @param saveDir 保存目录
      * @return 本地路径列表
      */
     public List<String> downloadImages(List<String> imageNames, String saveDir) {
-        List<String> savedPaths = new ArrayList<>();
-        FileUtil.mkdir(saveDir); // 创建目录（Hutool简化方法）
+        List<ComfyUIImage> images = imageNames.stream().map(name -> new ComfyUIImage(name, "", "output")).toList();
+        return downloadImages(backendPool.getDefault(), images, saveDir);
+    }
 
-        for (String imgName : imageNames) {
-            try {
-                HttpResponse response = HttpRequest.get(baseUrl + "/view?filename=" + imgName + "&type=output")
-                        .timeout(DEFAULT_TIMEOUT)
-                        .execute();
+    /**
+     * 下载任务生成的图片（从任务所属节点下载，子目录和类型取自任务输出）
+     * @param promptId 任务ID
+     * @param imageNames 图片文件名列表
+     * @param saveDir 保存目录
+     * @return 本地路径列表
+     */
+    public List<String> downloadImages(String promptId, List<String> imageNames, String saveDir) {
+        ComfyUIBackend backend = backendPool.ownerOf(promptId);
+        List<ComfyUIImage> outputs = taskTracker.getImages(promptId);
+        List<ComfyUIImage> images = new ArrayList<>(imageNames.size());
+        for (String name : imageNames) {
+            ComfyUIImage output = outputs == null ? null
+                    : outputs.stream().filter(image -> name.equals(image.getFilename())).findFirst().orElse(null);
+            images.add(output != null ? output : new ComfyUIImage(name, "", "output"));
+        }
+        return downloadImages(backend == null ? backendPool.getDefault() : backend, images, saveDir);
+    }
 
-                if (response.getStatus() != 200) {
-                    log.warn("下载图片失败，状态码: {}，图片名: {}", response.getStatus(), imgName);
+    /**
+     * 下载任务生成的全部图片
+     * @param promptId 任务ID
+     * @param saveDir 保存目录
+     * @return 本地路径列表，任务未完成时返回空列表
+     * @throws UpstreamException 未找到任务且有节点查询失败
+     */
+    public List<String> downloadTaskImages(String promptId, String saveDir) {
+        ComfyUIBackend backend = backendPool.ownerOf(promptId);
+        List<ComfyUIImage> images = taskTracker.getImages(promptId);
+        if (images == null) {
+            // 未被跟踪的任务逐个节点查询历史，单个节点失败时继续查询其他节点
+            UpstreamException failure = null;
+            for (ComfyUIBackend candidate : backendPool.getBackends()) {
+                try {
+                    images = fetchHistoryImages(candidate, promptId);
+                } catch (UpstreamException e) {
+                    log.warn("查询任务历史失败，节点: {}，{}", candidate.getId(), e.getMessage());
+                    failure = e;
                     continue;
                 }
-
-                // 保存图片（Hutool IO简化）
-                String savePath = StrUtil.format("{}/{}", saveDir, imgName);
-                try (FileOutputStream fos = new FileOutputStream(savePath)) {
-                    IoUtil.copy(response.bodyStream(), fos);
-                    fos.flush();
-                } catch (IOException e) {
-                    FileUtil.del(savePath); // 删除可能损坏的文件
-                    throw new RuntimeException("保存图片失败: " + savePath, e);
+                if (images != null) {
+                    backend = candidate;
+                    break;
                 }
-
-                savedPaths.add(savePath);
-                log.info("图片保存成功: {}", savePath);
-            } catch (Exception e) {
-                log.error("下载图片异常，图片名: {}", imgName, e);
             }
+            if (images == null && failure != null) {
+                throw failure;
+            }
+        }
+        if (images == null || images.isEmpty()) {
+            return List.of();
         }
-        return savedPaths;
+        return downloadImages(backend == null ? backendPool.getDefault() : backend, images, saveDir);
+    }
+
+    private List<String> downloadImages(ComfyUIBackend backend, List<ComfyUIImage> images, String saveDir) {
+        return imageDownloader.download(backend, images, Paths.get(saveDir), true).stream()
+                .map(Path::toString)
+                .toList();
     }
 
     /**
-     * 完整生图流程
+     * 完整生图流程（同步）
 
-     * @return 本地图片路径列表
+     * @return 图片URL列表
      */
     public List<String> generateImage(String promptStr) {
-        // 1. 提交任务
-        String promptId = submitTask(promptStr);
-        if (StrUtil.isBlank(promptId)) {
-            return Collections.emptyList();
+        try {
+            return generateImageAsync(promptStr).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
         }
+    }
+
+    /**
+     * 完整生图流程（异步）
+     * 提交在虚拟线程上完成，之后不占用任何线程：WebSocket 完成事件直接完成 Future，
+     * 超时由调度器触发；仅在 WebSocket 断开或重连期间由调度器定时降级查询 /history
+     * @return 图片URL列表
+     */
+    public CompletableFuture<List<String>> generateImageAsync(String promptStr) {
+        return generateImageAsync(ImageGenerationParams.of(promptStr), TaskPriority.INTERACTIVE, null);
+    }
 
-        // 2. 轮询等待完成
+    /**
+     * 完整生图流程（异步，经本地调度队列），排队时间计入超时；确定性模式命中缓存时直接返回缓存图片地址
+     * @param request 生图参数
+     * @param priority 优先级
+     * @param clientKey 调用方标识（公平调度）
+     * @return 图片URL列表
+     * @throws TaskRejectedException 本地队列已满
+     */
+    public CompletableFuture<List<String>> generateImageAsync(ImageGenerationParams request, TaskPriority priority, String clientKey) {
         long startTime = System.currentTimeMillis();
-        while (System.currentTimeMillis() - startTime < timeout * 1000L) {
-            TaskStatusResponse status = queryTaskStatus(promptId);
-            boolean finished = status.isFinished();
-
-            if (finished) {
-                List<String> imageNames = status.getImages();
-                if (imageNames.isEmpty()) {
-                    log.warn("任务完成但未生成图片");
-                    return Collections.emptyList();
-                }
-                List<String> imageResult = new ArrayList<>();
-                // 3. 返回图片URL
-                for (String imgName : imageNames) {
-                    imageResult.add(baseUrl + "/view?filename=" + imgName);
-                }
+        Map<String, Object> params = buildParams(request);
+        String workflowKey = workflowKey(params);
+        ComfyUIResultCache.CacheEntry cached = request.isDeterministic() ? resultCache.get(workflowKey) : null;
+        if (cached != null) {
+            log.info("命中生图缓存，key: {}", workflowKey);
+            return CompletableFuture.completedFuture(resultCache.imageUrls(cached));
+        }
 
-                return imageResult;
-            }
+        Flight flight = admitOrJoin(workflowKey, params, priority, clientKey);
+        String promptId = flight.task.getPromptId();
+        if (flight.created && request.isDeterministic()) {
+            cacheOnCompletion(promptId, workflowKey);
+        }
+        // 每个调用方各自计时，排队超时只由创建任务的调用方取消任务
+        return flight.task.getDispatched().copy()
+                .orTimeout(timeout, TimeUnit.SECONDS)
+                .whenComplete((backendId, e) -> {
+                    if (e instanceof TimeoutException && flight.created) {
+                        taskScheduler.cancel(promptId, "任务排队超时（超时时间: " + timeout + " 秒）");
+                    }
+                })
+                .thenCompose(backendId -> awaitImages(promptId, backendPool.get(backendId), startTime))
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof TimeoutException) {
+                        throw new RuntimeException("任务超时（超时时间: " + timeout + " 秒）", cause);
+                    }
+                    throw cause instanceof RuntimeException re ? re : new RuntimeException(cause.getMessage(), cause);
+                });
+    }
 
-            // 等待2秒重试
-            try {
-                TimeUnit.SECONDS.sleep(2);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.warn("任务等待被中断: {}", e.getMessage());
-                throw new RuntimeException("任务被中断", e);
-            }
+    private CompletableFuture<List<String>> awaitImages(String promptId, ComfyUIBackend backend, long startTime) {
+        long remaining = TimeUnit.SECONDS.toMillis(timeout) - (System.currentTimeMillis() - startTime);
+        AtomicInteger epoch = new AtomicInteger(backend.getListener().getConnectionEpoch());
+        ScheduledFuture<?> poller = pollScheduler.scheduleWithFixedDelay(
+                () -> ioExecutor.execute(() -> pollHistoryIfDisconnected(backend, promptId, epoch)),
+                POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+
+        return taskTracker.awaitCompletion(promptId)
+                .thenApply(images -> {
+                    if (images.isEmpty()) {
+                        log.warn("任务完成但未生成图片");
+                        return Collections.<String>emptyList();
+                    }
+                    List<String> imageResult = new ArrayList<>();
+                    // 返回图片URL
+                    for (ComfyUIImage image : images) {
+                        imageResult.add(imageUrl(backend.getId(), image));
+                    }
+                    log.info("任务完成，prompt_id: {}，耗时 {} 毫秒", promptId, System.currentTimeMillis() - startTime);
+                    return imageResult;
+                })
+                .orTimeout(Math.max(remaining, 1), TimeUnit.MILLISECONDS)
+                .whenComplete((urls, e) -> poller.cancel(false));
+    }
 
-            long elapsed = (System.currentTimeMillis() - startTime) / 1000;
-            log.info("等待任务完成... 已耗时 {} 秒", elapsed);
+    /**
+     * 合并后的生图任务
+     */
+    private static final class Flight {
+        private final ComfyUITaskScheduler.ScheduledTask task;
+        // 是否由本次请求创建（负责写缓存和排队超时取消）
+        private final boolean created;
+
+        private Flight(ComfyUITaskScheduler.ScheduledTask task, boolean created) {
+            this.task = task;
+            this.created = created;
         }
+    }
 
-        throw new RuntimeException("任务超时（超时时间: " + timeout + " 秒）");
+    /**
+     * WebSocket 断开或重连后（期间可能漏掉事件）降级查询 /history，只认已完成结果，查询异常交给超时兜底
+     */
+    private void pollHistoryIfDisconnected(ComfyUIBackend backend, String promptId, AtomicInteger epoch) {
+        ComfyUIWebSocketListener listener = backend.getListener();
+        int currentEpoch = listener.getConnectionEpoch();
+        if (listener.isConnected() && currentEpoch == epoch.get()) {
+            return;
+        }
+        try {
+            List<ComfyUIImage> images = fetchHistoryImages(backend, taskTracker.getUpstreamId(promptId));
+            if (images != null) {
+                taskTracker.completeFromHistory(promptId, images);
+            }
+            epoch.set(currentEpoch);
+        } catch (Exception e) {
+            log.warn("降级轮询任务状态失败，promptId: {}，{}", promptId, e.getMessage());
+        }
     }
 
-}
\ No newline at end of file
+}
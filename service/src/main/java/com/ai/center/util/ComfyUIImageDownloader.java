@@ -0,0 +1,202 @@
+package com.ai.center.util;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.ai.center.model.ComfyUIImage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * ComfyUI 图片并行下载
+ * 所有下载共用 comfyui 上游的连接池（长连接复用），全局并发数受限；每张图片先写临时文件，
+ * 校验长度后原子重命名，瞬时失败按退避重试，重试时通过 Range 从已下载位置续传
+ */
+@Slf4j
+@Component
+public class ComfyUIImageDownloader {
+
+    // 同时下载的图片数
+    @Value("${comfyUi.download.concurrency:4}")
+    private int concurrency;
+
+    // 瞬时失败的最大重试次数
+    @Value("${comfyUi.download.max-retries:3}")
+    private int maxRetries;
+
+    // 单次下载超时（秒）
+    private static final int DOWNLOAD_TIMEOUT = 60;
+
+    // 重试初始退避（毫秒），每次翻倍
+    private static final long RETRY_BACKOFF = 500;
+
+    private static final String PART_SUFFIX = ".part";
+
+    @Autowired
+    private UpstreamHttpClient upstreamHttpClient;
+
+    private final ExecutorService ioExecutor = TraceContext.wrap(Executors.newVirtualThreadPerTaskExecutor());
+
+    private Semaphore permits;
+
+    @PostConstruct
+    public void validateConfig() {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("图片下载并发数必须大于0");
+        }
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("图片下载重试次数不能小于0");
+        }
+        permits = new Semaphore(concurrency);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ioExecutor.shutdownNow();
+    }
+
+    /**
+     * 并行下载图片，总耗时接近最慢的一张
+     * @param backend 图片所在节点
+     * @param images 图片
+     * @param saveDir 保存目录
+     * @param keepSubfolder 是否在保存目录下保留子目录结构
+     * @return 下载成功的本地路径（按图片顺序，失败的图片跳过）
+     */
+    public List<Path> download(ComfyUIBackend backend, List<ComfyUIImage> images, Path saveDir, boolean keepSubfolder) {
+        List<CompletableFuture<Path>> futures = new ArrayList<>(images.size());
+        for (ComfyUIImage image : images) {
+            futures.add(CompletableFuture.supplyAsync(() -> downloadWithRetry(backend, image, saveDir, keepSubfolder), ioExecutor)
+                    .exceptionally(e -> {
+                        log.error("下载图片异常，节点: {}，图片名: {}", backend.getId(), image.getFilename(), e);
+                        return null;
+                    }));
+        }
+        List<Path> saved = new ArrayList<>(images.size());
+        for (CompletableFuture<Path> future : futures) {
+            Path path = future.join();
+            if (path != null) {
+                saved.add(path);
+            }
+        }
+        return saved;
+    }
+
+    private Path downloadWithRetry(ComfyUIBackend backend, ComfyUIImage image, Path saveDir, boolean keepSubfolder) {
+        String filename = image.getFilename();
+        String subfolder = StrUtil.nullToEmpty(image.getSubfolder());
+        if (StrUtil.isBlank(filename) || StrUtil.containsAny(filename, "/", "\\") || filename.contains("..") || subfolder.contains("..")) {
+            throw new IllegalArgumentException("图片名不合法: " + filename);
+        }
+        Path dir = keepSubfolder && !subfolder.isEmpty() ? saveDir.resolve(subfolder) : saveDir;
+        Path target = dir.resolve(filename);
+        Path part = dir.resolve("." + filename + "." + IdUtil.fastSimpleUUID() + PART_SUFFIX);
+
+        permits.acquireUninterruptibly();
+        try {
+            Files.createDirectories(dir);
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    downloadOnce(backend, image, part);
+                    Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    log.info("图片保存成功: {}", target);
+                    return target;
+                } catch (TransientDownloadException | UpstreamException | IOException e) {
+                    if (attempt >= maxRetries) {
+                        throw new RuntimeException("下载图片失败（已重试 " + attempt + " 次）: " + e.getMessage(), e);
+                    }
+                    log.warn("下载图片失败，{} 毫秒后重试，图片名: {}，{}", RETRY_BACKOFF << attempt, filename, e.getMessage());
+                    Thread.sleep(RETRY_BACKOFF << attempt);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("创建图片目录失败: " + dir, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("下载图片被中断", e);
+        } finally {
+            permits.release();
+            try {
+                Files.deleteIfExists(part);
+            } catch (IOException ignored) {
+                // 临时文件删除失败不影响结果
+            }
+        }
+    }
+
+    /**
+     * 下载一次：临时文件已有内容时从断点续传，写完后校验长度
+     */
+    private void downloadOnce(ComfyUIBackend backend, ComfyUIImage image, Path part) throws IOException {
+        long existing = Files.exists(part) ? Files.size(part) : 0;
+        UpstreamHttpClient.Upstream upstream = upstreamHttpClient.upstream(ComfyUIBackendPool.UPSTREAM);
+        HttpRequest.Builder builder = upstream.request(viewUrl(backend, image))
+                .timeout(Duration.ofSeconds(DOWNLOAD_TIMEOUT))
+                .GET();
+        if (existing > 0) {
+            builder.header("Range", "bytes=" + existing + "-");
+        }
+        // 206 追加写入；200（不支持 Range）从头写入；其他状态丢弃响应体
+        HttpResponse<Path> response = upstream.send(builder.build(), info -> switch (info.statusCode()) {
+            case 206 -> HttpResponse.BodySubscribers.ofFile(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            case 200 -> HttpResponse.BodySubscribers.ofFile(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            default -> HttpResponse.BodySubscribers.replacing(part);
+        });
+
+        int status = response.statusCode();
+        long expected;
+        if (status == 206) {
+            String contentRange = response.headers().firstValue("Content-Range").orElse("");
+            int slash = contentRange.lastIndexOf('/');
+            expected = slash >= 0 && !contentRange.endsWith("*") ? Long.parseLong(contentRange.substring(slash + 1)) : -1;
+        } else if (status == 200) {
+            expected = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        } else if (status == 416) {
+            // 断点已越界，丢弃临时文件从头下载
+            Files.deleteIfExists(part);
+            throw new TransientDownloadException("续传位置无效");
+        } else if (status >= 500 || status == 429) {
+            throw new TransientDownloadException("状态码: " + status);
+        } else {
+            throw new RuntimeException("下载图片失败，状态码: " + status + "，图片名: " + image.getFilename());
+        }
+
+        long actual = Files.size(part);
+        if (expected >= 0 && actual != expected) {
+            throw new TransientDownloadException("图片长度不一致，期望 " + expected + "，实际 " + actual);
+        }
+    }
+
+    private static String viewUrl(ComfyUIBackend backend, ComfyUIImage image) {
+        return backend.getBaseUrl() + "/view?filename=" + encode(image.getFilename())
+                + "&subfolder=" + encode(StrUtil.nullToEmpty(image.getSubfolder()))
+                + "&type=" + encode(StrUtil.blankToDefault(image.getType(), "output"));
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /**
+     * 可重试的下载失败
+     */
+    private static final class TransientDownloadException extends RuntimeException {
+        private TransientDownloadException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.ai.center.util;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.ai.center.model.ComfyUIImage;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * ComfyUI 图片代理的本地磁盘缓存
+ * 对外只暴露本服务的图片地址，首次访问时从节点流式下载到磁盘（并发请求合并为一次下载），
+ * 之后直接从磁盘输出；生成的图片内容不会变化，按文件写入时间淘汰超出容量的部分
+ */
+@Slf4j
+@Component
+public class ComfyUIImageStore {
+
+    @Value("${comfyUi.image-cache.dir:data/comfyui-images}")
+    private String cacheDir;
+
+    // 磁盘缓存上限（MB）
+    @Value("${comfyUi.image-cache.max-size-mb:2048}")
+    private long maxSizeMb;
+
+    // 图片代理的访问路径前缀
+    @Value("${comfyUi.image-cache.url-prefix:/comfyui/image}")
+    private String urlPrefix;
+
+    // 下载超时（秒）
+    private static final int DOWNLOAD_TIMEOUT = 60;
+
+    private static final String TMP_DIR = ".tmp";
+    private static final Set<String> IMAGE_TYPES = Set.of("output", "input", "temp");
+
+    @Autowired
+    private ComfyUIBackendPool backendPool;
+
+    @Autowired
+    private UpstreamHttpClient upstreamHttpClient;
+
+    private final ExecutorService ioExecutor = TraceContext.wrap(Executors.newVirtualThreadPerTaskExecutor());
+
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("comfyui-image-cleaner").daemon().factory());
+
+    // 缓存键 -> 下载中的任务
+    private final Map<String, CompletableFuture<Path>> downloading = new ConcurrentHashMap<>();
+
+    private Path root;
+
+    @PostConstruct
+    public void init() {
+        if (maxSizeMb <= 0) {
+            throw new IllegalArgumentException("图片缓存容量必须大于0");
+        }
+        root = Paths.get(cacheDir).toAbsolutePath().normalize();
+        FileUtil.del(root.resolve(TMP_DIR));
+        FileUtil.mkdir(root.resolve(TMP_DIR).toFile());
+        cleaner.scheduleWithFixedDelay(this::evictOverflow, 1, 10, TimeUnit.MINUTES);
+        log.info("图片缓存初始化完成，目录: {}", root);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        cleaner.shutdownNow();
+        ioExecutor.shutdownNow();
+    }
+
+    /**
+     * 图片代理地址
+     * @param backendId 生成图片的节点ID
+     * @param image 图片
+     */
+    public String imageUrl(String backendId, ComfyUIImage image) {
+        StringBuilder url = new StringBuilder(urlPrefix).append('/').append(encode(image.getFilename()));
+        String separator = "?";
+        if (backendId != null) {
+            url.append(separator).append("backend=").append(encode(backendId));
+            separator = "&";
+        }
+        if (StrUtil.isNotEmpty(image.getSubfolder())) {
+            url.append(separator).append("subfolder=").append(encode(image.getSubfolder()));
+            separator = "&";
+        }
+        if (image.getType() != null && !"output".equals(image.getType())) {
+            url.append(separator).append("type=").append(encode(image.getType()));
+        }
+        return url.toString();
+    }
+
+    /**
+     * 获取图片的本地文件，未缓存时从节点下载
+     * @param backendId 节点ID，为空时使用默认节点
+     * @param filename 文件名
+     * @param subfolder 子目录
+     * @param type 图片类型，默认 output
+     * @return 本地文件，节点上不存在时返回 null
+     * @throws IllegalArgumentException 参数不合法
+     */
+    public Path fetch(String backendId, String filename, String subfolder, String type) {
+        ComfyUIBackend backend = backendId == null ? backendPool.getDefault() : backendPool.get(backendId);
+        String imageType = StrUtil.blankToDefault(type, "output");
+        String folder = StrUtil.nullToEmpty(subfolder);
+        if (backend == null) {
+            throw new IllegalArgumentException("节点不存在: " + backendId);
+        }
+        if (StrUtil.isBlank(filename) || StrUtil.containsAny(filename, "/", "\\") || filename.contains("..")
+                || folder.contains("..") || !IMAGE_TYPES.contains(imageType)) {
+            throw new IllegalArgumentException("图片参数不合法");
+        }
+
+        String key = ComfyUIResultCache.key(String.join("\n", backend.getId(), imageType, folder, filename)
+                .getBytes(StandardCharsets.UTF_8));
+        String extension = FileUtil.extName(filename);
+        Path file = root.resolve(key.substring(0, 2)).resolve(StrUtil.isEmpty(extension) ? key : key + "." + extension);
+        if (Files.isRegularFile(file)) {
+            return file;
+        }
+
+        CompletableFuture<Path> future = downloading.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(
+                () -> download(backend, filename, folder, imageType, file), ioExecutor));
+        future.whenComplete((path, e) -> downloading.remove(key, future));
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * 图片 ETag：缓存文件名即图片标识的哈希，图片内容不会变化
+     */
+    public static String etag(Path file) {
+        return "\"" + FileUtil.mainName(file.toFile()) + "\"";
+    }
+
+    private Path download(ComfyUIBackend backend, String filename, String subfolder, String type, Path target) {
+        String url = backend.getBaseUrl() + "/view?filename=" + encode(filename)
+                + "&subfolder=" + encode(subfolder) + "&type=" + encode(type);
+        Path tmp = root.resolve(TMP_DIR).resolve(IdUtil.fastSimpleUUID());
+        try {
+            HttpRequest request = upstreamHttpClient.upstream(ComfyUIBackendPool.UPSTREAM).request(url)
+                    .timeout(Duration.ofSeconds(DOWNLOAD_TIMEOUT))
+                    .GET()
+                    .build();
+            HttpResponse<Path> response = upstreamHttpClient.upstream(ComfyUIBackendPool.UPSTREAM)
+                    .send(request, HttpResponse.BodyHandlers.ofFile(tmp));
+            if (response.statusCode() == 404) {
+                return null;
+            }
+            if (response.statusCode() != 200) {
+                throw new RuntimeException("下载图片失败，状态码: " + response.statusCode());
+            }
+            Files.createDirectories(target.getParent());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            log.info("图片已缓存，节点: {}，图片名: {}", backend.getId(), filename);
+            return target;
+        } catch (IOException e) {
+            throw new UncheckedIOException("保存图片失败: " + e.getMessage(), e);
+        } finally {
+            FileUtil.del(tmp);
+        }
+    }
+
+    /**
+     * 超出容量时按写入时间从旧到新删除
+     */
+    private void evictOverflow() {
+        long maxBytes = maxSizeMb * 1024 * 1024;
+        List<Map.Entry<Path, BasicFileAttributes>> files = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                if (path.startsWith(root.resolve(TMP_DIR))) {
+                    continue;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (attributes.isRegularFile()) {
+                    files.add(Map.entry(path, attributes));
+                    total += attributes.size();
+                }
+            }
+        } catch (IOException e) {
+            log.warn("扫描图片缓存失败: {}", e.getMessage());
+            return;
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        files.sort(Comparator.comparing(entry -> entry.getValue().lastModifiedTime()));
+        int deleted = 0;
+        for (Map.Entry<Path, BasicFileAttributes> entry : files) {
+            if (total <= maxBytes) {
+                break;
+            }
+            FileUtil.del(entry.getKey());
+            total -= entry.getValue().size();
+            deleted++;
+        }
+        log.info("图片缓存超出容量，已删除 {} 个文件", deleted);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+}
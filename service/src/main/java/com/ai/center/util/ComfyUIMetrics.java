@@ -0,0 +1,86 @@
+package com.ai.center.util;
+
+import com.ai.center.model.CacheStatsResponse;
+import com.ai.center.model.QueueStatusResponse;
+import com.ai.center.model.TaskPriority;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * ComfyUI 运行指标
+ * 调度队列深度、各节点在途任务、结果缓存命中、回调积压等，采集时读取各组件的现有统计，不额外计数
+ * 任务耗时（comfyui.task.*）由 ComfyUITaskTracker 记录，上游请求（upstream.*）由 UpstreamHttpClient 记录
+ */
+@Component
+public class ComfyUIMetrics implements MeterBinder {
+
+    @Autowired
+    private ComfyUITaskScheduler taskScheduler;
+
+    @Autowired
+    private ComfyUITaskTracker taskTracker;
+
+    @Autowired
+    private ComfyUIBackendPool backendPool;
+
+    @Autowired
+    private ComfyUIClientUtil comfyUIClientUtil;
+
+    @Autowired
+    private ComfyUIWebhookDispatcher webhookDispatcher;
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        // 本地调度队列
+        for (TaskPriority priority : TaskPriority.values()) {
+            String key = priority.name().toLowerCase();
+            schedulerGauge(registry, "comfyui.scheduler.queued", Tags.of("priority", key),
+                    status -> status.getQueuedByPriority().getOrDefault(key, 0));
+        }
+        schedulerGauge(registry, "comfyui.scheduler.capacity", Tags.empty(), QueueStatusResponse.SchedulerStatus::getCapacity);
+        schedulerGauge(registry, "comfyui.scheduler.in_flight", Tags.empty(), QueueStatusResponse.SchedulerStatus::getInFlight);
+        FunctionCounter.builder("comfyui.scheduler.dispatched", taskScheduler, scheduler -> scheduler.getStatus().getDispatched())
+                .description("已提交到节点的任务数").register(registry);
+        FunctionCounter.builder("comfyui.scheduler.rejected", taskScheduler, scheduler -> scheduler.getStatus().getRejected())
+                .description("队列已满被拒绝的任务数").register(registry);
+
+        // 各节点
+        for (ComfyUIBackend backend : backendPool.getBackends()) {
+            Tags tags = Tags.of("backend", backend.getId());
+            Gauge.builder("comfyui.backend.in_flight", backend, ComfyUIBackend::getInFlight)
+                    .tags(tags).description("节点上已提交未完成的任务数").register(registry);
+            Gauge.builder("comfyui.backend.queue_depth", backend, ComfyUIBackend::getQueueDepth)
+                    .tags(tags).description("节点 ComfyUI 队列深度").register(registry);
+            Gauge.builder("comfyui.backend.healthy", backend, b -> b.isHealthy() ? 1 : 0)
+                    .tags(tags).register(registry);
+        }
+
+        // 任务与缓存
+        Gauge.builder("comfyui.tasks.active", taskTracker, ComfyUITaskTracker::getActiveCount)
+                .description("未完成的任务数").register(registry);
+        FunctionCounter.builder("comfyui.cache.requests", comfyUIClientUtil, util -> util.getCacheStats().getHits())
+                .tags("result", "hit").description("确定性模式结果缓存查询次数").register(registry);
+        FunctionCounter.builder("comfyui.cache.requests", comfyUIClientUtil, util -> util.getCacheStats().getMisses())
+                .tags("result", "miss").description("确定性模式结果缓存查询次数").register(registry);
+        FunctionCounter.builder("comfyui.requests.deduplicated", comfyUIClientUtil, util -> util.getCacheStats().getDeduplicated())
+                .description("合并到进行中任务的请求数").register(registry);
+        Gauge.builder("comfyui.cache.entries", comfyUIClientUtil, util -> util.getCacheStats().getEntries())
+                .register(registry);
+
+        Gauge.builder("comfyui.webhook.pending", webhookDispatcher, ComfyUIWebhookDispatcher::getPending)
+                .description("待投递（含等待重试）的回调数").register(registry);
+    }
+
+    private void schedulerGauge(MeterRegistry registry, String name, Tags tags,
+                                ToDoubleFunction<QueueStatusResponse.SchedulerStatus> value) {
+        Gauge.builder(name, taskScheduler, scheduler -> value.applyAsDouble(scheduler.getStatus()))
+                .tags(tags).register(registry);
+    }
+}
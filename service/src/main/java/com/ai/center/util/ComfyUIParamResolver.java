@@ -0,0 +1,181 @@
+package com.ai.center.util;
+
+import cn.hutool.core.util.IdUtil;
+import cn.hutool.core.util.StrUtil;
+import com.ai.center.model.ImageGenerationParams;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 生图参数解析
+ * 把请求中的类型化参数校验后转换为工作流注入参数，未指定的参数沿用工作流中的默认值；
+ * 参数必须在当前工作流中有对应的注入点（_meta.inject），否则拒绝，避免参数被静默忽略
+ */
+@Component
+public class ComfyUIParamResolver {
+
+    // 图片宽高上限（像素）
+    @Value("${comfyUi.params.max-size:2048}")
+    private int maxSize;
+
+    // 单张图片像素上限（宽 x 高）
+    @Value("${comfyUi.params.max-pixels:4194304}")
+    private long maxPixels;
+
+    // 采样步数上限
+    @Value("${comfyUi.params.max-steps:50}")
+    private int maxSteps;
+
+    // 单次执行生成图片数上限
+    @Value("${comfyUi.params.max-batch-size:4}")
+    private int maxBatchSize;
+
+    private static final int MIN_SIZE = 64;
+    private static final int SIZE_ALIGNMENT = 8;
+    private static final double MAX_CFG = 30;
+    private static final int MAX_NEGATIVE_PROMPT_LENGTH = 1000;
+
+    // ComfyUI KSampler 内置采样器
+    private static final Set<String> SAMPLERS = Set.of(
+            "euler", "euler_cfg_pp", "euler_ancestral", "euler_ancestral_cfg_pp", "heun", "heunpp2",
+            "dpm_2", "dpm_2_ancestral", "lms", "dpm_fast", "dpm_adaptive",
+            "dpmpp_2s_ancestral", "dpmpp_2s_ancestral_cfg_pp", "dpmpp_sde", "dpmpp_sde_gpu",
+            "dpmpp_2m", "dpmpp_2m_cfg_pp", "dpmpp_2m_sde", "dpmpp_2m_sde_gpu", "dpmpp_3m_sde", "dpmpp_3m_sde_gpu",
+            "ddpm", "lcm", "ipndm", "ipndm_v", "deis", "res_multistep", "res_multistep_cfg_pp",
+            "res_multistep_ancestral", "res_multistep_ancestral_cfg_pp", "gradient_estimation", "er_sde",
+            "seeds_2", "seeds_3", "sa_solver", "sa_solver_pece", "ddim", "uni_pc", "uni_pc_bh2");
+
+    // ComfyUI KSampler 内置调度器
+    private static final Set<String> SCHEDULERS = Set.of(
+            "simple", "sgm_uniform", "karras", "exponential", "ddim_uniform", "beta", "normal",
+            "linear_quadratic", "kl_optimal");
+
+    @PostConstruct
+    public void validateConfig() {
+        if (maxSize < MIN_SIZE || maxPixels <= 0 || maxSteps <= 0 || maxBatchSize <= 0) {
+            throw new IllegalArgumentException("生图参数上限配置不合法");
+        }
+    }
+
+    /**
+     * 校验并生成工作流注入参数：指定种子优先，确定性模式下由提示词派生种子，否则随机
+     * @param request 生图参数
+     * @param workflow 当前工作流模板
+     * @return 注入参数
+     * @throws IllegalArgumentException 参数不合法或工作流不支持
+     */
+    public Map<String, Object> resolve(ImageGenerationParams request, ComfyUIWorkflowTemplate workflow) {
+        Map<String, Object> params = new HashMap<>();
+        params.put(ComfyUIWorkflowTemplate.PARAM_SEED, seed(request));
+        params.put(ComfyUIWorkflowTemplate.PARAM_PROMPT, request.getPrompt());
+
+        if (request.getNegativePrompt() != null) {
+            if (request.getNegativePrompt().length() > MAX_NEGATIVE_PROMPT_LENGTH) {
+                throw new IllegalArgumentException("反向提示词长度不能超过" + MAX_NEGATIVE_PROMPT_LENGTH + "字符");
+            }
+            put(params, workflow, ComfyUIWorkflowTemplate.PARAM_NEGATIVE_PROMPT, request.getNegativePrompt());
+        }
+        if (request.getWidth() != null) {
+            put(params, workflow, ComfyUIWorkflowTemplate.PARAM_WIDTH, checkSize("width", request.getWidth()));
+        }
+        if (request.getHeight() != null) {
+            put(params, workflow, ComfyUIWorkflowTemplate.PARAM_HEIGHT, checkSize("height", request.getHeight()));
+        }
+        if ((request.getWidth() != null || request.getHeight() != null)
+                && dimension(params, workflow, ComfyUIWorkflowTemplate.PARAM_WIDTH)
+                * dimension(params, workflow, ComfyUIWorkflowTemplate.PARAM_HEIGHT) > maxPixels) {
+            throw new IllegalArgumentException("图片像素数不能超过" + maxPixels);
+        }
+        if (request.getSteps() != null) {
+            checkRange("steps", request.getSteps(), 1, maxSteps);
+            put(params, workflow, ComfyUIWorkflowTemplate.PARAM_STEPS, request.getSteps());
+        }
+        if (request.getCfg() != null) {
+            if (!(request.getCfg() >= 0 && request.getCfg() <= MAX_CFG)) {
+                throw new IllegalArgumentException("cfg 取值范围为 0~" + (int) MAX_CFG);
+            }
+            put(params, workflow, ComfyUIWorkflowTemplate.PARAM_CFG, request.getCfg());
+        }
+        if (request.getSampler() != null) {
+            if (!SAMPLERS.contains(request.getSampler())) {
+                throw new IllegalArgumentException("不支持的采样器: " + request.getSampler());
+            }
+            put(params, workflow, ComfyUIWorkflowTemplate.PARAM_SAMPLER, request.getSampler());
+        }
+        if (request.getScheduler() != null) {
+            if (!SCHEDULERS.contains(request.getScheduler())) {
+                throw new IllegalArgumentException("不支持的调度器: " + request.getScheduler());
+            }
+            put(params, workflow, ComfyUIWorkflowTemplate.PARAM_SCHEDULER, request.getScheduler());
+        }
+        if (request.getBatchSize() != null) {
+            checkRange("batchSize", request.getBatchSize(), 1, maxBatchSize);
+            put(params, workflow, ComfyUIWorkflowTemplate.PARAM_BATCH_SIZE, request.getBatchSize());
+        }
+        return params;
+    }
+
+    /**
+     * 参数上限，供调用方选择参数
+     */
+    public Map<String, Object> getLimits() {
+        Map<String, Object> limits = new HashMap<>();
+        limits.put("minSize", MIN_SIZE);
+        limits.put("maxSize", maxSize);
+        limits.put("sizeAlignment", SIZE_ALIGNMENT);
+        limits.put("maxPixels", maxPixels);
+        limits.put("maxSteps", maxSteps);
+        limits.put("maxCfg", MAX_CFG);
+        limits.put("maxBatchSize", maxBatchSize);
+        limits.put("samplers", SAMPLERS);
+        limits.put("schedulers", SCHEDULERS);
+        return limits;
+    }
+
+    private long seed(ImageGenerationParams request) {
+        if (request.getSeed() != null) {
+            return request.getSeed();
+        }
+        if (request.isDeterministic()) {
+            return ByteBuffer.wrap(ComfyUIResultCache.sha256(request.getPrompt().getBytes(StandardCharsets.UTF_8))).getLong()
+                    & Long.MAX_VALUE;
+        }
+        return IdUtil.getSnowflakeNextId();
+    }
+
+    private void put(Map<String, Object> params, ComfyUIWorkflowTemplate workflow, String param, Object value) {
+        if (!workflow.hasParam(param)) {
+            throw new IllegalArgumentException(StrUtil.format("当前工作流不支持参数: {}（工作流: {}）", param, workflow.getName()));
+        }
+        params.put(param, value);
+    }
+
+    private int checkSize(String name, int value) {
+        checkRange(name, value, MIN_SIZE, maxSize);
+        if (value % SIZE_ALIGNMENT != 0) {
+            throw new IllegalArgumentException(name + " 必须是" + SIZE_ALIGNMENT + "的倍数");
+        }
+        return value;
+    }
+
+    private void checkRange(String name, int value, int min, int max) {
+        if (value < min || value > max) {
+            throw new IllegalArgumentException(StrUtil.format("{} 取值范围为 {}~{}", name, min, max));
+        }
+    }
+
+    /**
+     * 实际生效的宽或高（请求值或工作流默认值），工作流没有该注入点时按1计
+     */
+    private long dimension(Map<String, Object> params, ComfyUIWorkflowTemplate workflow, String param) {
+        Object value = params.containsKey(param) ? params.get(param) : workflow.getDefaults().get(param);
+        return value instanceof Number number ? number.longValue() : 1L;
+    }
+}
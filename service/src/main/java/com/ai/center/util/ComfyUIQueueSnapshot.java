@@ -0,0 +1,332 @@
+package com.ai.center.util;
+
+import com.ai.center.model.QueueStatusResponse;
+import com.ai.center.model.TaskStatusResponse;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ComfyUI 队列快照
+ * 所有节点的 /queue 汇总为一份共享快照，附带 prompt_id -> 排队位置索引；读取时快照不超过最大陈旧时间直接返回，
+ * 否则等待刷新，并发的刷新请求合并为一次。有读取方或有排队中的跟踪任务时后台定时刷新，
+ * 节点广播队列变化时标记快照过期，并刷新跟踪任务的排队位置
+ */
+@Slf4j
+@Component
+public class ComfyUIQueueSnapshot {
+
+    // 快照最大陈旧时间（毫秒），超过后读取方等待刷新
+    @Value("${comfyUi.queue-snapshot.max-staleness:500}")
+    private long maxStaleness;
+
+    // 后台刷新间隔（毫秒）
+    @Value("${comfyUi.queue-snapshot.refresh-interval:500}")
+    private long refreshInterval;
+
+    // 最近一次读取后持续后台刷新的时间（毫秒）
+    private static final long READER_IDLE_TIMEOUT = 30000;
+
+    @Autowired
+    private ComfyUIBackendPool backendPool;
+
+    @Autowired
+    private ComfyUITaskTracker taskTracker;
+
+    @Autowired
+    private UpstreamHttpClient upstreamHttpClient;
+
+    private final ExecutorService ioExecutor = TraceContext.wrap(Executors.newVirtualThreadPerTaskExecutor());
+
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("comfyui-queue-snapshot").daemon().factory());
+
+    // 进行中的刷新（合并并发刷新）
+    private final AtomicReference<CompletableFuture<Snapshot>> refreshing = new AtomicReference<>();
+
+    private volatile Snapshot current;
+
+    // 节点广播队列变化后置位，下一次读取或后台刷新时重新拉取
+    private volatile boolean dirty = true;
+
+    private volatile long lastReadAt;
+
+    @PostConstruct
+    public void init() {
+        if (maxStaleness <= 0 || refreshInterval <= 0) {
+            throw new IllegalArgumentException("队列快照刷新间隔和最大陈旧时间必须大于0");
+        }
+        taskTracker.onQueueChanged(this::onQueueChanged);
+        refresher.scheduleWithFixedDelay(this::backgroundRefresh, refreshInterval, refreshInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+        ioExecutor.shutdownNow();
+    }
+
+    /**
+     * 汇总队列状态（返回副本，调用方可修改）
+     * 部分节点查询失败时照常返回，失败原因记录在对应节点状态中，系统状态为 degraded
+     * @throws UpstreamException 所有节点均查询失败
+     */
+    public QueueStatusResponse getStatus() {
+        QueueStatusResponse status = read().status;
+        QueueStatusResponse copy = new QueueStatusResponse();
+        copy.setRunning(status.getRunning());
+        copy.setPending(status.getPending());
+        copy.setTotalTasks(status.getTotalTasks());
+        copy.setSystemStatus(status.getSystemStatus());
+        copy.setMaxConcurrentTasks(status.getMaxConcurrentTasks());
+        copy.setNodes(status.getNodes());
+        copy.setSnapshotTime(status.getSnapshotTime());
+        return copy;
+    }
+
+    /**
+     * 查询任务在节点队列中的位置
+     * @param upstreamPromptId 节点上的任务ID
+     * @return 位置，不在任何节点队列中时返回 null
+     * @throws UpstreamException 所有节点均查询失败
+     */
+    public Position getPosition(String upstreamPromptId) {
+        return read().index.get(upstreamPromptId);
+    }
+
+    /**
+     * 任务在节点队列中的位置
+     * @param backend 节点ID
+     * @param running 是否正在执行
+     * @param ahead 同一节点上排在前面的任务数（执行中为 0）
+     */
+    public record Position(String backend, boolean running, int ahead) {
+    }
+
+    private Snapshot read() {
+        lastReadAt = System.currentTimeMillis();
+        Snapshot snapshot = current;
+        if (snapshot != null && !dirty && System.currentTimeMillis() - snapshot.fetchedAt <= maxStaleness) {
+            return snapshot;
+        }
+        try {
+            return refresh().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new UpstreamException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 刷新快照，已有刷新进行中时直接复用
+     */
+    private CompletableFuture<Snapshot> refresh() {
+        while (true) {
+            CompletableFuture<Snapshot> existing = refreshing.get();
+            if (existing != null) {
+                return existing;
+            }
+            CompletableFuture<Snapshot> future = new CompletableFuture<>();
+            if (refreshing.compareAndSet(null, future)) {
+                ioExecutor.execute(() -> {
+                    try {
+                        future.complete(load());
+                    } catch (Throwable e) {
+                        future.completeExceptionally(e);
+                    } finally {
+                        refreshing.compareAndSet(future, null);
+                    }
+                });
+                return future;
+            }
+        }
+    }
+
+    private void onQueueChanged(String backendId) {
+        dirty = true;
+        if (taskTracker.hasPendingTasks(backendId)) {
+            refreshQuietly();
+        }
+    }
+
+    /**
+     * 有读取方或有排队中的跟踪任务时定时刷新，否则不访问节点
+     */
+    private void backgroundRefresh() {
+        Snapshot snapshot = current;
+        boolean stale = dirty || snapshot == null || System.currentTimeMillis() - snapshot.fetchedAt >= refreshInterval;
+        if (!stale) {
+            return;
+        }
+        boolean wanted = System.currentTimeMillis() - lastReadAt < READER_IDLE_TIMEOUT
+                || backendPool.getBackends().stream().anyMatch(backend -> taskTracker.hasPendingTasks(backend.getId()));
+        if (wanted) {
+            refreshQuietly();
+        }
+    }
+
+    private void refreshQuietly() {
+        refresh().whenComplete((snapshot, e) -> {
+            if (e != null) {
+                log.warn("刷新队列快照失败: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 并行拉取所有节点队列，生成快照并刷新跟踪任务的排队位置
+     */
+    private Snapshot load() {
+        dirty = false;
+        long fetchedAt = System.currentTimeMillis();
+        List<ComfyUIBackend> backends = backendPool.getBackends();
+        List<CompletableFuture<QueueStatusResponse>> futures = backends.stream()
+                .map(backend -> CompletableFuture.supplyAsync(() -> fetchQueueStatus(backend), ioExecutor))
+                .toList();
+
+        List<QueueStatusResponse.TaskInfo> running = new ArrayList<>();
+        List<QueueStatusResponse.TaskInfo> pending = new ArrayList<>();
+        List<QueueStatusResponse.NodeStatus> nodes = new ArrayList<>();
+        Map<String, Position> index = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        int maxConcurrentTasks = 0;
+        for (int i = 0; i < backends.size(); i++) {
+            ComfyUIBackend backend = backends.get(i);
+            QueueStatusResponse.NodeStatus node = new QueueStatusResponse.NodeStatus();
+            node.setBackend(backend.getId());
+            node.setBaseUrl(backend.getBaseUrl());
+            node.setConnected(backend.isConnected());
+            try {
+                QueueStatusResponse nodeQueue = futures.get(i).join();
+                running.addAll(nodeQueue.getRunning());
+                pending.addAll(nodeQueue.getPending());
+                nodeQueue.getRunning().forEach(task -> index.put(task.getPromptId(), new Position(backend.getId(), true, 0)));
+                for (int position = 0; position < nodeQueue.getPending().size(); position++) {
+                    index.put(nodeQueue.getPending().get(position).getPromptId(), new Position(backend.getId(), false, position));
+                }
+                node.setHealthy(backend.isHealthy());
+                node.setRunning(nodeQueue.getRunning().size());
+                node.setPending(nodeQueue.getPending().size());
+                node.setMaxConcurrentTasks(nodeQueue.getMaxConcurrentTasks());
+                maxConcurrentTasks += nodeQueue.getMaxConcurrentTasks();
+                if (taskTracker.hasPendingTasks(backend.getId())) {
+                    taskTracker.updateQueuePositions(nodeQueue);
+                }
+            } catch (CompletionException e) {
+                String error = e.getCause() == null ? e.getMessage() : e.getCause().getMessage();
+                node.setHealthy(false);
+                node.setError(error);
+                errors.add(backend.getId() + ": " + error);
+            }
+            nodes.add(node);
+        }
+        if (errors.size() == backends.size()) {
+            throw new UpstreamException("所有节点队列查询失败，" + String.join("；", errors));
+        }
+
+        QueueStatusResponse status = new QueueStatusResponse();
+        status.setRunning(List.copyOf(running));
+        status.setPending(List.copyOf(pending));
+        status.setNodes(List.copyOf(nodes));
+        status.setTotalTasks(running.size() + pending.size());
+        status.setSystemStatus(!errors.isEmpty() ? "degraded" : status.getTotalTasks() > 0 ? "busy" : "idle");
+        status.setMaxConcurrentTasks(maxConcurrentTasks);
+        status.setSnapshotTime(fetchedAt);
+        Snapshot snapshot = new Snapshot(status, Map.copyOf(index), fetchedAt);
+        current = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * 查询单个节点的队列状态
+     * @param backend 节点
+     * @return 节点队列状态
+     * @throws UpstreamException 网络异常、超时或熔断打开
+     * @throws RuntimeException 节点返回错误状态码
+     */
+    private QueueStatusResponse fetchQueueStatus(ComfyUIBackend backend) {
+        UpstreamHttpClient.JsonResponse<JSONObject> response;
+        try {
+            response = upstreamHttpClient.upstream(ComfyUIBackendPool.UPSTREAM)
+                    .getJson(backend.getBaseUrl() + "/queue", JSONObject.class);
+        } catch (UpstreamException e) {
+            backend.recordFailure();
+            throw e;
+        }
+
+        if (response.getStatus() != 200) {
+            log.warn("查询队列状态失败，节点: {}，状态码: {}", backend.getId(), response.getStatus());
+            backend.recordFailure();
+            throw new RuntimeException("查询队列状态失败，状态码: " + response.getStatus());
+        }
+
+        JSONObject queueObj = response.getBody();
+        QueueStatusResponse result = new QueueStatusResponse();
+
+        // 队列项格式: [number, prompt_id, prompt, extra_data, outputs_to_execute]
+        result.setRunning(parseTaskInfos(queueObj.getJSONArray("queue_running"), "running", backend));
+        result.setPending(parseTaskInfos(queueObj.getJSONArray("queue_pending"), "queued", backend));
+
+        result.setTotalTasks(result.getRunning().size() + result.getPending().size());
+        result.setSystemStatus(result.getTotalTasks() > 0 ? "busy" : "idle");
+        result.setMaxConcurrentTasks(1); // ComfyUI默认单任务执行
+        result.setNodes(List.of());
+        backend.setQueueDepth(result.getTotalTasks());
+        backend.recordSuccess();
+        return result;
+    }
+
+    /**
+     * 解析任务信息列表（按队列编号排序，即执行顺序）
+     */
+    private List<QueueStatusResponse.TaskInfo> parseTaskInfos(JSONArray tasksArray, String status, ComfyUIBackend backend) {
+        if (tasksArray == null || tasksArray.isEmpty()) {
+            return List.of();
+        }
+        List<JSONArray> items = new ArrayList<>();
+        for (Object taskObj : tasksArray) {
+            items.add((JSONArray) taskObj);
+        }
+        items.sort(Comparator.comparingLong(item -> item.getLongValue(0)));
+
+        List<QueueStatusResponse.TaskInfo> taskInfos = new ArrayList<>(items.size());
+        for (JSONArray item : items) {
+            String promptId = item.getString(1);
+            JSONObject extraData = item.size() > 3 ? item.getJSONObject(3) : null;
+            TaskStatusResponse tracked = taskTracker.getStatus(promptId);
+
+            QueueStatusResponse.TaskInfo taskInfo = new QueueStatusResponse.TaskInfo();
+            taskInfo.setPromptId(promptId);
+            taskInfo.setTaskType("image_generation");
+            taskInfo.setSubmitTime(extraData == null ? 0L : extraData.getLongValue("create_time"));
+            taskInfo.setStatus(status);
+            taskInfo.setProgress(tracked == null ? 0.0 : tracked.getProgress());
+            taskInfo.setBackend(backend.getId());
+            taskInfos.add(taskInfo);
+        }
+        return taskInfos;
+    }
+
+    /**
+     * 不可变的队列快照
+     */
+    private static final class Snapshot {
+        private final QueueStatusResponse status;
+        private final Map<String, Position> index;
+        private final long fetchedAt;
+
+        private Snapshot(QueueStatusResponse status, Map<String, Position> index, long fetchedAt) {
+            this.status = status;
+            this.index = index;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
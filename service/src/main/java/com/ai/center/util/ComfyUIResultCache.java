@@ -0,0 +1,302 @@
+package com.ai.center.util;
+
+import cn.hutool.core.io.FileUtil;
+import com.ai.center.model.CacheStatsResponse;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * ComfyUI 生图结果缓存（内容寻址）
+ * 以渲染后工作流的 SHA-256 为键，图片保存在本地目录，内存中维护按访问顺序淘汰的索引；
+ * 每个条目一个目录，先写临时目录再原子重命名，启动时扫描目录重建索引
+ */
+@Slf4j
+@Component
+public class ComfyUIResultCache {
+
+    @Value("${comfyUi.cache.dir:data/comfyui-cache}")
+    private String cacheDir;
+
+    @Value("${comfyUi.cache.max-entries:1000}")
+    private int maxEntries;
+
+    // 条目有效期（小时）
+    @Value("${comfyUi.cache.ttl-hours:168}")
+    private long ttlHours;
+
+    // 缓存图片的访问路径前缀
+    @Value("${comfyUi.cache.url-prefix:/comfyui/cache}")
+    private String urlPrefix;
+
+    private static final String META_FILE = "meta.json";
+    private static final String STAGING_DIR = ".staging";
+    private static final Pattern KEY_PATTERN = Pattern.compile("[0-9a-f]{64}");
+
+    private Path root;
+    private long ttlMillis;
+
+    // 访问顺序的 LRU 索引，访问时加锁
+    private final LinkedHashMap<String, CacheEntry> index = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("生图缓存条目数必须大于0");
+        }
+        if (ttlHours <= 0) {
+            throw new IllegalArgumentException("生图缓存有效期必须大于0");
+        }
+        ttlMillis = TimeUnit.HOURS.toMillis(ttlHours);
+        root = Paths.get(cacheDir).toAbsolutePath().normalize();
+        FileUtil.del(root.resolve(STAGING_DIR));
+        FileUtil.mkdir(root.resolve(STAGING_DIR).toFile());
+
+        // 重建索引：按创建时间从旧到新插入，超出容量的最旧条目被淘汰
+        List<CacheEntry> loaded = new ArrayList<>();
+        try (Stream<Path> dirs = Files.list(root)) {
+            dirs.filter(dir -> KEY_PATTERN.matcher(dir.getFileName().toString()).matches())
+                    .forEach(dir -> {
+                        CacheEntry entry = readEntry(dir);
+                        if (entry == null || entry.isExpired(ttlMillis)) {
+                            FileUtil.del(dir);
+                        } else {
+                            loaded.add(entry);
+                        }
+                    });
+        } catch (IOException e) {
+            throw new RuntimeException("读取生图缓存目录失败: " + root, e);
+        }
+        loaded.sort(Comparator.comparingLong(CacheEntry::getCreatedAt));
+        List<CacheEntry> evicted;
+        synchronized (index) {
+            loaded.forEach(entry -> index.put(entry.getKey(), entry));
+            evicted = trim();
+        }
+        evicted.forEach(this::delete);
+        log.info("生图缓存初始化完成，目录: {}，条目数: {}", root, index.size());
+    }
+
+    /**
+     * 计算缓存键
+     * @param workflow 渲染后的工作流JSON
+     * @return SHA-256 十六进制字符串
+     */
+    public static String key(byte[] workflow) {
+        return HexFormat.of().formatHex(sha256(workflow));
+    }
+
+    /**
+     * SHA-256 摘要
+     */
+    public static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 查询缓存，计入命中率
+     * @param key 缓存键
+     * @return 缓存条目，不存在或已过期返回 null
+     */
+    public CacheEntry get(String key) {
+        CacheEntry entry;
+        synchronized (index) {
+            entry = index.get(key);
+            if (entry != null && entry.isExpired(ttlMillis)) {
+                index.remove(key);
+            } else if (entry != null) {
+                hits.incrementAndGet();
+                return entry;
+            }
+        }
+        misses.incrementAndGet();
+        if (entry != null) {
+            delete(entry);
+        }
+        return null;
+    }
+
+    /**
+     * 创建暂存目录，图片下载到暂存目录后通过 {@link #commit} 加入缓存
+     */
+    public Path newStagingDir() {
+        try {
+            return Files.createTempDirectory(root.resolve(STAGING_DIR), "entry-");
+        } catch (IOException e) {
+            throw new RuntimeException("创建缓存暂存目录失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 丢弃暂存目录
+     */
+    public void discard(Path staging) {
+        FileUtil.del(staging);
+    }
+
+    /**
+     * 暂存目录写入元数据后原子重命名为缓存条目
+     * @param key 缓存键
+     * @param staging 暂存目录（已包含全部图片）
+     * @param images 图片文件名
+     */
+    public void commit(String key, Path staging, List<String> images) {
+        CacheEntry entry = new CacheEntry(key, List.copyOf(images), System.currentTimeMillis());
+        Path target = root.resolve(key);
+        try {
+            JSONObject meta = new JSONObject();
+            meta.put("createdAt", entry.getCreatedAt());
+            meta.put("images", entry.getImages());
+            Files.writeString(staging.resolve(META_FILE), meta.toJSONString(), StandardCharsets.UTF_8);
+            if (Files.exists(target)) {
+                // 过期未清理或并发写入的同名条目
+                FileUtil.del(target);
+            }
+            Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            discard(staging);
+            log.warn("写入生图缓存失败，key: {}，{}", key, e.getMessage());
+            return;
+        }
+        List<CacheEntry> evicted;
+        synchronized (index) {
+            index.put(key, entry);
+            evicted = trim();
+        }
+        evicted.forEach(this::delete);
+        log.info("生图结果已缓存，key: {}，图片数: {}", key, images.size());
+    }
+
+    /**
+     * 缓存图片的本地路径
+     * @param key 缓存键
+     * @param filename 图片文件名
+     * @return 文件路径，不存在返回 null
+     */
+    public Path resolveImage(String key, String filename) {
+        if (!KEY_PATTERN.matcher(key).matches()) {
+            return null;
+        }
+        CacheEntry entry;
+        synchronized (index) {
+            entry = index.get(key);
+        }
+        if (entry == null || !entry.getImages().contains(filename)) {
+            return null;
+        }
+        Path file = root.resolve(key).resolve(filename);
+        return Files.isRegularFile(file) ? file : null;
+    }
+
+    /**
+     * 缓存图片访问地址
+     */
+    public List<String> imageUrls(CacheEntry entry) {
+        return entry.getImages().stream()
+                .map(image -> urlPrefix + "/" + entry.getKey() + "/" + image)
+                .toList();
+    }
+
+    /**
+     * 缓存统计
+     */
+    public CacheStatsResponse getStats() {
+        int size;
+        synchronized (index) {
+            size = index.size();
+        }
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+        return new CacheStatsResponse(size, maxEntries, ttlHours, hitCount, missCount,
+                total == 0 ? 0.0 : (double) hitCount / total, 0L);
+    }
+
+    /**
+     * 淘汰超出容量的最久未访问条目（调用时需持有锁）
+     */
+    private List<CacheEntry> trim() {
+        List<CacheEntry> evicted = new ArrayList<>();
+        Iterator<CacheEntry> it = index.values().iterator();
+        while (index.size() - evicted.size() > maxEntries && it.hasNext()) {
+            evicted.add(it.next());
+            it.remove();
+        }
+        return evicted;
+    }
+
+    private void delete(CacheEntry entry) {
+        FileUtil.del(root.resolve(entry.getKey()));
+    }
+
+    private CacheEntry readEntry(Path dir) {
+        Path metaFile = dir.resolve(META_FILE);
+        if (!Files.isRegularFile(metaFile)) {
+            return null;
+        }
+        try {
+            JSONObject meta = JSON.parseObject(Files.readString(metaFile, StandardCharsets.UTF_8));
+            List<String> images = meta.getList("images", String.class);
+            if (images == null || images.stream().anyMatch(image -> !Files.isRegularFile(dir.resolve(image)))) {
+                return null;
+            }
+            return new CacheEntry(dir.getFileName().toString(), List.copyOf(images), meta.getLongValue("createdAt"));
+        } catch (Exception e) {
+            log.warn("生图缓存条目损坏，已忽略: {}，{}", dir, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 缓存条目
+     */
+    public static final class CacheEntry {
+
+        private final String key;
+        private final List<String> images;
+        private final long createdAt;
+
+        private CacheEntry(String key, List<String> images, long createdAt) {
+            this.key = key;
+            this.images = images;
+            this.createdAt = createdAt;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public List<String> getImages() {
+            return images;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        private boolean isExpired(long ttlMillis) {
+            return createdAt < System.currentTimeMillis() - ttlMillis;
+        }
+    }
+}
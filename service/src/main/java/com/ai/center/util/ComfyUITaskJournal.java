@@ -0,0 +1,433 @@
+package com.ai.center.util;
+
+import com.ai.center.model.ComfyUIImage;
+import com.ai.center.model.TaskRecord;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ComfyUI 任务日志
+ * 任务的提交、节点、进度和结果以 JSON Lines 追加写入本地文件，内存中保留每个任务的最新记录；
+ * 写入由单独的线程批量完成，调用方不等待磁盘。启动时回放日志恢复任务记录，
+ * 定期（或日志行数远超任务数时）把每个任务压缩为一行快照并丢弃过期任务
+ *
+ * 每批写入后刷新到操作系统，进程崩溃或重新部署不丢失已写入的记录；压缩后的文件会同步到磁盘
+ */
+@Slf4j
+@Component
+public class ComfyUITaskJournal {
+
+    @Value("${comfyUi.journal.dir:data/comfyui-journal}")
+    private String journalDir;
+
+    // 任务记录保留时间（小时）
+    @Value("${comfyUi.journal.retention-hours:168}")
+    private long retentionHours;
+
+    // 定期压缩间隔（分钟）
+    @Value("${comfyUi.journal.compact-interval-minutes:60}")
+    private long compactIntervalMinutes;
+
+    private static final String JOURNAL_FILE = "tasks.jsonl";
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    // 日志行数超过任务数的该倍数（且不少于 MIN_COMPACT_LINES）时提前压缩
+    private static final int COMPACT_RATIO = 4;
+    private static final int MIN_COMPACT_LINES = 10000;
+
+    // 压缩失败后的重试间隔（毫秒）
+    private static final long COMPACT_RETRY_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    private static final String OP_SNAPSHOT = "snapshot";
+    private static final String OP_SUBMIT = "submit";
+    private static final String OP_CALLBACK = "callback";
+    private static final String OP_DISPATCH = "dispatch";
+    private static final String OP_START = "start";
+    private static final String OP_PROGRESS = "progress";
+    private static final String OP_COMPLETE = "complete";
+
+    private final Map<String, TaskRecord> records = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<String> pendingLines = new LinkedBlockingQueue<>();
+
+    private Path journalFile;
+    private long retentionMillis;
+    private BufferedWriter writer;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    // 以下字段只在写线程上访问；writer 为 null 时在下一批写入前重新打开
+    private long appendedLines;
+    private long lastCompactedAt;
+    private long compactRetryAt;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (retentionHours <= 0 || compactIntervalMinutes <= 0) {
+            throw new IllegalArgumentException("任务日志保留时间和压缩间隔必须大于0");
+        }
+        retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+        Path dir = Paths.get(journalDir).toAbsolutePath().normalize();
+        Files.createDirectories(dir);
+        journalFile = dir.resolve(JOURNAL_FILE);
+
+        int replayed = replay();
+        // 重启前仍在本地调度队列中的任务已随进程丢失
+        for (TaskRecord record : records.values()) {
+            if (record.getCompletedAt() == 0 && record.getBackendId() == null) {
+                apply(entry(OP_COMPLETE, record.getPromptId())
+                        .fluentPut("error", "服务重启，任务未提交到节点"));
+            }
+        }
+        compact();
+        writer = openWriter();
+
+        running = true;
+        writerThread = Thread.ofPlatform().name("comfyui-journal").daemon().start(this::writeLoop);
+        log.info("任务日志初始化完成，文件: {}，回放 {} 行，恢复任务 {} 个", journalFile, replayed, records.size());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * 记录任务提交
+     */
+    public void submit(String promptId, Map<String, Object> params, String priority, String clientKey) {
+        apply(entry(OP_SUBMIT, promptId)
+                .fluentPut("params", params)
+                .fluentPut("priority", priority)
+                .fluentPut("clientKey", clientKey));
+    }
+
+    /**
+     * 记录任务完成回调地址
+     * @return false 表示该地址已登记过
+     */
+    public boolean callback(String promptId, String callbackUrl) {
+        TaskRecord record = records.get(promptId);
+        if (record == null) {
+            apply(entry(OP_CALLBACK, promptId).fluentPut("url", callbackUrl));
+            return true;
+        }
+        synchronized (record) {
+            if (record.getCallbackUrls() != null && record.getCallbackUrls().contains(callbackUrl)) {
+                return false;
+            }
+            JSONObject entry = entry(OP_CALLBACK, promptId).fluentPut("url", callbackUrl);
+            if (record.getCompletedAt() > 0) {
+                // 已完成的任务立即投递、重启后不再恢复，只在内存中记下地址用于去重
+                applyTo(record, entry);
+            } else {
+                apply(entry);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 记录任务提交到节点
+     */
+    public void dispatch(String promptId, String backendId, String upstreamPromptId) {
+        apply(entry(OP_DISPATCH, promptId)
+                .fluentPut("backendId", backendId)
+                .fluentPut("upstreamPromptId", upstreamPromptId));
+    }
+
+    /**
+     * 记录任务开始执行
+     */
+    public void start(String promptId) {
+        apply(entry(OP_START, promptId));
+    }
+
+    /**
+     * 记录任务进度
+     */
+    public void progress(String promptId, double progress) {
+        apply(entry(OP_PROGRESS, promptId).fluentPut("progress", progress));
+    }
+
+    /**
+     * 记录任务完成
+     * @param images 输出图片，失败时为空
+     * @param imageUrls 图片访问地址
+     * @param error 错误信息，成功时为 null
+     */
+    public void complete(String promptId, List<ComfyUIImage> images, List<String> imageUrls, String error) {
+        apply(entry(OP_COMPLETE, promptId)
+                .fluentPut("images", images)
+                .fluentPut("imageUrls", imageUrls)
+                .fluentPut("error", error));
+    }
+
+    /**
+     * 查询任务记录
+     * @return 记录副本，不存在或已过期返回 null
+     */
+    public TaskRecord find(String promptId) {
+        TaskRecord record = records.get(promptId);
+        if (record == null) {
+            return null;
+        }
+        synchronized (record) {
+            return copy(record);
+        }
+    }
+
+    /**
+     * 已提交到节点但尚未完成的任务
+     */
+    public List<TaskRecord> unfinished() {
+        List<TaskRecord> result = new ArrayList<>();
+        for (TaskRecord record : records.values()) {
+            synchronized (record) {
+                if (record.getCompletedAt() == 0 && record.getBackendId() != null) {
+                    result.add(copy(record));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 应用到内存记录并排队写入；提交以外的事件只记录已登记的任务
+     * 同一任务的应用和入队在同一把锁内完成，保证日志中同一任务的事件顺序与内存一致
+     */
+    private void apply(JSONObject entry) {
+        String promptId = entry.getString("id");
+        if (OP_SUBMIT.equals(entry.getString("op"))) {
+            records.compute(promptId, (key, existing) -> {
+                TaskRecord record = new TaskRecord();
+                applyTo(record, entry);
+                enqueue(entry);
+                return record;
+            });
+            return;
+        }
+        TaskRecord record = records.get(promptId);
+        if (record == null) {
+            return;
+        }
+        synchronized (record) {
+            if (record.getCompletedAt() > 0) {
+                return;
+            }
+            applyTo(record, entry);
+            enqueue(entry);
+        }
+    }
+
+    private void enqueue(JSONObject entry) {
+        if (running) {
+            pendingLines.add(entry.toJSONString());
+        }
+    }
+
+    private static void applyTo(TaskRecord record, JSONObject entry) {
+        long time = entry.getLongValue("t");
+        switch (entry.getString("op")) {
+            case OP_SUBMIT -> {
+                record.setPromptId(entry.getString("id"));
+                record.setParams(entry.getJSONObject("params"));
+                record.setPriority(entry.getString("priority"));
+                record.setClientKey(entry.getString("clientKey"));
+                record.setStatus("pending");
+                record.setCreatedAt(time);
+            }
+            case OP_CALLBACK -> {
+                // 压缩快照可能已包含排队中的回调事件，回放时同一地址只保留一次
+                String url = entry.getString("url");
+                List<String> callbackUrls = new ArrayList<>();
+                if (record.getCallbackUrls() != null) {
+                    callbackUrls.addAll(record.getCallbackUrls());
+                }
+                if (!callbackUrls.contains(url)) {
+                    callbackUrls.add(url);
+                    record.setCallbackUrls(callbackUrls);
+                }
+            }
+            case OP_DISPATCH -> {
+                record.setBackendId(entry.getString("backendId"));
+                record.setUpstreamPromptId(entry.getString("upstreamPromptId"));
+            }
+            case OP_START -> {
+                record.setStatus("running");
+                record.setStartedAt(time);
+            }
+            case OP_PROGRESS -> record.setProgress(entry.getDoubleValue("progress"));
+            case OP_COMPLETE -> {
+                String error = entry.getString("error");
+                record.setStatus(error == null ? "success" : "error");
+                record.setError(error);
+                record.setImages(entry.get("images") != null
+                        ? entry.getList("images", ComfyUIImage.class) : List.of());
+                record.setImageUrls(entry.get("imageUrls") != null
+                        ? entry.getList("imageUrls", String.class) : List.of());
+                record.setProgress(error == null ? 100.0 : record.getProgress());
+                record.setCompletedAt(time);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private static JSONObject entry(String op, String promptId) {
+        return new JSONObject()
+                .fluentPut("op", op)
+                .fluentPut("id", promptId)
+                .fluentPut("t", System.currentTimeMillis());
+    }
+
+    /**
+     * 回放日志，末尾不完整的行（写入中途进程退出）直接跳过
+     * @return 回放的行数
+     */
+    private int replay() throws IOException {
+        if (!Files.exists(journalFile)) {
+            return 0;
+        }
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                lines++;
+                try {
+                    JSONObject entry = JSON.parseObject(line);
+                    if (OP_SNAPSHOT.equals(entry.getString("op"))) {
+                        TaskRecord record = entry.getObject("record", TaskRecord.class);
+                        records.put(record.getPromptId(), record);
+                    } else {
+                        apply(entry);
+                    }
+                } catch (Exception e) {
+                    log.warn("跳过无法解析的任务日志，第 {} 行: {}", lines, e.getMessage());
+                }
+            }
+        }
+        return lines;
+    }
+
+    private void writeLoop() {
+        List<String> batch = new ArrayList<>();
+        while (running || !pendingLines.isEmpty()) {
+            try {
+                String first = pendingLines.poll(500, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    pendingLines.drainTo(batch);
+                    if (writer == null) {
+                        writer = openWriter();
+                    }
+                    for (String line : batch) {
+                        writer.write(line);
+                        writer.newLine();
+                    }
+                    writer.flush();
+                    appendedLines += batch.size();
+                    batch.clear();
+                }
+                long now = System.currentTimeMillis();
+                if (now >= compactRetryAt
+                        && (appendedLines > Math.max(MIN_COMPACT_LINES, (long) records.size() * COMPACT_RATIO)
+                        || now - lastCompactedAt > TimeUnit.MINUTES.toMillis(compactIntervalMinutes))) {
+                    closeWriter();
+                    try {
+                        compact();
+                    } catch (IOException e) {
+                        compactRetryAt = now + COMPACT_RETRY_DELAY;
+                        log.error("压缩任务日志失败，{} 秒后重试，期间继续追加写入", COMPACT_RETRY_DELAY / 1000, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                log.error("写入任务日志失败，丢弃 {} 行", batch.size(), e);
+                batch.clear();
+                // 写入器可能已损坏，下一批重新打开
+                closeWriter();
+            }
+        }
+        closeWriter();
+    }
+
+    private BufferedWriter openWriter() throws IOException {
+        return Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("关闭任务日志失败: {}", e.getMessage());
+        } finally {
+            writer = null;
+        }
+    }
+
+    /**
+     * 压缩：丢弃过期任务，每个任务写一行快照，写完同步到磁盘后原子替换日志文件
+     */
+    private void compact() throws IOException {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        records.values().removeIf(record -> record.getCompletedAt() > 0
+                ? record.getCompletedAt() < cutoff : record.getCreatedAt() < cutoff);
+
+        Path tmp = journalFile.resolveSibling(JOURNAL_FILE + COMPACT_SUFFIX);
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (TaskRecord record : records.values()) {
+                String line;
+                synchronized (record) {
+                    line = new JSONObject().fluentPut("op", OP_SNAPSHOT).fluentPut("record", record).toJSONString();
+                }
+                out.write(line);
+                out.newLine();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, journalFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        appendedLines = 0;
+        lastCompactedAt = System.currentTimeMillis();
+        log.debug("任务日志压缩完成，任务数: {}", records.size());
+    }
+
+    private static TaskRecord copy(TaskRecord record) {
+        return new TaskRecord(record.getPromptId(), record.getUpstreamPromptId(), record.getBackendId(),
+                record.getParams(), record.getPriority(), record.getClientKey(), record.getCallbackUrls(),
+                record.getStatus(), record.getProgress(),
+                record.getImages(), record.getImageUrls(), record.getError(),
+                record.getCreatedAt(), record.getStartedAt(), record.getCompletedAt());
+    }
+}
@@ -0,0 +1,323 @@
+package com.ai.center.util;
+
+import cn.hutool.core.util.IdUtil;
+import com.ai.center.model.QueueStatusResponse;
+import com.ai.center.model.TaskPriority;
+import io.micrometer.context.ContextSnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * ComfyUI 本地调度器
+ * 任务先进入本地有界队列，按优先级调度，同一优先级内各调用方轮流出队（公平分配）；
+ * 每个节点同时提交的任务数受限，其余任务留在本地排队，队列满时直接拒绝
+ */
+@Slf4j
+@Component
+public class ComfyUITaskScheduler {
+
+    // 本地队列容量
+    @Value("${comfyUi.scheduler.queue-capacity:200}")
+    private int queueCapacity;
+
+    // 每个节点允许同时提交（排队 + 执行）的任务数
+    @Value("${comfyUi.scheduler.max-inflight-per-backend:2}")
+    private int maxInFlightPerBackend;
+
+    // 提交名额最长占用时间（分钟），防止 ComfyUI 丢失任务后名额无法释放
+    private static final long MAX_SLOT_HOLD_MINUTES = 30;
+
+    @Autowired
+    private ComfyUIBackendPool backendPool;
+
+    @Autowired
+    private ComfyUITaskTracker taskTracker;
+
+    @Autowired
+    private ComfyUITaskJournal taskJournal;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // 优先级 -> 调用方 -> 该调用方的排队任务；调用方按插入顺序轮转
+    private final Map<TaskPriority, LinkedHashMap<String, ArrayDeque<ScheduledTask>>> queues = new EnumMap<>(TaskPriority.class);
+
+    private final Map<String, ScheduledTask> queuedById = new HashMap<>();
+
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    // 提交到 ComfyUI 的阻塞调用在虚拟线程上执行
+    private final ExecutorService dispatchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private volatile BiConsumer<ScheduledTask, ComfyUIBackend> dispatcher;
+
+    @PostConstruct
+    public void validateConfig() {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("ComfyUI调度队列容量必须大于0");
+        }
+        if (maxInFlightPerBackend <= 0) {
+            throw new IllegalArgumentException("ComfyUI每节点并发提交数必须大于0");
+        }
+        for (TaskPriority priority : TaskPriority.values()) {
+            queues.put(priority, new LinkedHashMap<>());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatchExecutor.shutdownNow();
+    }
+
+    /**
+     * 设置任务提交方式（由 {@link ComfyUIClientUtil} 注册，避免循环依赖）
+     * 提交失败时抛出异常
+     */
+    public void setDispatcher(BiConsumer<ScheduledTask, ComfyUIBackend> dispatcher) {
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * 任务入队
+     * @param params 工作流参数
+     * @param priority 优先级
+     * @param clientKey 调用方标识
+     * @return 调度任务，提交到节点后 dispatched 完成
+     * @throws TaskRejectedException 本地队列已满
+     */
+    public ScheduledTask admit(Map<String, Object> params, TaskPriority priority, String clientKey) {
+        ScheduledTask task = new ScheduledTask(IdUtil.fastUUID(), params, priority,
+                clientKey == null ? "" : clientKey);
+        lock.lock();
+        try {
+            if (queuedById.size() >= queueCapacity) {
+                rejectedCount.incrementAndGet();
+                throw new TaskRejectedException("生图队列已满（容量: " + queueCapacity + "），请稍后重试");
+            }
+            taskTracker.register(task.promptId, null);
+            taskJournal.submit(task.promptId, params, priority.name(), task.clientKey);
+            queues.get(priority).computeIfAbsent(task.clientKey, key -> new ArrayDeque<>()).addLast(task);
+            queuedById.put(task.promptId, task);
+        } finally {
+            lock.unlock();
+        }
+        drain();
+        return task;
+    }
+
+    /**
+     * 取消仍在本地排队的任务
+     * @param promptId 任务ID
+     * @param reason 取消原因
+     * @return 是否取消成功（已提交到节点的任务返回 false）
+     */
+    public boolean cancel(String promptId, String reason) {
+        ScheduledTask task;
+        lock.lock();
+        try {
+            task = queuedById.remove(promptId);
+            if (task == null) {
+                return false;
+            }
+            Map<String, ArrayDeque<ScheduledTask>> byClient = queues.get(task.priority);
+            ArrayDeque<ScheduledTask> deque = byClient.get(task.clientKey);
+            deque.remove(task);
+            if (deque.isEmpty()) {
+                byClient.remove(task.clientKey);
+            }
+            updateLocalPositions();
+        } finally {
+            lock.unlock();
+        }
+        taskTracker.fail(promptId, reason);
+        task.dispatched.completeExceptionally(new RuntimeException(reason));
+        return true;
+    }
+
+    /**
+     * 调度状态
+     */
+    public QueueStatusResponse.SchedulerStatus getStatus() {
+        QueueStatusResponse.SchedulerStatus status = new QueueStatusResponse.SchedulerStatus();
+        Map<String, Integer> byPriority = new LinkedHashMap<>();
+        Set<String> clients = new HashSet<>();
+        lock.lock();
+        try {
+            for (Map.Entry<TaskPriority, LinkedHashMap<String, ArrayDeque<ScheduledTask>>> entry : queues.entrySet()) {
+                int count = 0;
+                for (ArrayDeque<ScheduledTask> deque : entry.getValue().values()) {
+                    count += deque.size();
+                }
+                byPriority.put(entry.getKey().name().toLowerCase(), count);
+                clients.addAll(entry.getValue().keySet());
+            }
+            status.setQueued(queuedById.size());
+        } finally {
+            lock.unlock();
+        }
+        status.setCapacity(queueCapacity);
+        status.setQueuedByPriority(byPriority);
+        status.setQueuedClients(clients.size());
+        status.setInFlight(backendPool.getBackends().stream().mapToInt(ComfyUIBackend::getInFlight).sum());
+        status.setMaxInFlightPerBackend(maxInFlightPerBackend);
+        status.setDispatched(dispatchedCount.get());
+        status.setRejected(rejectedCount.get());
+        return status;
+    }
+
+    /**
+     * 把排队任务分配给有空闲名额的节点，直到队列为空或所有节点名额用满
+     */
+    private void drain() {
+        List<Map.Entry<ScheduledTask, ComfyUIBackend>> assigned = new ArrayList<>();
+        lock.lock();
+        try {
+            while (!queuedById.isEmpty()) {
+                ComfyUIBackend backend = backendPool.select(candidate -> candidate.getInFlight() < maxInFlightPerBackend);
+                if (backend == null) {
+                    break;
+                }
+                if (!backend.tryAcquireSlot(maxInFlightPerBackend)) {
+                    continue;
+                }
+                ScheduledTask task = pollNext();
+                queuedById.remove(task.promptId);
+                assigned.add(Map.entry(task, backend));
+            }
+            if (!assigned.isEmpty()) {
+                updateLocalPositions();
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Map.Entry<ScheduledTask, ComfyUIBackend> entry : assigned) {
+            dispatchExecutor.execute(() -> dispatch(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    private void dispatch(ScheduledTask task, ComfyUIBackend backend) {
+        // 在入队请求的追踪上下文中提交（drain 可能由其他任务的完成回调触发）
+        try (ContextSnapshot.Scope ignored = task.context.setThreadLocals()) {
+            dispatcher.accept(task, backend);
+        } catch (Exception e) {
+            log.warn("任务提交失败，节点: {}，promptId: {}，{}", backend.getId(), task.promptId, e.getMessage());
+            backend.releaseSlot();
+            taskTracker.fail(task.promptId, e.getMessage());
+            task.dispatched.completeExceptionally(e);
+            drain();
+            return;
+        }
+        dispatchedCount.incrementAndGet();
+        task.dispatched.complete(backend.getId());
+        // 任务结束（或超过最长占用时间）后释放名额并继续调度
+        taskTracker.awaitCompletion(task.promptId).copy()
+                .orTimeout(MAX_SLOT_HOLD_MINUTES, TimeUnit.MINUTES)
+                .whenComplete((images, e) -> {
+                    backend.releaseSlot();
+                    drain();
+                });
+    }
+
+    /**
+     * 取下一个任务：高优先级优先，同一优先级内调用方轮流出队（调用时需持有锁）
+     */
+    private ScheduledTask pollNext() {
+        for (LinkedHashMap<String, ArrayDeque<ScheduledTask>> byClient : queues.values()) {
+            Iterator<Map.Entry<String, ArrayDeque<ScheduledTask>>> it = byClient.entrySet().iterator();
+            if (!it.hasNext()) {
+                continue;
+            }
+            Map.Entry<String, ArrayDeque<ScheduledTask>> first = it.next();
+            ArrayDeque<ScheduledTask> deque = first.getValue();
+            ScheduledTask task = deque.pollFirst();
+            it.remove();
+            if (!deque.isEmpty()) {
+                // 轮到的调用方移到队尾
+                byClient.put(first.getKey(), deque);
+            }
+            return task;
+        }
+        throw new IllegalStateException("调度队列为空");
+    }
+
+    /**
+     * 按出队顺序刷新本地排队任务的位置（调用时需持有锁）
+     */
+    private void updateLocalPositions() {
+        int position = 0;
+        for (LinkedHashMap<String, ArrayDeque<ScheduledTask>> byClient : queues.values()) {
+            List<Iterator<ScheduledTask>> rounds = new ArrayList<>();
+            for (ArrayDeque<ScheduledTask> deque : byClient.values()) {
+                rounds.add(deque.iterator());
+            }
+            while (!rounds.isEmpty()) {
+                Iterator<Iterator<ScheduledTask>> it = rounds.iterator();
+                while (it.hasNext()) {
+                    Iterator<ScheduledTask> round = it.next();
+                    if (round.hasNext()) {
+                        taskTracker.updateLocalPosition(round.next().promptId, position++);
+                    } else {
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 调度任务
+     */
+    public static final class ScheduledTask {
+
+        private final String promptId;
+        private final Map<String, Object> params;
+        private final TaskPriority priority;
+        private final String clientKey;
+
+        // 入队时的追踪上下文
+        private final ContextSnapshot context = TraceContext.capture();
+
+        // 提交到节点后完成，值为节点ID
+        private final CompletableFuture<String> dispatched = new CompletableFuture<>();
+
+        private ScheduledTask(String promptId, Map<String, Object> params, TaskPriority priority, String clientKey) {
+            this.promptId = promptId;
+            this.params = params;
+            this.priority = priority;
+            this.clientKey = clientKey;
+        }
+
+        public String getPromptId() {
+            return promptId;
+        }
+
+        public Map<String, Object> getParams() {
+            return params;
+        }
+
+        public TaskPriority getPriority() {
+            return priority;
+        }
+
+        public String getClientKey() {
+            return clientKey;
+        }
+
+        public CompletableFuture<String> getDispatched() {
+            return dispatched;
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package com.ai.center.util;
+
+import com.ai.center.model.ComfyUIImage;
+import com.ai.center.model.QueueStatusResponse;
+import com.ai.center.model.TaskStatusResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * ComfyUI 任务状态表
+ * 根据 WebSocket 事件维护每个 prompt_id 的实时状态（排队位置、采样步数、预计剩余时间），
+ * 状态以不可变快照的形式原子替换，查询直接读内存，无需访问 ComfyUI；
+ * 节点、开始执行、进度和结果同时写入 {@link ComfyUITaskJournal}，内存状态过期或服务重启后从日志查询
+ */
+@Slf4j
+@Component
+public class ComfyUITaskTracker {
+
+    // 已完成任务的保留时间（毫秒），过期后状态查询回退到任务日志
+    private static final long COMPLETED_RETENTION = TimeUnit.MINUTES.toMillis(30);
+
+    // 未完成任务的最长保留时间（毫秒），防止丢失完成事件的任务常驻内存
+    private static final long PENDING_RETENTION = TimeUnit.HOURS.toMillis(6);
+
+    // 执行耗时滑动平均的权重
+    private static final double DURATION_SMOOTHING = 0.2;
+
+    // 进度每跨过该百分比写一次任务日志
+    private static final int JOURNAL_PROGRESS_STEP = 25;
+
+    @Autowired
+    private ComfyUITaskJournal taskJournal;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, TrackedTask> tasks = new ConcurrentHashMap<>();
+
+    // ComfyUI prompt_id -> 本地任务ID（两者不一致时）
+    private final Map<String, String> aliases = new ConcurrentHashMap<>();
+
+    private final List<Consumer<String>> queueChangeListeners = new CopyOnWriteArrayList<>();
+
+    // 图片访问地址解析（节点ID, 图片）
+    private volatile BiFunction<String, ComfyUIImage, String> imageUrlResolver = (backendId, image) -> image.getFilename();
+
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("comfyui-task-cleaner").daemon().factory());
+
+    // 任务平均执行耗时（毫秒），0 表示暂无样本
+    private volatile long avgExecutionMillis;
+
+    @PostConstruct
+    public void start() {
+        cleaner.scheduleWithFixedDelay(this::evictExpired, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        cleaner.shutdownNow();
+    }
+
+    /**
+     * 登记任务
+     * @param promptId 任务ID
+     * @param backendId 所属节点ID，尚在本地调度队列中时为 null
+     */
+    public void register(String promptId, String backendId) {
+        TrackedTask task = track(promptId);
+        task.backendId = backendId;
+        if (backendId != null) {
+            taskJournal.dispatch(promptId, backendId, task.upstreamPromptId);
+        }
+    }
+
+    /**
+     * 登记 ComfyUI 返回的 prompt_id 与本地任务ID不一致的情况（旧版 ComfyUI 不支持指定 prompt_id），
+     * 之后该 prompt_id 的事件都归到本地任务上
+     */
+    public void alias(String promptId, String upstreamPromptId) {
+        if (!promptId.equals(upstreamPromptId)) {
+            aliases.put(upstreamPromptId, promptId);
+            track(promptId).upstreamPromptId = upstreamPromptId;
+        }
+    }
+
+    /**
+     * 任务在 ComfyUI 上的 prompt_id
+     */
+    public String getUpstreamId(String promptId) {
+        TrackedTask task = tasks.get(promptId);
+        return task == null || task.upstreamPromptId == null ? promptId : task.upstreamPromptId;
+    }
+
+    /**
+     * 更新本地调度队列中任务的排队位置
+     * @param promptId 任务ID
+     * @param position 前方等待的任务数
+     */
+    public void updateLocalPosition(String promptId, int position) {
+        TrackedTask task = tasks.get(promptId);
+        if (task != null && task.backendId == null) {
+            publish(task, current -> "pending".equals(current.getStatus()) && !Objects.equals(current.getQueuePosition(), position)
+                    ? TaskStatusResponse.pending(position, estimatePendingSeconds(position)) : current);
+        }
+    }
+
+    /**
+     * 任务在提交到 ComfyUI 之前失败或被取消
+     */
+    public void fail(String promptId, String message) {
+        complete(track(promptId), message);
+    }
+
+    /**
+     * 任务所属节点ID
+     * @param promptId 任务ID
+     * @return 节点ID，未被跟踪的任务返回 null
+     */
+    public String getBackendId(String promptId) {
+        TrackedTask task = tasks.get(promptId);
+        return task == null ? null : task.backendId;
+    }
+
+    /**
+     * 查询内存中的任务状态
+     * @param promptId 任务ID
+     * @return 状态快照，未跟踪的任务返回 null
+     */
+    public TaskStatusResponse getStatus(String promptId) {
+        TrackedTask task = tasks.get(promptId);
+        return task == null ? null : task.status.get();
+    }
+
+    /**
+     * 已成功完成任务的输出图片（含子目录和类型）
+     * @param promptId 任务ID
+     * @return 图片列表，未跟踪或未成功完成的任务返回 null
+     */
+    public List<ComfyUIImage> getImages(String promptId) {
+        TrackedTask task = tasks.get(promptId);
+        return task == null || !task.completion.isDone() || task.completion.isCompletedExceptionally()
+                ? null : task.completion.join();
+    }
+
+    /**
+     * 获取任务完成的 Future，事件先于注册到达时返回已完成的 Future
+     * @param promptId 任务ID
+     * @return 输出图片列表
+     */
+    public CompletableFuture<List<ComfyUIImage>> awaitCompletion(String promptId) {
+        return track(promptId).completion;
+    }
+
+    /**
+     * 指定节点上是否存在仍在排队的任务
+     */
+    public boolean hasPendingTasks(String backendId) {
+        for (TrackedTask task : tasks.values()) {
+            if (task.startedAt == 0 && task.completedAt == 0 && Objects.equals(backendId, task.backendId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 注册队列变化回调（ComfyUI 广播 status 事件时触发，参数为节点ID）
+     */
+    public void onQueueChanged(Consumer<String> listener) {
+        queueChangeListeners.add(listener);
+    }
+
+    /**
+     * 设置图片访问地址解析方式
+     */
+    public void setImageUrlResolver(BiFunction<String, ComfyUIImage, String> imageUrlResolver) {
+        this.imageUrlResolver = imageUrlResolver;
+    }
+
+    /**
+     * 订阅任务状态变化
+     * @param promptId 任务ID
+     * @param subscriber 状态回调（在事件线程上调用，不应阻塞）
+     * @return 取消订阅的操作，任务未被跟踪时返回 null
+     */
+    public Runnable subscribe(String promptId, Consumer<TaskStatusResponse> subscriber) {
+        TrackedTask task = tasks.get(promptId);
+        if (task == null) {
+            return null;
+        }
+        task.subscribers.add(subscriber);
+        return () -> task.subscribers.remove(subscriber);
+    }
+
+    /**
+     * 根据单个节点的 /queue 快照刷新排队中任务的位置
+     * @param queueStatus 节点队列状态（pending 已按执行顺序排列）
+     */
+    public void updateQueuePositions(QueueStatusResponse queueStatus) {
+        for (QueueStatusResponse.TaskInfo running : queueStatus.getRunning()) {
+            TrackedTask task = tasks.get(resolve(running.getPromptId()));
+            if (task != null && task.startedAt == 0) {
+                onExecutionStart(running.getPromptId());
+            }
+        }
+        List<QueueStatusResponse.TaskInfo> pending = queueStatus.getPending();
+        for (int i = 0; i < pending.size(); i++) {
+            TrackedTask task = tasks.get(resolve(pending.get(i).getPromptId()));
+            if (task != null) {
+                int position = i;
+                publish(task, current -> "pending".equals(current.getStatus())
+                        ? TaskStatusResponse.pending(position, estimatePendingSeconds(position)) : current);
+            }
+        }
+    }
+
+    // ========== WebSocket 事件入口 ==========
+
+    void onQueueRemaining(String backendId, int queueRemaining) {
+        log.debug("ComfyUI队列剩余任务数，节点: {}，{}", backendId, queueRemaining);
+        for (Consumer<String> listener : queueChangeListeners) {
+            listener.accept(backendId);
+        }
+    }
+
+    void onExecutionStart(String promptId) {
+        TrackedTask task = track(resolve(promptId));
+        if (task.startedAt == 0) {
+            task.startedAt = System.currentTimeMillis();
+            taskJournal.start(task.promptId);
+        }
+        publish(task, current -> current.isFinished() || "running".equals(current.getStatus())
+                ? current : TaskStatusResponse.running(null, 0, 0, 0.0, estimateRunningSeconds(task)));
+    }
+
+    void onExecuting(String promptId, String node) {
+        onExecutionStart(promptId);
+        TrackedTask task = track(resolve(promptId));
+        publish(task, current -> {
+            if (current.isFinished() || Objects.equals(node, current.getCurrentNode())) {
+                return current;
+            }
+            return TaskStatusResponse.running(node, 0, 0, current.getProgress(), estimateRunningSeconds(task));
+        });
+    }
+
+    void onProgress(String promptId, String node, int value, int max) {
+        onExecutionStart(promptId);
+        TrackedTask task = track(resolve(promptId));
+        long now = System.currentTimeMillis();
+        if (!Objects.equals(node, task.samplingNode) || value <= 1) {
+            task.samplingNode = node;
+            task.samplingStartedAt = now;
+        }
+        Integer eta = null;
+        if (value > 0 && max > value) {
+            eta = (int) ((now - task.samplingStartedAt) * (max - value) / value / 1000);
+        } else if (max > 0 && value >= max) {
+            eta = 0;
+        }
+        // 采样结束后仍有解码和保存，完成前进度封顶 99
+        double progress = max > 0 ? Math.min(99.0, value * 100.0 / max) : 0.0;
+        int step = (int) progress / JOURNAL_PROGRESS_STEP;
+        if (step > task.journaledProgressStep) {
+            task.journaledProgressStep = step;
+            taskJournal.progress(task.promptId, progress);
+        }
+        Integer finalEta = eta;
+        publish(task, current -> current.isFinished()
+                ? current : TaskStatusResponse.running(node, value, max, progress, finalEta));
+    }
+
+    void onExecuted(String promptId, List<ComfyUIImage> images) {
+        track(resolve(promptId)).images.addAll(images);
+    }
+
+    void onSuccess(String promptId) {
+        complete(track(resolve(promptId)), null);
+    }
+
+    void onError(String promptId, String message) {
+        complete(track(resolve(promptId)), message);
+    }
+
+    /**
+     * 通过 /history 确认完成的任务（WebSocket 断线期间）
+     */
+    public void completeFromHistory(String promptId, List<ComfyUIImage> images) {
+        TrackedTask task = track(promptId);
+        if (task.images.isEmpty()) {
+            task.images.addAll(images);
+        }
+        complete(task, null);
+    }
+
+    /**
+     * 直接以缓存结果完成任务（未提交到 ComfyUI）
+     * @param promptId 任务ID
+     * @param images 图片
+     * @param imageUrls 图片访问地址
+     */
+    public void completeCached(String promptId, List<ComfyUIImage> images, List<String> imageUrls) {
+        TrackedTask task = track(promptId);
+        if (!task.done.compareAndSet(false, true)) {
+            return;
+        }
+        task.completedAt = System.currentTimeMillis();
+        recordMetrics(task, "cached");
+        publish(task, current -> TaskStatusResponse.success(images.stream().map(ComfyUIImage::getFilename).toList(), imageUrls));
+        taskJournal.complete(promptId, images, imageUrls, null);
+        task.completion.complete(images);
+    }
+
+    private void complete(TrackedTask task, String error) {
+        if (!task.done.compareAndSet(false, true)) {
+            return;
+        }
+        task.completedAt = System.currentTimeMillis();
+        if (task.startedAt > 0) {
+            recordDuration(task.completedAt - task.startedAt);
+        }
+        List<ComfyUIImage> images = List.copyOf(task.images);
+        recordMetrics(task, error != null ? "error" : images.isEmpty() ? "empty" : "success");
+        if (error != null) {
+            publish(task, current -> TaskStatusResponse.error(error));
+            taskJournal.complete(task.promptId, List.of(), List.of(), error);
+            task.completion.completeExceptionally(new RuntimeException(error));
+            return;
+        }
+        List<String> imageUrls = images.stream().map(image -> imageUrlResolver.apply(task.backendId, image)).toList();
+        publish(task, current -> images.isEmpty() ? TaskStatusResponse.error("任务完成但未生成图片")
+                : TaskStatusResponse.success(images.stream().map(ComfyUIImage::getFilename).toList(), imageUrls));
+        taskJournal.complete(task.promptId, images, imageUrls, images.isEmpty() ? "任务完成但未生成图片" : null);
+        task.completion.complete(images);
+    }
+
+    /**
+     * 任务耗时指标：排队（提交到开始执行）、执行、总耗时，按结果分类
+     */
+    private void recordMetrics(TrackedTask task, String outcome) {
+        if (task.startedAt > 0) {
+            timer("comfyui.task.queue", outcome).record(task.startedAt - task.createdAt, TimeUnit.MILLISECONDS);
+            timer("comfyui.task.execution", outcome).record(task.completedAt - task.startedAt, TimeUnit.MILLISECONDS);
+        }
+        timer("comfyui.task.total", outcome).record(task.completedAt - task.createdAt, TimeUnit.MILLISECONDS);
+    }
+
+    private Timer timer(String name, String outcome) {
+        return Timer.builder(name).tag("outcome", outcome).publishPercentileHistogram().register(meterRegistry);
+    }
+
+    /**
+     * 未完成的任务数
+     */
+    public int getActiveCount() {
+        return (int) tasks.values().stream().filter(task -> !task.done.get()).count();
+    }
+
+    /**
+     * 原子替换状态快照，发生变化时通知订阅者
+     */
+    private void publish(TrackedTask task, UnaryOperator<TaskStatusResponse> update) {
+        TaskStatusResponse current;
+        TaskStatusResponse next;
+        do {
+            current = task.status.get();
+            next = update.apply(current);
+            if (next == current) {
+                return;
+            }
+        } while (!task.status.compareAndSet(current, next));
+
+        for (Consumer<TaskStatusResponse> subscriber : task.subscribers) {
+            try {
+                subscriber.accept(next);
+            } catch (Exception e) {
+                log.warn("任务状态订阅回调异常: {}", e.getMessage());
+            }
+        }
+    }
+
+    private String resolve(String upstreamPromptId) {
+        return aliases.getOrDefault(upstreamPromptId, upstreamPromptId);
+    }
+
+    private TrackedTask track(String promptId) {
+        return tasks.computeIfAbsent(promptId, TrackedTask::new);
+    }
+
+    private void recordDuration(long millis) {
+        long avg = avgExecutionMillis;
+        avgExecutionMillis = avg == 0 ? millis : (long) (avg * (1 - DURATION_SMOOTHING) + millis * DURATION_SMOOTHING);
+    }
+
+    private Integer estimatePendingSeconds(int position) {
+        long avg = avgExecutionMillis;
+        return avg == 0 ? null : (int) ((position + 1) * avg / 1000);
+    }
+
+    private Integer estimateRunningSeconds(TrackedTask task) {
+        long avg = avgExecutionMillis;
+        return avg == 0 ? null : (int) (Math.max(0, avg - (System.currentTimeMillis() - task.startedAt)) / 1000);
+    }
+
+    private void evictExpired() {
+        long now = System.currentTimeMillis();
+        tasks.values().removeIf(task -> task.completedAt > 0 ? task.completedAt < now - COMPLETED_RETENTION
+                : task.createdAt < now - PENDING_RETENTION);
+        aliases.values().removeIf(promptId -> !tasks.containsKey(promptId));
+    }
+
+    /**
+     * 被跟踪的任务
+     */
+    private static final class TrackedTask {
+        private final String promptId;
+        private final CompletableFuture<List<ComfyUIImage>> completion = new CompletableFuture<>();
+        private final List<ComfyUIImage> images = new CopyOnWriteArrayList<>();
+        private final List<Consumer<TaskStatusResponse>> subscribers = new CopyOnWriteArrayList<>();
+        private final AtomicReference<TaskStatusResponse> status =
+                new AtomicReference<>(TaskStatusResponse.pending(null, null));
+        private final long createdAt = System.currentTimeMillis();
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile String backendId;
+        private volatile String upstreamPromptId;
+        private volatile long startedAt;
+        private volatile long completedAt;
+        private volatile String samplingNode;
+        private volatile long samplingStartedAt;
+        private volatile int journaledProgressStep;
+
+        private TrackedTask(String promptId) {
+            this.promptId = promptId;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.ai.center.util;
+
+import cn.hutool.core.util.StrUtil;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ComfyUI WebSocket 事件监听器
+ * 每个后端节点一条使用固定 clientId 的共享 /ws 长连接，将 status/progress/executing/executed 等事件
+ * 转交给任务状态表，图片生成完成的第一时间即可完成对应 prompt_id 的 Future，断线后自动重连
+ */
+@Slf4j
+public class ComfyUIWebSocketListener implements WebSocket.Listener {
+
+    // 重连退避上限（毫秒）
+    private static final long MAX_RECONNECT_DELAY = 30000;
+
+    private final ComfyUIBackend backend;
+    private final String clientId;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final ComfyUITaskTracker taskTracker;
+
+    // 分片文本消息缓冲（WebSocket 回调按顺序串行调用）
+    private final StringBuilder textBuffer = new StringBuilder();
+
+    private volatile WebSocket webSocket;
+    private volatile boolean connected;
+    private volatile boolean stopped;
+    private volatile int connectionEpoch;
+    private volatile long reconnectDelay = 1000;
+
+    public ComfyUIWebSocketListener(ComfyUIBackend backend, String clientId, HttpClient httpClient,
+                                    ScheduledExecutorService scheduler, ComfyUITaskTracker taskTracker) {
+        this.backend = backend;
+        this.clientId = clientId;
+        this.httpClient = httpClient;
+        this.scheduler = scheduler;
+        this.taskTracker = taskTracker;
+    }
+
+    public void start() {
+        connect();
+    }
+
+    public void stop() {
+        stopped = true;
+        WebSocket ws = webSocket;
+        if (ws != null) {
+            ws.abort();
+        }
+    }
+
+    /**
+     * 当前是否已连接
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * 连接代次，每次重新连上加一；等待方据此判断期间是否可能漏掉事件
+     */
+    public int getConnectionEpoch() {
+        return connectionEpoch;
+    }
+
+    private void connect() {
+        if (stopped) {
+            return;
+        }
+        String wsUrl = backend.getBaseUrl().replaceFirst("^http", "ws") + "/ws?clientId=" + clientId;
+        httpClient.newWebSocketBuilder()
+                .buildAsync(URI.create(wsUrl), this)
+                .whenComplete((ws, e) -> {
+                    if (e != null) {
+                        log.warn("ComfyUI WebSocket连接失败，节点: {}，{}", backend.getId(), e.getMessage());
+                        scheduleReconnect();
+                    }
+                });
+    }
+
+    private void scheduleReconnect() {
+        connected = false;
+        if (stopped) {
+            return;
+        }
+        long delay = reconnectDelay;
+        reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY);
+        try {
+            scheduler.schedule(this::connect, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // 已关闭
+        }
+    }
+
+    @Override
+    public void onOpen(WebSocket ws) {
+        webSocket = ws;
+        connected = true;
+        connectionEpoch++;
+        reconnectDelay = 1000;
+        log.info("ComfyUI WebSocket已连接，节点: {}，clientId: {}", backend.getId(), clientId);
+        ws.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+        textBuffer.append(data);
+        if (last) {
+            String message = textBuffer.toString();
+            textBuffer.setLength(0);
+            try {
+                handleMessage(message);
+            } catch (Exception e) {
+                log.warn("处理ComfyUI事件异常: {}", e.getMessage());
+            }
+        }
+        ws.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onBinary(WebSocket ws, ByteBuffer data, boolean last) {
+        // 二进制消息为预览图，忽略
+        ws.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+        log.warn("ComfyUI WebSocket连接关闭，节点: {}，状态码: {}，原因: {}", backend.getId(), statusCode, reason);
+        scheduleReconnect();
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket ws, Throwable error) {
+        log.warn("ComfyUI WebSocket连接异常，节点: {}，{}", backend.getId(), error.getMessage());
+        textBuffer.setLength(0);
+        scheduleReconnect();
+    }
+
+    private void handleMessage(String message) {
+        JSONObject event = JSON.parseObject(message);
+        JSONObject data = event.getJSONObject("data");
+        String type = event.getString("type");
+        if (type == null || data == null) {
+            return;
+        }
+        if ("status".equals(type)) {
+            JSONObject status = data.getJSONObject("status");
+            JSONObject execInfo = status == null ? null : status.getJSONObject("exec_info");
+            if (execInfo != null) {
+                backend.setQueueDepth(execInfo.getIntValue("queue_remaining"));
+                taskTracker.onQueueRemaining(backend.getId(), backend.getQueueDepth());
+            }
+            return;
+        }
+        String promptId = data.getString("prompt_id");
+        if (StrUtil.isBlank(promptId)) {
+            return;
+        }
+
+        switch (type) {
+            case "execution_start" -> taskTracker.onExecutionStart(promptId);
+            case "executing" -> {
+                // node 为 null 表示整个 prompt 执行结束
+                String node = data.getString("node");
+                if (node == null) {
+                    taskTracker.onSuccess(promptId);
+                } else {
+                    taskTracker.onExecuting(promptId, node);
+                }
+            }
+            case "progress" -> taskTracker.onProgress(promptId, data.getString("node"),
+                    data.getIntValue("value"), data.getIntValue("max"));
+            case "executed" -> {
+                JSONObject output = data.getJSONObject("output");
+                JSONArray images = output == null ? null : output.getJSONArray("images");
+                if (images != null) {
+                    taskTracker.onExecuted(promptId, ComfyUIClientUtil.parseOutputImages(images));
+                }
+            }
+            case "execution_success" -> taskTracker.onSuccess(promptId);
+            case "execution_error" -> taskTracker.onError(promptId, "任务执行失败: " + data.getString("exception_message"));
+            case "execution_interrupted" -> taskTracker.onError(promptId, "任务被中断");
+            default -> {
+            }
+        }
+    }
+}
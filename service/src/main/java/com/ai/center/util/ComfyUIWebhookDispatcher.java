@@ -0,0 +1,416 @@
+package com.ai.center.util;
+
+import cn.hutool.core.util.StrUtil;
+import com.ai.center.model.ComfyUIImage;
+import com.ai.center.model.TaskRecord;
+import com.ai.center.model.TaskStatusResponse;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ComfyUI 任务完成回调
+ * 任务完成后向调用方登记的地址 POST 一次完成通知（prompt_id、图片地址、各阶段耗时），
+ * 请求体用 HMAC-SHA256 签名；非 2xx 按指数退避重试，待投递数量有上限，超出时丢弃并记录
+ *
+ * 地址限制：登记和每次投递前都解析回调主机，解析到回环、内网、链路本地等地址的主机只有列入白名单才允许；
+ * 回调上游不跟随重定向，3xx 视为投递失败，避免经允许的主机转发到内部地址。
+ * 为防止 DNS 重绑定（校验后再次解析得到内部地址），http 回调经代理选择器直接连接校验时解析出的地址（请求行为绝对地址，
+ * Host 不变），不再由 HttpClient 重新解析；https 回调由 HttpClient 解析，重绑定到内部地址时对方无法出示该主机名的证书，
+ * TLS 握手失败，请求不会发出
+ *
+ * 签名：X-Webhook-Signature = "sha256=" + hex(HMAC(secret, X-Webhook-Timestamp + "." + 请求体))，
+ * 接收方按相同方式计算并比对，同时校验时间戳防止重放；X-Webhook-Id（即 prompt_id）用于接收方去重
+ */
+@Slf4j
+@Component
+public class ComfyUIWebhookDispatcher {
+
+    // 签名密钥，未配置时不支持回调
+    @Value("${comfyUi.webhook.secret:}")
+    private String secret;
+
+    // 最多投递次数（含首次）
+    @Value("${comfyUi.webhook.max-attempts:6}")
+    private int maxAttempts;
+
+    // 同时进行的投递数
+    @Value("${comfyUi.webhook.concurrency:8}")
+    private int concurrency;
+
+    // 待投递（含等待重试）的回调上限
+    @Value("${comfyUi.webhook.queue-capacity:1000}")
+    private int queueCapacity;
+
+    // 图片地址前缀（本服务对外地址），为空时回调中为相对地址
+    @Value("${comfyUi.webhook.public-base-url:}")
+    private String publicBaseUrl;
+
+    // 允许回调的主机，逗号分隔，为空时允许任意公网主机（内部地址须列入才允许）
+    @Value("${comfyUi.webhook.allowed-hosts:}")
+    private String allowedHosts;
+
+    // 上游名称，对应 upstream.webhook.* 连接池配置
+    private static final String UPSTREAM = "webhook";
+
+    // 重试初始退避（毫秒），每次翻倍
+    private static final long RETRY_BACKOFF = 1000;
+    private static final long MAX_RETRY_BACKOFF = TimeUnit.MINUTES.toMillis(5);
+
+    private static final String SIGNATURE_ALGORITHM = "HmacSHA256";
+
+    // 固定连接地址的回调主机数上限，超出时清空重新校验
+    private static final int MAX_PINNED_HOSTS = 1024;
+
+    @Autowired
+    private ComfyUITaskTracker taskTracker;
+
+    @Autowired
+    private ComfyUITaskJournal taskJournal;
+
+    @Autowired
+    private UpstreamHttpClient upstreamHttpClient;
+
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("comfyui-webhook-retry").daemon().factory());
+
+    // 待投递数（含等待重试）
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // http 回调地址（主机:端口）-> 最近一次校验通过的连接地址
+    private final Map<String, InetSocketAddress> pinnedAddresses = new ConcurrentHashMap<>();
+    private final ProxySelector pinnedAddressSelector = new PinnedAddressSelector();
+
+    private Semaphore permits;
+    private Set<String> hostWhitelist;
+
+    @PostConstruct
+    public void validateConfig() {
+        if (maxAttempts <= 0 || concurrency <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("回调投递次数、并发数和队列容量必须大于0");
+        }
+        permits = new Semaphore(concurrency);
+        hostWhitelist = Set.copyOf(StrUtil.splitTrim(allowedHosts.toLowerCase(), ','));
+        publicBaseUrl = StrUtil.removeSuffix(publicBaseUrl, "/");
+        if (StrUtil.isBlank(secret)) {
+            log.warn("未配置回调签名密钥（comfyUi.webhook.secret），任务完成回调不可用");
+        } else if (upstream().isFollowRedirects()) {
+            throw new IllegalArgumentException("回调上游不能跟随重定向，请配置 upstream." + UPSTREAM + ".follow-redirects=false");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+        sender.shutdownNow();
+        if (pending.get() > 0) {
+            log.warn("服务关闭，{} 个回调未投递", pending.get());
+        }
+    }
+
+    /**
+     * 校验回调地址
+     * @throws IllegalArgumentException 未启用回调或地址不合法
+     */
+    public void validate(String callbackUrl) {
+        if (StrUtil.isBlank(secret)) {
+            throw new IllegalArgumentException("服务未启用任务完成回调");
+        }
+        URI uri;
+        try {
+            uri = URI.create(callbackUrl);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("回调地址不合法: " + callbackUrl);
+        }
+        if (!"http".equals(uri.getScheme()) && !"https".equals(uri.getScheme()) || uri.getHost() == null) {
+            throw new IllegalArgumentException("回调地址必须以http://或https://开头: " + callbackUrl);
+        }
+        try {
+            checkHost(normalizeHost(uri.getHost()));
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("回调地址主机无法解析: " + uri.getHost());
+        }
+    }
+
+    /**
+     * 校验回调主机：白名单中的主机直接允许；配置了白名单时其他主机一律拒绝；
+     * 未配置时拒绝解析到回环、内网、链路本地等内部地址的主机
+     * @param host 规范化后的主机（小写、IPv6 不带方括号）
+     * @return 校验通过的地址（投递时连接该地址），白名单中的主机为 null
+     * @throws IllegalArgumentException 主机不允许回调
+     * @throws UnknownHostException 主机无法解析
+     */
+    private InetAddress checkHost(String host) throws UnknownHostException {
+        if (hostWhitelist.contains(host)) {
+            return null;
+        }
+        if (!hostWhitelist.isEmpty()) {
+            throw new IllegalArgumentException("回调地址主机不在允许范围内: " + host);
+        }
+        InetAddress[] addresses = InetAddress.getAllByName(host);
+        for (InetAddress address : addresses) {
+            if (isInternal(address)) {
+                throw new IllegalArgumentException("回调地址指向内部地址，须列入 comfyUi.webhook.allowed-hosts 才允许: "
+                        + host + " -> " + address.getHostAddress());
+            }
+        }
+        return addresses[0];
+    }
+
+    private static String normalizeHost(String host) {
+        return StrUtil.unWrap(host.toLowerCase(), '[', ']');
+    }
+
+    private static String authority(URI uri) {
+        return normalizeHost(uri.getHost()) + ":" + (uri.getPort() == -1 ? 80 : uri.getPort());
+    }
+
+    /**
+     * 回调上游（首次创建时使用固定地址的代理选择器）
+     */
+    private UpstreamHttpClient.Upstream upstream() {
+        return upstreamHttpClient.upstream(UPSTREAM, pinnedAddressSelector);
+    }
+
+    /**
+     * http 回调连接投递前校验过的地址（以该地址为 HTTP 代理，请求行为绝对地址，对方按 Host 处理）；
+     * 白名单中的主机和 https 回调不使用代理；没有校验记录的 http 地址拒绝发送
+     */
+    private final class PinnedAddressSelector extends ProxySelector {
+
+        @Override
+        public List<Proxy> select(URI uri) {
+            if (!"http".equalsIgnoreCase(uri.getScheme()) || hostWhitelist.contains(normalizeHost(uri.getHost()))) {
+                return List.of(Proxy.NO_PROXY);
+            }
+            InetSocketAddress address = pinnedAddresses.get(authority(uri));
+            if (address == null) {
+                throw new IllegalArgumentException("回调地址未经校验: " + uri.getHost());
+            }
+            return List.of(new Proxy(Proxy.Type.HTTP, address));
+        }
+
+        @Override
+        public void connectFailed(URI uri, SocketAddress address, IOException e) {
+            // 连接失败按投递失败重试，重试前重新校验
+        }
+    }
+
+    private static boolean isInternal(InetAddress address) {
+        if (address.isLoopbackAddress() || address.isAnyLocalAddress() || address.isLinkLocalAddress()
+                || address.isSiteLocalAddress() || address.isMulticastAddress()) {
+            return true;
+        }
+        // IPv6 唯一本地地址 fc00::/7
+        return address instanceof Inet6Address && (address.getAddress()[0] & 0xFE) == 0xFC;
+    }
+
+    /**
+     * 登记任务完成回调（任务已完成时立即投递），同一地址重复登记只投递一次
+     * @param promptId 任务ID
+     * @param callbackUrl 回调地址
+     * @throws IllegalArgumentException 未启用回调或地址不合法
+     */
+    public void register(String promptId, String callbackUrl) {
+        validate(callbackUrl);
+        if (taskJournal.callback(promptId, callbackUrl)) {
+            attach(promptId, callbackUrl);
+        }
+    }
+
+    /**
+     * 恢复服务重启前登记的回调（任务日志中已记录，不再重复记录）
+     */
+    public void resume(TaskRecord record) {
+        if (record.getCallbackUrls() == null || StrUtil.isBlank(secret)) {
+            return;
+        }
+        for (String callbackUrl : record.getCallbackUrls()) {
+            attach(record.getPromptId(), callbackUrl);
+        }
+    }
+
+    /**
+     * 待投递（含等待重试）的回调数
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    private void attach(String promptId, String callbackUrl) {
+        taskTracker.awaitCompletion(promptId).whenComplete((images, e) -> enqueue(new Delivery(promptId, callbackUrl)));
+    }
+
+    private void enqueue(Delivery delivery) {
+        if (pending.incrementAndGet() > queueCapacity) {
+            pending.decrementAndGet();
+            log.warn("回调队列已满，丢弃回调，prompt_id: {}，地址: {}", delivery.promptId, delivery.callbackUrl);
+            return;
+        }
+        sender.execute(() -> attempt(delivery));
+    }
+
+    private void attempt(Delivery delivery) {
+        delivery.attempts++;
+        String failure;
+        permits.acquireUninterruptibly();
+        try {
+            if (delivery.body == null) {
+                delivery.body = payload(delivery.promptId).toJSONString().getBytes(StandardCharsets.UTF_8);
+            }
+            // 登记后主机解析结果可能变化，投递前重新校验，并连接本次校验的地址
+            URI uri = URI.create(delivery.callbackUrl);
+            InetAddress address = checkHost(normalizeHost(uri.getHost()));
+            if (address != null && "http".equalsIgnoreCase(uri.getScheme())) {
+                if (pinnedAddresses.size() >= MAX_PINNED_HOSTS) {
+                    pinnedAddresses.clear();
+                }
+                pinnedAddresses.put(authority(uri), new InetSocketAddress(address, uri.getPort() == -1 ? 80 : uri.getPort()));
+            }
+            int status = send(delivery);
+            if (status / 100 == 2) {
+                pending.decrementAndGet();
+                log.info("回调投递成功，prompt_id: {}，地址: {}，第 {} 次", delivery.promptId, delivery.callbackUrl, delivery.attempts);
+                return;
+            }
+            // 不跟随重定向，3xx 与 4xx（408、429 除外）一样说明请求本身不会被接受，重试没有意义
+            if (status / 100 == 3 || status / 100 == 4 && status != 408 && status != 429) {
+                giveUp(delivery, "状态码: " + status);
+                return;
+            }
+            failure = "状态码: " + status;
+        } catch (UpstreamException e) {
+            failure = e.getMessage();
+        } catch (UnknownHostException e) {
+            failure = "主机无法解析: " + e.getMessage();
+        } catch (Exception e) {
+            giveUp(delivery, e.getMessage());
+            return;
+        } finally {
+            permits.release();
+        }
+
+        if (delivery.attempts >= maxAttempts) {
+            giveUp(delivery, failure);
+            return;
+        }
+        long backoff = Math.min(MAX_RETRY_BACKOFF, RETRY_BACKOFF << (delivery.attempts - 1));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        log.warn("回调投递失败，{} 毫秒后重试，prompt_id: {}，{}", delay, delivery.promptId, failure);
+        try {
+            retryScheduler.schedule(() -> sender.execute(() -> attempt(delivery)), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            giveUp(delivery, "服务关闭");
+        }
+    }
+
+    private int send(Delivery delivery) throws GeneralSecurityException {
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+        UpstreamHttpClient.Upstream upstream = upstream();
+        HttpRequest request = upstream.request(delivery.callbackUrl)
+                .header("Content-Type", "application/json")
+                .header("X-Webhook-Id", delivery.promptId)
+                .header("X-Webhook-Timestamp", timestamp)
+                .header("X-Webhook-Signature", "sha256=" + sign(timestamp, delivery.body))
+                .header("X-Webhook-Attempt", String.valueOf(delivery.attempts))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(delivery.body))
+                .build();
+        return upstream.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private String sign(String timestamp, byte[] body) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(SIGNATURE_ALGORITHM);
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), SIGNATURE_ALGORITHM));
+        mac.update((timestamp + ".").getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(mac.doFinal(body));
+    }
+
+    /**
+     * 回调内容：结果和耗时取自任务日志（任务完成时已写入）
+     */
+    private JSONObject payload(String promptId) {
+        JSONObject payload = new JSONObject()
+                .fluentPut("event", "task.completed")
+                .fluentPut("promptId", promptId);
+        TaskRecord record = taskJournal.find(promptId);
+        if (record == null || record.getCompletedAt() == 0) {
+            // 任务未写入日志（如日志已过期），退回内存状态
+            TaskStatusResponse status = taskTracker.getStatus(promptId);
+            return payload.fluentPut("status", status != null && status.getError() == null ? "success" : "error")
+                    .fluentPut("images", status == null ? List.of() : status.getImages())
+                    .fluentPut("imageUrls", status == null ? List.of() : absolute(status.getImageUrls()))
+                    .fluentPut("error", status == null ? "任务不存在" : status.getError());
+        }
+        long submittedAt = record.getCreatedAt();
+        long startedAt = record.getStartedAt();
+        long completedAt = record.getCompletedAt();
+        return payload.fluentPut("status", record.getStatus())
+                .fluentPut("images", record.getImages() == null ? List.of()
+                        : record.getImages().stream().map(ComfyUIImage::getFilename).toList())
+                .fluentPut("imageUrls", absolute(record.getImageUrls()))
+                .fluentPut("error", record.getError())
+                .fluentPut("timings", new JSONObject()
+                        .fluentPut("submittedAt", submittedAt)
+                        .fluentPut("startedAt", startedAt == 0 ? null : startedAt)
+                        .fluentPut("completedAt", completedAt)
+                        .fluentPut("queueMillis", startedAt == 0 ? null : startedAt - submittedAt)
+                        .fluentPut("executionMillis", startedAt == 0 ? null : completedAt - startedAt)
+                        .fluentPut("totalMillis", completedAt - submittedAt));
+    }
+
+    private List<String> absolute(List<String> urls) {
+        if (urls == null) {
+            return List.of();
+        }
+        return urls.stream().map(url -> url.startsWith("/") ? publicBaseUrl + url : url).toList();
+    }
+
+    private void giveUp(Delivery delivery, String reason) {
+        pending.decrementAndGet();
+        log.error("回调投递失败，已放弃，prompt_id: {}，地址: {}，共 {} 次，{}",
+                delivery.promptId, delivery.callbackUrl, delivery.attempts, reason);
+    }
+
+    /**
+     * 一次回调投递
+     */
+    private static final class Delivery {
+        private final String promptId;
+        private final String callbackUrl;
+        private byte[] body;
+        private int attempts;
+
+        private Delivery(String promptId, String callbackUrl) {
+            this.promptId = promptId;
+            this.callbackUrl = callbackUrl;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.ai.center.util;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * ComfyUI 工作流注册表
+ * 启动时加载内置工作流（workflow-path，随 jar 发布）和工作流目录下的全部 *.json，校验并预编译后常驻内存，
+ * 文件名（去掉 .json）即工作流名称，目录中的同名文件覆盖内置工作流；
+ * 目录由 WatchService 监听，文件新增或修改后重新编译并整体替换，删除后回退到内置版本（如有），
+ * 编译失败时保留旧版本，请求期间不读文件
+ */
+@Slf4j
+@Component
+public class ComfyUIWorkflowRegistry {
+
+    // 内置工作流（classpath 或带协议前缀的资源路径）
+    @Value("${comfyUi.workflow-path:comfyui_workflow/image.json}")
+    private String builtinWorkflowPath;
+
+    // 工作流目录，为空时只使用内置工作流
+    @Value("${comfyUi.workflow-dir:}")
+    private String workflowDir;
+
+    // 默认工作流名称，为空时取内置工作流
+    @Value("${comfyUi.default-workflow:}")
+    private String defaultWorkflow;
+
+    /**
+     * 注入参数中携带工作流名称的键，调度和日志回放时据此选择工作流（不参与渲染）
+     */
+    public static final String PARAM_WORKFLOW = "_workflow";
+
+    private static final String WORKFLOW_SUFFIX = ".json";
+    private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    // 文件事件合并等待时间（毫秒），避免读到写了一半的文件
+    private static final long SETTLE_DELAY = 300;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    // 内置工作流
+    private final Map<String, ComfyUIWorkflowTemplate> builtin = new ConcurrentHashMap<>();
+
+    // 当前生效的工作流（内置 + 目录），单个工作流整体替换
+    private final Map<String, ComfyUIWorkflowTemplate> workflows = new ConcurrentHashMap<>();
+
+    private Path directory;
+    private WatchService watchService;
+    private Thread watcher;
+
+    @PostConstruct
+    public void init() {
+        String builtinName = nameOf(FileUtil.getName(builtinWorkflowPath));
+        if (builtinName == null) {
+            throw new IllegalArgumentException("内置工作流文件名不合法: " + builtinWorkflowPath);
+        }
+        builtin.put(builtinName, loadBuiltin(builtinName));
+        workflows.putAll(builtin);
+
+        if (StrUtil.isNotBlank(workflowDir)) {
+            directory = Paths.get(workflowDir).toAbsolutePath().normalize();
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("创建工作流目录失败: " + directory, e);
+            }
+            scanDirectory();
+            startWatcher();
+        }
+
+        if (StrUtil.isBlank(defaultWorkflow)) {
+            defaultWorkflow = builtinName;
+        }
+        if (!workflows.containsKey(defaultWorkflow)) {
+            throw new IllegalArgumentException("默认工作流不存在: " + defaultWorkflow);
+        }
+        log.info("工作流注册表初始化完成，工作流: {}，默认: {}", new TreeSet<>(workflows.keySet()), defaultWorkflow);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watcher != null) {
+            watcher.interrupt();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 按名称获取工作流
+     * @param name 工作流名称，为空时返回默认工作流
+     * @return 预编译工作流
+     * @throws IllegalArgumentException 工作流不存在
+     */
+    public ComfyUIWorkflowTemplate get(String name) {
+        String key = StrUtil.isBlank(name) ? defaultWorkflow : name;
+        ComfyUIWorkflowTemplate workflow = workflows.get(key);
+        if (workflow == null) {
+            throw new IllegalArgumentException("工作流不存在: " + key);
+        }
+        return workflow;
+    }
+
+    /**
+     * 全部工作流名称（有序）
+     */
+    public SortedSet<String> names() {
+        return new TreeSet<>(workflows.keySet());
+    }
+
+    public String getDefaultWorkflow() {
+        return defaultWorkflow;
+    }
+
+    private ComfyUIWorkflowTemplate loadBuiltin(String name) {
+        String location = builtinWorkflowPath.contains(":") ? builtinWorkflowPath : "classpath:" + builtinWorkflowPath;
+        Resource resource = resourceLoader.getResource(location);
+        try (InputStream in = resource.getInputStream()) {
+            return compile(name, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("读取内置工作流失败: " + builtinWorkflowPath, e);
+        }
+    }
+
+    private void scanDirectory() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + WORKFLOW_SUFFIX)) {
+            for (Path file : files) {
+                load(file);
+            }
+        } catch (IOException e) {
+            log.error("扫描工作流目录失败: {}", directory, e);
+        }
+    }
+
+    /**
+     * 加载单个工作流文件，编译失败时保留旧版本
+     */
+    private void load(Path file) {
+        String name = nameOf(file.getFileName().toString());
+        if (name == null) {
+            return;
+        }
+        if (!Files.isRegularFile(file)) {
+            remove(name);
+            return;
+        }
+        try {
+            ComfyUIWorkflowTemplate workflow = compile(name, Files.readString(file, StandardCharsets.UTF_8));
+            ComfyUIWorkflowTemplate previous = workflows.put(name, workflow);
+            log.info("工作流{}: {}", previous == null ? "加载完成" : "已更新", name);
+        } catch (Exception e) {
+            log.warn("工作流加载失败，{}: {}，{}", workflows.containsKey(name) ? "继续使用旧版本" : "已跳过", file, e.getMessage());
+        }
+    }
+
+    private void remove(String name) {
+        ComfyUIWorkflowTemplate fallback = builtin.get(name);
+        if (fallback != null) {
+            workflows.put(name, fallback);
+            log.info("工作流文件已删除，回退到内置版本: {}", name);
+        } else if (name.equals(defaultWorkflow)) {
+            log.warn("默认工作流文件已删除，继续使用已加载版本: {}", name);
+        } else if (workflows.remove(name) != null) {
+            log.info("工作流已移除: {}", name);
+        }
+    }
+
+    /**
+     * 编译并校验工作流：必须有提示词注入点
+     */
+    private ComfyUIWorkflowTemplate compile(String name, String workflowJson) {
+        ComfyUIWorkflowTemplate workflow = ComfyUIWorkflowTemplate.compile(name, workflowJson);
+        if (!workflow.hasParam(ComfyUIWorkflowTemplate.PARAM_PROMPT)) {
+            throw new IllegalArgumentException("工作流缺少提示词注入点: " + name);
+        }
+        return workflow;
+    }
+
+    private void startWatcher() {
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            log.error("工作流目录监听失败，工作流不会热更新: {}", directory, e);
+            return;
+        }
+        watcher = Thread.ofPlatform().name("comfyui-workflow-watcher").daemon().start(this::watch);
+    }
+
+    private void watch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+                // 等待写入完成，同一文件的多次事件合并处理
+                TimeUnit.MILLISECONDS.sleep(SETTLE_DELAY);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Set<Path> changed = new LinkedHashSet<>();
+            boolean overflow = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    overflow = true;
+                } else {
+                    changed.add(directory.resolve((Path) event.context()));
+                }
+            }
+            if (overflow) {
+                scanDirectory();
+            } else {
+                changed.forEach(this::load);
+            }
+            if (!key.reset()) {
+                log.error("工作流目录不可用，停止监听: {}", directory);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 文件名转工作流名称，非 .json 或名称不合法时返回 null
+     */
+    private static String nameOf(String fileName) {
+        if (fileName == null || !fileName.endsWith(WORKFLOW_SUFFIX)) {
+            return null;
+        }
+        String name = fileName.substring(0, fileName.length() - WORKFLOW_SUFFIX.length());
+        return NAME_PATTERN.matcher(name).matches() ? name : null;
+    }
+}
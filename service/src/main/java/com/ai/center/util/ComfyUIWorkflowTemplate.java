@@ -0,0 +1,214 @@
+package com.ai.center.util;
+
+import cn.hutool.core.util.IdUtil;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ComfyUI 预编译工作流模板
+ * 工作流JSON只在加载时解析一次，按注入点切分为字节片段，渲染时直接拼接参数值生成请求体，不再重复读文件和解析JSON
+ *
+ * 注入点有两种声明方式：
+ * 1. 节点 _meta.inject 中声明 "输入名": "参数名"，输入原值作为参数默认值
+ * 2. 兼容旧格式：输入值为 "{}" 的位置按出现顺序依次对应 seed、prompt
+ */
+public final class ComfyUIWorkflowTemplate {
+
+    public static final String PARAM_SEED = "seed";
+    public static final String PARAM_PROMPT = "prompt";
+    public static final String PARAM_NEGATIVE_PROMPT = "negative_prompt";
+    public static final String PARAM_WIDTH = "width";
+    public static final String PARAM_HEIGHT = "height";
+    public static final String PARAM_STEPS = "steps";
+    public static final String PARAM_CFG = "cfg";
+    public static final String PARAM_SAMPLER = "sampler";
+    public static final String PARAM_SCHEDULER = "scheduler";
+    public static final String PARAM_BATCH_SIZE = "batch_size";
+
+    // 旧版 StrUtil.format 占位符及其按顺序对应的参数名
+    private static final String LEGACY_PLACEHOLDER = "{}";
+    private static final String[] LEGACY_PARAMS = {PARAM_SEED, PARAM_PROMPT};
+
+    private static final String META_KEY = "_meta";
+    private static final String INJECT_KEY = "inject";
+
+    private static final byte[] BODY_PREFIX = "{\"prompt\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BODY_CLIENT_ID = ",\"client_id\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BODY_PROMPT_ID = ",\"prompt_id\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BODY_SUFFIX = "}".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * 模板名称
+     */
+    private final String name;
+
+    /**
+     * 注入点之间的字面量片段，长度为 injectParams.length + 1
+     */
+    private final byte[][] segments;
+
+    /**
+     * 按渲染顺序排列的注入参数名
+     */
+    private final String[] injectParams;
+
+    /**
+     * 参数默认值（旧格式占位符无默认值）
+     */
+    private final Map<String, Object> defaults;
+
+    private final int literalLength;
+
+    private ComfyUIWorkflowTemplate(String name, byte[][] segments, String[] injectParams, Map<String, Object> defaults) {
+        this.name = name;
+        this.segments = segments;
+        this.injectParams = injectParams;
+        this.defaults = defaults;
+        int length = 0;
+        for (byte[] segment : segments) {
+            length += segment.length;
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * 编译工作流JSON
+     * @param name 模板名称
+     * @param workflowJson 工作流JSON（ComfyUI API格式）
+     * @return 预编译模板
+     */
+    public static ComfyUIWorkflowTemplate compile(String name, String workflowJson) {
+        JSONObject workflow = JSON.parseObject(workflowJson);
+        if (workflow == null || workflow.isEmpty()) {
+            throw new IllegalArgumentException("工作流内容为空: " + name);
+        }
+
+        // 用唯一标记替换注入点，序列化后再按标记切分
+        String marker = "__inject_" + IdUtil.fastSimpleUUID() + "_";
+        List<String> markerParams = new ArrayList<>();
+        Map<String, Object> defaults = new LinkedHashMap<>();
+        int legacyIndex = 0;
+
+        for (String nodeId : workflow.keySet()) {
+            JSONObject node = workflow.getJSONObject(nodeId);
+            JSONObject inputs = node == null ? null : node.getJSONObject("inputs");
+            if (inputs == null) {
+                continue;
+            }
+            JSONObject meta = node.getJSONObject(META_KEY);
+            JSONObject inject = meta == null ? null : (JSONObject) meta.remove(INJECT_KEY);
+
+            for (String inputKey : inputs.keySet()) {
+                Object value = inputs.get(inputKey);
+                String param = null;
+                if (inject != null && inject.containsKey(inputKey)) {
+                    param = inject.getString(inputKey);
+                    if (value != null) {
+                        defaults.putIfAbsent(param, value);
+                    }
+                } else if (LEGACY_PLACEHOLDER.equals(value)) {
+                    if (legacyIndex >= LEGACY_PARAMS.length) {
+                        throw new IllegalArgumentException("工作流占位符数量超出预期: " + name);
+                    }
+                    param = LEGACY_PARAMS[legacyIndex++];
+                }
+                if (param != null) {
+                    inputs.put(inputKey, marker + markerParams.size());
+                    markerParams.add(param);
+                }
+            }
+        }
+
+        String serialized = workflow.toJSONString();
+        Matcher matcher = Pattern.compile("\"" + Pattern.quote(marker) + "(\\d+)\"").matcher(serialized);
+        List<byte[]> segments = new ArrayList<>();
+        List<String> injectParams = new ArrayList<>();
+        int last = 0;
+        while (matcher.find()) {
+            segments.add(serialized.substring(last, matcher.start()).getBytes(StandardCharsets.UTF_8));
+            injectParams.add(markerParams.get(Integer.parseInt(matcher.group(1))));
+            last = matcher.end();
+        }
+        segments.add(serialized.substring(last).getBytes(StandardCharsets.UTF_8));
+
+        return new ComfyUIWorkflowTemplate(name, segments.toArray(new byte[0][]),
+                injectParams.toArray(new String[0]), Collections.unmodifiableMap(defaults));
+    }
+
+    /**
+     * 渲染工作流（仅 prompt 部分）
+     * @param params 注入参数
+     * @return 工作流JSON字节
+     */
+    public byte[] renderWorkflow(Map<String, Object> params) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(literalLength + 256);
+        writeWorkflow(out, params);
+        return out.toByteArray();
+    }
+
+    /**
+     * 渲染 /prompt 请求体
+     * @param params 注入参数
+     * @param clientId 客户端ID
+     * @param promptId 指定的 prompt_id，为空时由 ComfyUI 生成
+     * @return 请求体JSON字节
+     */
+    public byte[] renderRequestBody(Map<String, Object> params, String clientId, String promptId) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(literalLength + 384);
+        out.writeBytes(BODY_PREFIX);
+        writeWorkflow(out, params);
+        out.writeBytes(BODY_CLIENT_ID);
+        out.writeBytes(JSON.toJSONBytes(clientId));
+        if (promptId != null) {
+            out.writeBytes(BODY_PROMPT_ID);
+            out.writeBytes(JSON.toJSONBytes(promptId));
+        }
+        out.writeBytes(BODY_SUFFIX);
+        return out.toByteArray();
+    }
+
+    private void writeWorkflow(ByteArrayOutputStream out, Map<String, Object> params) {
+        for (int i = 0; i < injectParams.length; i++) {
+            out.writeBytes(segments[i]);
+            out.writeBytes(JSON.toJSONBytes(resolve(injectParams[i], params)));
+        }
+        out.writeBytes(segments[injectParams.length]);
+    }
+
+    private Object resolve(String param, Map<String, Object> params) {
+        Object value = params == null ? null : params.get(param);
+        if (value == null) {
+            value = defaults.get(param);
+        }
+        if (value == null) {
+            throw new IllegalArgumentException("缺少工作流参数: " + param + "（工作流: " + name + "）");
+        }
+        return value;
+    }
+
+    /**
+     * 是否存在指定注入点
+     */
+    public boolean hasParam(String param) {
+        for (String injectParam : injectParams) {
+            if (injectParam.equals(param)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, Object> getDefaults() {
+        return defaults;
+    }
+}
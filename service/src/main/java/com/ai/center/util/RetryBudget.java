@@ -0,0 +1,47 @@
+package com.ai.center.util;
+
+/**
+ * 重试预算（令牌桶）
+ * 每个首次请求存入 ratio 个令牌，每次重试或对冲消耗 1 个令牌，余额上限为 maxTokens；
+ * 上游整体故障时重试量被限制在正常请求量的 ratio 倍以内，不会因重试放大流量
+ */
+public final class RetryBudget {
+
+    private final double ratio;
+    private final double maxTokens;
+    private double tokens;
+
+    /**
+     * @param ratio 每个请求存入的令牌数（即重试占请求量的比例上限）
+     * @param minTokens 初始令牌数，保证低流量时也能重试
+     * @param maxTokens 令牌上限
+     */
+    public RetryBudget(double ratio, double minTokens, double maxTokens) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = minTokens;
+    }
+
+    /**
+     * 记录一次首次请求
+     */
+    public synchronized void deposit() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    /**
+     * 申请一次重试
+     * @return 预算是否足够
+     */
+    public synchronized boolean tryWithdraw() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    public synchronized double getTokens() {
+        return tokens;
+    }
+}
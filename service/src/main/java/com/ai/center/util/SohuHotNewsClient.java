@@ -1,21 +1,41 @@
 package com.ai.center.util;
 
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.http.HttpRequest;
-import cn.hutool.http.HttpResponse;
 import com.ai.center.model.SohuHotNewsResponse;
-import com.alibaba.fastjson2.JSON;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 搜狐热闻API客户端工具类
- * 用于调用搜狐热闻接口获取最新新闻资讯
+ * 用于调用搜狐热闻接口获取最新新闻资讯；
+ * 同一关键词统一按 max(请求条数, default-count) 拉取，较小条数的请求从同一份结果截取（超集复用），
+ * 并发的相同拉取合并为一次上游请求；
+ * 响应按规范化关键词缓存在内存中：新鲜期内直接返回，过期后一段时间内先返回旧数据再后台刷新（stale-while-revalidate），
+ * 同步拉取失败时在允许范围内返回旧数据（stale-if-error），条目数超出上限时淘汰最久未访问的
  */
 @Slf4j
 @Component
@@ -25,16 +45,91 @@ public class SohuHotNewsClient {
     @Value("${sohu.base-url:https://uis.mp.sohu.com}")
     private String baseUrl;
 
+    // 默认条数，同时是每个关键词的最小拉取条数
     @Value("${sohu.default-count:10}")
     private int defaultCount;
+
+    // 缓存新鲜期（秒），为 0 时不缓存
+    @Value("${sohu.cache.ttl:60}")
+    private long cacheTtl;
+
+    // 过期后仍先返回旧数据、后台刷新的时长（秒）
+    @Value("${sohu.cache.stale-while-revalidate:300}")
+    private long staleWhileRevalidate;
+
+    // 上游失败时可返回的旧数据最长缓存时间（秒，从拉取时算起）
+    @Value("${sohu.cache.stale-if-error:3600}")
+    private long staleIfError;
+
+    // 缓存条目上限
+    @Value("${sohu.cache.max-entries:512}")
+    private int cacheMaxEntries;
     // 请求路径
     private static final String API_PATH = "/blog/outer/temp/feeds/ark";
     
     // 默认User-Agent
     private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
     
-    // 超时时间（毫秒）
-    private static final int DEFAULT_TIMEOUT = 10000;
+    // 接口单次最多返回的条数
+    public static final int MAX_COUNT = 100;
+
+    // 上游名称，对应 upstream.sohu.* 连接池配置
+    private static final String UPSTREAM = "sohu";
+
+    @Autowired
+    private UpstreamHttpClient upstreamHttpClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 规范化关键词（无关键词为空串）-> 缓存条目，访问顺序的 LRU，访问时加锁
+    private final LinkedHashMap<String, CacheEntry> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 进行中的上游拉取（合并并发的相同拉取）
+    private final Map<FetchKey, CompletableFuture<SohuHotNewsResponse>> inFlight = new ConcurrentHashMap<>();
+
+    // 后台刷新
+    private final ExecutorService refreshExecutor = TraceContext.wrap(Executors.newVirtualThreadPerTaskExecutor());
+
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheStaleHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong staleOnError = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private long ttlMillis;
+    private long staleMillis;
+    private long staleIfErrorMillis;
+
+    /**
+     * 上游拉取
+     * @param keyword 规范化后的关键词，无关键词时为空串
+     * @param count 拉取条数
+     */
+    private record FetchKey(String keyword, int count) {
+    }
+
+    private static final class CacheEntry {
+        private final SohuHotNewsResponse response;
+        // 拉取时请求的条数
+        private final int fetchedCount;
+        private final long fetchedAt;
+        // 后台刷新进行中，同一条目只刷新一次
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private CacheEntry(SohuHotNewsResponse response, int fetchedCount, long fetchedAt) {
+            this.response = response;
+            this.fetchedCount = fetchedCount;
+            this.fetchedAt = fetchedAt;
+        }
+
+        /**
+         * 能否满足指定条数：拉取条数不少于请求条数，或上游返回的已是全部结果
+         */
+        private boolean covers(int count) {
+            return fetchedCount >= count || listOf(response).size() < fetchedCount;
+        }
+    }
     
     /**
      * 配置验证
@@ -42,7 +137,7 @@ public class SohuHotNewsClient {
     @PostConstruct
     public void validateConfig() {
         // 验证默认条数配置
-        if (defaultCount <= 0 || defaultCount > 100) {
+        if (defaultCount <= 0 || defaultCount > MAX_COUNT) {
             throw new IllegalArgumentException("默认新闻条数必须在1-100之间");
         }
 
@@ -52,55 +147,252 @@ public class SohuHotNewsClient {
         if (!baseUrl.startsWith("http://") && !baseUrl.startsWith("https://")) {
             throw new IllegalArgumentException("Sohu base-url必须以http://或https://开头");
         }
-        log.info("搜狐热闻客户端初始化完成，服务地址: {}", baseUrl);
+        if (cacheTtl < 0 || staleWhileRevalidate < 0 || staleIfError < 0) {
+            throw new IllegalArgumentException("新闻缓存时间不能为负数");
+        }
+        if (cacheMaxEntries <= 0) {
+            throw new IllegalArgumentException("新闻缓存条目数必须大于0");
+        }
+        ttlMillis = TimeUnit.SECONDS.toMillis(cacheTtl);
+        staleMillis = ttlMillis + TimeUnit.SECONDS.toMillis(staleWhileRevalidate);
+        staleIfErrorMillis = Math.max(staleMillis, TimeUnit.SECONDS.toMillis(staleIfError));
+        bindMetrics();
+        // 提前完成 TLS 握手，首个请求直接复用连接
+        if (baseUrl.startsWith("https://")) {
+            upstreamHttpClient.upstream(UPSTREAM).warmup(baseUrl);
+        }
+        log.info("搜狐热闻客户端初始化完成，服务地址: {}，缓存新鲜期: {}s，后台刷新窗口: {}s，失败兜底: {}s",
+                baseUrl, cacheTtl, staleWhileRevalidate, staleIfError);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    private void bindMetrics() {
+        FunctionCounter.builder("sohu.cache.requests", cacheHits, AtomicLong::get)
+                .tags("result", "hit").description("热闻缓存查询次数").register(meterRegistry);
+        FunctionCounter.builder("sohu.cache.requests", cacheStaleHits, AtomicLong::get)
+                .tags("result", "stale").description("热闻缓存查询次数").register(meterRegistry);
+        FunctionCounter.builder("sohu.cache.requests", cacheMisses, AtomicLong::get)
+                .tags("result", "miss").description("热闻缓存查询次数").register(meterRegistry);
+        FunctionCounter.builder("sohu.cache.stale_on_error", staleOnError, AtomicLong::get)
+                .description("上游失败时返回旧数据的次数").register(meterRegistry);
+        FunctionCounter.builder("sohu.requests.coalesced", coalesced, AtomicLong::get)
+                .description("合并到进行中拉取的请求数").register(meterRegistry);
+        Gauge.builder("sohu.cache.entries", cache, c -> {
+            synchronized (c) {
+                return c.size();
+            }
+        }).register(meterRegistry);
     }
 
     /**
-     * 获取搜狐热闻
+     * 获取搜狐热闻（优先读缓存）
      * @param count 获取新闻的条数（必填）
      * @param keyword 搜索关键词（可选，为空时获取所有热闻）
-     * @return SohuHotNewsResponse 响应结果
+     * @return SohuHotNewsResponse 响应结果（缓存共享的对象，调用方不要修改）
      */
     public SohuHotNewsResponse getHotNews(int count, String keyword) {
+        // 参数验证
+        if (count <= 0 || count > MAX_COUNT) {
+            throw new IllegalArgumentException("新闻条数必须在1-100之间");
+        }
+        if (StrUtil.isNotBlank(keyword) && keyword.length() > 100) {
+            throw new IllegalArgumentException("搜索关键词长度不能超过100字符");
+        }
+        String key = normalizeKeyword(keyword);
+        // 按较大的条数拉取，较小条数的请求从同一份结果截取
+        int fetchCount = Math.max(count, defaultCount);
+        if (ttlMillis == 0) {
+            return slice(load(key, fetchCount), count);
+        }
+
+        CacheEntry entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+        long age = entry == null ? Long.MAX_VALUE : System.currentTimeMillis() - entry.fetchedAt;
+        boolean covered = entry != null && entry.covers(count);
+        if (covered && age <= ttlMillis) {
+            cacheHits.incrementAndGet();
+            return slice(entry.response, count);
+        }
+        if (covered && age <= staleMillis) {
+            cacheStaleHits.incrementAndGet();
+            refreshInBackground(key, entry);
+            return slice(entry.response, count);
+        }
+
+        cacheMisses.incrementAndGet();
         try {
-            // 参数验证
-            if (count <= 0 || count > 100) {
-                throw new IllegalArgumentException("新闻条数必须在1-100之间");
+            return slice(load(key, entry == null ? fetchCount : Math.max(fetchCount, entry.fetchedCount)), count);
+        } catch (RuntimeException e) {
+            // 旧数据条数不足时也返回已有部分
+            if (age <= staleIfErrorMillis) {
+                staleOnError.incrementAndGet();
+                log.warn("获取搜狐热闻失败，返回 {} 秒前的缓存，关键词: {}，条数: {}，{}",
+                        TimeUnit.MILLISECONDS.toSeconds(age), key, count, e.getMessage());
+                return slice(entry.response, count);
             }
-            
+            throw e;
+        }
+    }
+
+    /**
+     * 跳过缓存拉取关键词下最新的热闻（接口上限条数），结果同时写入缓存，供后台采集使用
+     * @param keyword 规范化后的关键词，空串表示默认热闻
+     * @return 新闻列表（只读，顺序同接口返回）
+     */
+    public List<SohuHotNewsResponse.NewsItem> fetchLatest(String keyword) {
+        return listOf(load(keyword, MAX_COUNT));
+    }
+
+    /**
+     * 拉取并写入缓存，并发的相同拉取只请求一次上游
+     * @param keyword 规范化后的关键词
+     * @param count 拉取条数
+     */
+    private SohuHotNewsResponse load(String keyword, int count) {
+        FetchKey fetchKey = new FetchKey(keyword, count);
+        CompletableFuture<SohuHotNewsResponse> future = new CompletableFuture<>();
+        CompletableFuture<SohuHotNewsResponse> existing = inFlight.putIfAbsent(fetchKey, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : new RuntimeException(e.getCause());
+            }
+        }
+
+        try {
+            SohuHotNewsResponse response = fetch(count, keyword);
+            // 缓存的响应被多个请求共享，列表改为只读
+            SohuHotNewsResponse.DataObject.CozeArk001 feed = response.getData().getCoze_ark_001();
+            feed.setList(Collections.unmodifiableList(feed.getList()));
+            if (ttlMillis > 0) {
+                store(keyword, new CacheEntry(response, count, System.currentTimeMillis()));
+            }
+            future.complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(fetchKey, future);
+        }
+    }
+
+    /**
+     * 写入缓存：已有条目覆盖更多条数且仍新鲜时保留（并发的较小拉取晚完成）
+     */
+    private void store(String keyword, CacheEntry entry) {
+        synchronized (cache) {
+            CacheEntry existing = cache.get(keyword);
+            if (existing != null && existing.fetchedCount > entry.fetchedCount
+                    && entry.fetchedAt - existing.fetchedAt <= ttlMillis) {
+                return;
+            }
+            cache.put(keyword, entry);
+            if (cache.size() > cacheMaxEntries) {
+                cache.pollFirstEntry();
+            }
+        }
+    }
+
+    /**
+     * 后台刷新过期条目（按原拉取条数），刷新失败时继续使用旧数据
+     */
+    private void refreshInBackground(String keyword, CacheEntry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            try {
+                load(keyword, entry.fetchedCount);
+            } catch (Exception e) {
+                log.warn("后台刷新搜狐热闻失败，继续使用旧数据，关键词: {}，条数: {}，{}", keyword, entry.fetchedCount, e.getMessage());
+            } finally {
+                entry.refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * 截取前 count 条，条数不超过时返回原响应
+     */
+    private static SohuHotNewsResponse slice(SohuHotNewsResponse response, int count) {
+        List<SohuHotNewsResponse.NewsItem> list = listOf(response);
+        if (list.size() <= count) {
+            return response;
+        }
+        SohuHotNewsResponse.DataObject.CozeArk001 feed = new SohuHotNewsResponse.DataObject.CozeArk001();
+        feed.setList(list.subList(0, count));
+        SohuHotNewsResponse.DataObject data = new SohuHotNewsResponse.DataObject();
+        data.setCoze_ark_001(feed);
+
+        SohuHotNewsResponse result = new SohuHotNewsResponse();
+        result.setCode(response.getCode());
+        result.setMessage(response.getMessage());
+        result.setSuccess(response.isSuccess());
+        result.setTotal(response.getTotal());
+        result.setTraceId(response.getTraceId());
+        result.setData(data);
+        return result;
+    }
+
+    private static List<SohuHotNewsResponse.NewsItem> listOf(SohuHotNewsResponse response) {
+        return response.getData().getCoze_ark_001().getList();
+    }
+
+    /**
+     * 关键词规范化：去掉首尾空白、合并连续空白并转小写，空白关键词视为无关键词（空串）
+     */
+    public static String normalizeKeyword(String keyword) {
+        if (StrUtil.isBlank(keyword)) {
+            return "";
+        }
+        return keyword.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * 请求搜狐热闻API
+     * @param count 条数
+     * @param keyword 规范化后的关键词，空串表示无关键词
+     */
+    private SohuHotNewsResponse fetch(int count, String keyword) {
+        try {
             // 构建请求URL
             StringBuilder urlBuilder = new StringBuilder(baseUrl).append(API_PATH)
                     .append("?count=").append(count);
             
-            if (StrUtil.isNotBlank(keyword)) {
-                if (keyword.length() > 100) {
-                    throw new IllegalArgumentException("搜索关键词长度不能超过100字符");
-                }
-                urlBuilder.append("&q=").append(keyword.trim());
+            if (!keyword.isEmpty()) {
+                urlBuilder.append("&q=").append(URLEncoder.encode(keyword, StandardCharsets.UTF_8));
             }
             
             String url = urlBuilder.toString();
             log.debug("请求搜狐热闻API: {}", url);
             
-            // 发送HTTP请求
-            HttpResponse response = HttpRequest.get(url)
+            // 发送HTTP请求（响应直接从流中解析）
+            UpstreamHttpClient.Upstream upstream = upstreamHttpClient.upstream(UPSTREAM);
+            HttpRequest request = upstream.request(url)
                     .header("User-Agent", USER_AGENT)
-                    .timeout(DEFAULT_TIMEOUT)
-                    .execute();
+                    .GET()
+                    .build();
+            UpstreamHttpClient.JsonResponse<SohuHotNewsResponse> response = upstream.exchange(request, SohuHotNewsResponse.class);
             
             if (response.getStatus() != 200) {
-                log.error("搜狐热闻API请求失败，状态码: {}, 响应: {}", response.getStatus(), response.body());
+                log.error("搜狐热闻API请求失败，状态码: {}, 响应: {}", response.getStatus(), response.getErrorBody());
                 throw new RuntimeException("API请求失败，状态码: " + response.getStatus());
             }
             
-            // 解析响应
-            String responseBody = response.body();
-            if (StrUtil.isBlank(responseBody)) {
+            SohuHotNewsResponse sohuResponse = response.getBody();
+            if (sohuResponse == null) {
                 throw new RuntimeException("响应内容为空");
             }
             
-            SohuHotNewsResponse sohuResponse = JSON.parseObject(responseBody, SohuHotNewsResponse.class);
-            
             // 验证响应
             if (!sohuResponse.isSuccess()) {
                 log.warn("搜狐热闻API返回失败状态: {}, 消息: {}", sohuResponse.getCode(), sohuResponse.getMessage());
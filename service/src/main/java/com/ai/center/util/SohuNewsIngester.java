@@ -0,0 +1,124 @@
+package com.ai.center.util;
+
+import cn.hutool.core.util.StrUtil;
+import com.ai.center.model.SohuHotNewsResponse;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热闻后台采集
+ * 按固定间隔拉取默认热闻和配置的关键词（每个关键词取接口上限条数），新出现的新闻写入本地热闻库，
+ * 新闻接口只读热闻库，请求路径上不访问搜狐（热闻库还没有采集结果时除外）；单个关键词拉取失败不影响其他关键词，下一轮重试
+ */
+@Slf4j
+@Component
+public class SohuNewsIngester {
+
+    // 是否启用后台采集；关闭时新闻接口直接请求搜狐（经缓存）
+    @Value("${sohu.ingest.enabled:true}")
+    private boolean enabled;
+
+    // 采集间隔（秒）
+    @Value("${sohu.ingest.interval:120}")
+    private long interval;
+
+    // 采集的关键词（默认热闻总会采集）
+    @Value("${sohu.ingest.keywords:}")
+    private List<String> configuredKeywords;
+
+    @Autowired
+    private SohuHotNewsClient sohuHotNewsClient;
+
+    @Autowired
+    private SohuNewsStore newsStore;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("sohu-news-ingest").daemon().factory());
+
+    private final AtomicLong addedCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    // 规范化后的关键词，空串为默认热闻
+    private List<String> keywords;
+
+    @PostConstruct
+    public void init() {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("热闻采集间隔必须大于0");
+        }
+        Set<String> normalized = new LinkedHashSet<>();
+        normalized.add("");
+        for (String keyword : configuredKeywords) {
+            if (StrUtil.isBlank(keyword)) {
+                continue;
+            }
+            if (keyword.length() > 100) {
+                throw new IllegalArgumentException("采集关键词长度不能超过100字符: " + keyword);
+            }
+            normalized.add(SohuHotNewsClient.normalizeKeyword(keyword));
+        }
+        keywords = new ArrayList<>(normalized);
+
+        FunctionCounter.builder("sohu.ingest.added", addedCount, AtomicLong::get)
+                .description("采集入库的新闻数").register(meterRegistry);
+        FunctionCounter.builder("sohu.ingest.failures", failureCount, AtomicLong::get)
+                .description("关键词采集失败次数").register(meterRegistry);
+        Gauge.builder("sohu.store.items", newsStore, SohuNewsStore::size)
+                .description("热闻库新闻数").register(meterRegistry);
+
+        if (!enabled) {
+            log.info("热闻后台采集未启用，新闻接口直接请求搜狐");
+            return;
+        }
+        scheduler.scheduleWithFixedDelay(this::poll, 0, interval, TimeUnit.SECONDS);
+        log.info("热闻后台采集已启动，间隔: {}s，关键词: {}", interval, keywords.subList(1, keywords.size()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 采集一轮
+     */
+    private void poll() {
+        int added = 0;
+        int failed = 0;
+        for (String keyword : keywords) {
+            try {
+                List<SohuHotNewsResponse.NewsItem> feed = sohuHotNewsClient.fetchLatest(keyword);
+                added += newsStore.ingest(keyword, feed);
+            } catch (Exception e) {
+                failed++;
+                failureCount.incrementAndGet();
+                log.warn("热闻采集失败，关键词: {}，{}", keyword.isEmpty() ? "(默认)" : keyword, e.getMessage());
+            }
+        }
+        addedCount.addAndGet(added);
+        log.info("热闻采集完成，新增 {} 条，失败关键词 {} 个，库中共 {} 条", added, failed, newsStore.size());
+    }
+}
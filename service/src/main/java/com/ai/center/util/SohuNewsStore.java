@@ -0,0 +1,412 @@
+package com.ai.center.util;
+
+import com.ai.center.model.SohuHotNewsResponse;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地热闻库
+ * 后台采集到的新闻按 URL 哈希去重后以 JSON Lines 追加写入本地文件（add 为新闻，tag 为已有新闻新增的关键词），
+ * 内存中按首次采集时间维护全部新闻和各关键词的列表，每次写入后发布一份从新到旧的只读快照，读取不加锁、不访问磁盘；
+ * 有采集记录的关键词直接取列表，其余关键词在标题和摘要中逐条匹配（O(n)），结果缓存在当前快照上，有新写入时失效；
+ * 启动时回放文件恢复，新闻数超过上限时淘汰最早的，追加行数远超新闻数时压缩为每条新闻一行
+ */
+@Slf4j
+@Component
+public class SohuNewsStore {
+
+    @Value("${sohu.store.dir:data/sohu-news}")
+    private String storeDir;
+
+    // 保留的新闻条数上限
+    @Value("${sohu.store.max-items:20000}")
+    private int maxItems;
+
+    private static final String STORE_FILE = "news.jsonl";
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    // 追加行数超过新闻数的该倍数（且不少于 MIN_COMPACT_LINES）时压缩
+    private static final int COMPACT_RATIO = 2;
+    private static final int MIN_COMPACT_LINES = 10000;
+
+    // 每份快照缓存的全文匹配结果数上限
+    private static final int SEARCH_CACHE_SIZE = 256;
+
+    private static final String OP_ADD = "add";
+    private static final String OP_TAG = "tag";
+
+    /**
+     * 单条新闻
+     * @param id URL 哈希
+     * @param news 新闻内容
+     * @param keywords 采集到该新闻的关键词（规范化后），只在写入锁内修改
+     * @param seenAt 首次采集时间
+     * @param searchText 标题和摘要的小写文本，用于关键词匹配
+     */
+    private record Item(String id, SohuHotNewsResponse.NewsItem news, Set<String> keywords, long seenAt, String searchText) {
+    }
+
+    /**
+     * 只读快照，列表均从新到旧
+     * @param searches 全文匹配结果缓存，随快照一起替换，条数不超过 SEARCH_CACHE_SIZE
+     */
+    private record Snapshot(List<Item> newest, Map<String, List<Item>> byKeyword, Map<String, Match> searches) {
+
+        Snapshot(List<Item> newest, Map<String, List<Item>> byKeyword) {
+            this(newest, byKeyword, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * 全文匹配结果
+     * @param items 最新的至多 SohuHotNewsClient.MAX_COUNT 条
+     * @param total 匹配总数
+     */
+    private record Match(List<Item> items, int total) {
+    }
+
+    /**
+     * 查询结果
+     * @param items 新闻列表（从新到旧）
+     * @param total 匹配的新闻总数
+     */
+    public record Page(List<SohuHotNewsResponse.NewsItem> items, int total) {
+    }
+
+    // 以下字段只在写入锁内访问：按首次采集时间从旧到新
+    private final ArrayDeque<Item> items = new ArrayDeque<>();
+    private final Map<String, Item> byId = new HashMap<>();
+    private long appendedLines;
+
+    private volatile Snapshot snapshot = new Snapshot(List.of(), Map.of());
+
+    // 是否有过成功的采集（含回放出的历史采集结果），此前库为空不代表没有新闻
+    private volatile boolean ready;
+
+    private Path storeFile;
+    // 为 null 时在下次写入前重新打开
+    private BufferedWriter writer;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (maxItems <= 0) {
+            throw new IllegalArgumentException("热闻库条数上限必须大于0");
+        }
+        Path dir = Paths.get(storeDir).toAbsolutePath().normalize();
+        Files.createDirectories(dir);
+        storeFile = dir.resolve(STORE_FILE);
+
+        synchronized (this) {
+            int replayed = replay();
+            trim();
+            compact();
+            writer = openWriter();
+            publish();
+            ready = !items.isEmpty();
+            log.info("热闻库初始化完成，文件: {}，回放 {} 行，新闻 {} 条", storeFile, replayed, items.size());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        closeWriter();
+    }
+
+    /**
+     * 写入一次采集结果
+     * 按采集列表倒序写入，列表中靠前的新闻排在更新的位置；已有新闻只补充关键词。
+     * 先写文件再修改内存，写入失败时内存不变、异常抛给调用方，下次写入前重新打开文件
+     * @param keyword 规范化后的关键词，默认热闻为空串
+     * @param feed 采集到的新闻（顺序同接口返回）
+     * @return 新增的新闻条数
+     */
+    public synchronized int ingest(String keyword, List<SohuHotNewsResponse.NewsItem> feed) throws IOException {
+        long now = System.currentTimeMillis();
+        List<String> lines = new ArrayList<>();
+        Map<String, Item> added = new LinkedHashMap<>();
+        List<Item> tagged = new ArrayList<>();
+        for (int i = feed.size() - 1; i >= 0; i--) {
+            SohuHotNewsResponse.NewsItem news = feed.get(i);
+            String url = normalizeUrl(news.getUrl());
+            if (url == null) {
+                continue;
+            }
+            String id = urlHash(url);
+            Item existing = byId.get(id);
+            if (existing == null && !added.containsKey(id)) {
+                Item item = newItem(id, news, keyword.isEmpty() ? List.of() : List.of(keyword), now);
+                added.put(id, item);
+                lines.add(addLine(item));
+            } else if (existing != null && !keyword.isEmpty() && !existing.keywords().contains(keyword)) {
+                tagged.add(existing);
+                lines.add(new JSONObject().fluentPut("op", OP_TAG).fluentPut("id", id).fluentPut("k", keyword).toJSONString());
+            }
+        }
+        if (lines.isEmpty()) {
+            ready = true;
+            return 0;
+        }
+
+        try {
+            if (writer == null) {
+                writer = openWriter();
+            }
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            // 写入器可能已损坏，下次写入前重新打开
+            closeWriter();
+            throw e;
+        }
+        appendedLines += lines.size();
+
+        for (Item item : added.values()) {
+            items.addLast(item);
+            byId.put(item.id(), item);
+        }
+        tagged.forEach(item -> item.keywords().add(keyword));
+        if (trim() > 0 || appendedLines > Math.max(MIN_COMPACT_LINES, (long) items.size() * COMPACT_RATIO)) {
+            closeWriter();
+            try {
+                compact();
+            } catch (IOException e) {
+                // 文件中仍是完整的追加记录，下次写入继续追加，下次触发时再压缩
+                log.error("压缩热闻库失败，继续追加写入", e);
+            }
+        }
+        publish();
+        ready = true;
+        return added.size();
+    }
+
+    /**
+     * 查询新闻
+     * 无关键词时返回全部新闻中最新的；关键词有采集记录时返回该关键词采集到的新闻；
+     * 否则在标题和摘要中匹配关键词：需逐条扫描全部新闻，结果按关键词缓存到下次写入，缓存满后不再缓存新的关键词
+     * @param count 条数
+     * @param keyword 规范化后的关键词，空串表示不限
+     */
+    public Page query(int count, String keyword) {
+        Snapshot current = snapshot;
+        List<Item> source = keyword.isEmpty() ? current.newest() : current.byKeyword().get(keyword);
+        if (source != null) {
+            return new Page(newsOf(source.subList(0, Math.min(count, source.size()))), source.size());
+        }
+        Match match = current.searches().get(keyword);
+        if (match == null || count > match.items().size() && match.total() > match.items().size()) {
+            match = search(current.newest(), keyword, Math.max(count, SohuHotNewsClient.MAX_COUNT));
+            if (current.searches().size() < SEARCH_CACHE_SIZE) {
+                current.searches().put(keyword, match);
+            }
+        }
+        return new Page(newsOf(match.items().subList(0, Math.min(count, match.items().size()))), match.total());
+    }
+
+    private static Match search(List<Item> newest, String keyword, int limit) {
+        List<Item> matched = new ArrayList<>(Math.min(limit, newest.size()));
+        int total = 0;
+        for (Item item : newest) {
+            if (item.searchText().contains(keyword)) {
+                if (total < limit) {
+                    matched.add(item);
+                }
+                total++;
+            }
+        }
+        return new Match(Collections.unmodifiableList(matched), total);
+    }
+
+    /**
+     * 是否已有采集结果可供查询：启动时回放出新闻，或本次运行中有一次采集成功写入
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 新闻总数
+     */
+    public int size() {
+        return snapshot.newest().size();
+    }
+
+    /**
+     * 有采集记录的关键词
+     */
+    public Set<String> keywords() {
+        return snapshot.byKeyword().keySet();
+    }
+
+    private static List<SohuHotNewsResponse.NewsItem> newsOf(List<Item> items) {
+        List<SohuHotNewsResponse.NewsItem> result = new ArrayList<>(items.size());
+        items.forEach(item -> result.add(item.news()));
+        return result;
+    }
+
+    /**
+     * 发布从新到旧的快照
+     */
+    private void publish() {
+        List<Item> newest = new ArrayList<>(items.size());
+        items.descendingIterator().forEachRemaining(newest::add);
+        Map<String, List<Item>> byKeyword = new HashMap<>();
+        for (Item item : newest) {
+            for (String keyword : item.keywords()) {
+                byKeyword.computeIfAbsent(keyword, key -> new ArrayList<>()).add(item);
+            }
+        }
+        byKeyword.replaceAll((keyword, list) -> Collections.unmodifiableList(list));
+        snapshot = new Snapshot(Collections.unmodifiableList(newest), Collections.unmodifiableMap(byKeyword));
+    }
+
+    /**
+     * 淘汰超出上限的最早新闻
+     * @return 淘汰条数
+     */
+    private int trim() {
+        int removed = 0;
+        while (items.size() > maxItems) {
+            byId.remove(items.removeFirst().id());
+            removed++;
+        }
+        return removed;
+    }
+
+    /**
+     * 回放存储文件，末尾不完整的行（写入中途进程退出）直接跳过
+     * @return 回放的行数
+     */
+    private int replay() throws IOException {
+        if (!Files.exists(storeFile)) {
+            return 0;
+        }
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(storeFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                lines++;
+                try {
+                    JSONObject entry = JSON.parseObject(line);
+                    String id = entry.getString("id");
+                    if (OP_ADD.equals(entry.getString("op")) && !byId.containsKey(id)) {
+                        SohuHotNewsResponse.NewsItem news = new SohuHotNewsResponse.NewsItem();
+                        news.setTitle(entry.getString("title"));
+                        news.setBrief(entry.getString("brief"));
+                        news.setUrl(entry.getString("url"));
+                        JSONArray keywords = entry.getJSONArray("k");
+                        Item item = newItem(id, news, keywords == null ? List.of() : keywords.toJavaList(String.class),
+                                entry.getLongValue("t"));
+                        items.addLast(item);
+                        byId.put(id, item);
+                    } else if (OP_TAG.equals(entry.getString("op")) && byId.containsKey(id)) {
+                        byId.get(id).keywords().add(entry.getString("k"));
+                    }
+                } catch (Exception e) {
+                    log.warn("跳过无法解析的热闻记录，第 {} 行: {}", lines, e.getMessage());
+                }
+            }
+        }
+        return lines;
+    }
+
+    private BufferedWriter openWriter() throws IOException {
+        return Files.newBufferedWriter(storeFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("关闭热闻库文件失败: {}", e.getMessage());
+        } finally {
+            writer = null;
+        }
+    }
+
+    /**
+     * 压缩：每条新闻写一行（含全部关键词），写完同步到磁盘后原子替换存储文件
+     */
+    private void compact() throws IOException {
+        Path tmp = storeFile.resolveSibling(STORE_FILE + COMPACT_SUFFIX);
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (Item item : items) {
+                out.write(addLine(item));
+                out.newLine();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, storeFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        appendedLines = 0;
+        log.debug("热闻库压缩完成，新闻数: {}", items.size());
+    }
+
+    private static Item newItem(String id, SohuHotNewsResponse.NewsItem news, Collection<String> keywords, long seenAt) {
+        String searchText = (Objects.toString(news.getTitle(), "") + " " + Objects.toString(news.getBrief(), ""))
+                .toLowerCase(Locale.ROOT);
+        return new Item(id, news, new LinkedHashSet<>(keywords), seenAt, searchText);
+    }
+
+    private static String addLine(Item item) {
+        return new JSONObject()
+                .fluentPut("op", OP_ADD)
+                .fluentPut("id", item.id())
+                .fluentPut("t", item.seenAt())
+                .fluentPut("title", item.news().getTitle())
+                .fluentPut("brief", item.news().getBrief())
+                .fluentPut("url", item.news().getUrl())
+                .fluentPut("k", item.keywords())
+                .toJSONString();
+    }
+
+    /**
+     * URL 规范化：去掉首尾空白和锚点，空 URL 返回 null（无法去重，不入库）
+     */
+    private static String normalizeUrl(String url) {
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+        String trimmed = url.trim();
+        int fragment = trimmed.indexOf('#');
+        return fragment >= 0 ? trimmed.substring(0, fragment) : trimmed;
+    }
+
+    /**
+     * URL 哈希：SHA-256 前 8 字节的十六进制
+     */
+    private static String urlHash(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(url.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.ai.center.util;
+
+/**
+ * 本地调度队列已满，任务被拒绝
+ */
+public class TaskRejectedException extends RuntimeException {
+
+    public TaskRejectedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,34 @@
+package com.ai.center.util;
+
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.context.ContextSnapshotFactory;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 追踪上下文传递
+ * 当前观测（链路追踪 Span）保存在线程变量中，交给其他线程的上游调用需先在请求线程上捕获、执行时恢复，
+ * 否则上游请求在新线程上作为新的根 Span 开始，traceparent 与入站请求无关
+ */
+public final class TraceContext {
+
+    private static final ContextSnapshotFactory SNAPSHOT_FACTORY = ContextSnapshotFactory.builder().build();
+
+    private TraceContext() {
+    }
+
+    /**
+     * 包装线程池：提交任务时捕获提交线程的上下文，执行时恢复
+     */
+    public static ExecutorService wrap(ExecutorService executor) {
+        return ContextExecutorService.wrap(executor, SNAPSHOT_FACTORY);
+    }
+
+    /**
+     * 捕获当前线程的上下文，用于稍后在其他线程上恢复（{@link ContextSnapshot#setThreadLocals()}）
+     */
+    public static ContextSnapshot capture() {
+        return SNAPSHOT_FACTORY.captureAll();
+    }
+}
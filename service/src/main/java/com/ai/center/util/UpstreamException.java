@@ -0,0 +1,39 @@
+package com.ai.center.util;
+
+/**
+ * 上游调用失败（网络异常、超时、连接池已满、上游返回错误状态）
+ */
+public class UpstreamException extends RuntimeException {
+
+    // 失败类型，作为 upstream.requests 指标的 outcome 标签
+    public static final String ERROR = "ERROR";
+    public static final String TIMEOUT = "TIMEOUT";
+    public static final String CANCELLED = "CANCELLED";
+    public static final String CIRCUIT_OPEN = "CIRCUIT_OPEN";
+    public static final String POOL_EXHAUSTED = "POOL_EXHAUSTED";
+    public static final String SERVER_ERROR = "SERVER_ERROR";
+
+    private final String outcome;
+
+    public UpstreamException(String message) {
+        this(message, ERROR);
+    }
+
+    public UpstreamException(String message, String outcome) {
+        super(message);
+        this.outcome = outcome;
+    }
+
+    public UpstreamException(String message, Throwable cause) {
+        this(message, cause, ERROR);
+    }
+
+    public UpstreamException(String message, Throwable cause, String outcome) {
+        super(message, cause);
+        this.outcome = outcome;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+}
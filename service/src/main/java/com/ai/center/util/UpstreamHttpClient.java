@@ -0,0 +1,830 @@
+package com.ai.center.util;
+
+import cn.hutool.core.util.StrUtil;
+import com.ai.center.model.UpstreamStats;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.transport.RequestReplySenderContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * 上游 HTTP 客户端
+ * 每个上游一个 JDK HttpClient（独立的长连接池，HTTPS 上游可启用 HTTP/2 多路复用），
+ * 并发请求数受连接数上限约束（流式响应体读完关闭后才释放），连接超时与读取超时分开配置，响应直接从流中解析，不经过中间字符串；
+ * 读取超时（或请求自带的超时）约束从发出到读完响应体的整个过程，流式响应体到期未关闭时由看门狗关闭并释放连接名额
+ *
+ * 容错：每个接口（主机 + 一级路径）一个熔断器，打开期间直接失败；幂等请求（GET/HEAD）失败时按抖动退避重试，
+ * 慢请求可在对冲延迟后并发发出第二个请求取先返回者；重试和对冲共用全局重试预算，上游整体故障时不会放大流量
+ *
+ * 观测：每次请求记录一个 upstream.requests 观测（耗时直方图，按上游、接口、方法、状态码、结果分类，流式响应体在读完关闭时结束），
+ * 同时作为链路追踪的客户端 Span，并把追踪上下文写入请求头传给上游；连接池占用、重试、对冲、熔断另有指标
+ *
+ * 配置项（均可省略）：
+ * upstream.{name}.max-connections / connect-timeout（毫秒）/ read-timeout（毫秒）/ http2 / follow-redirects
+ * upstream.{name}.max-retries / hedge-delay（毫秒，0 关闭对冲）
+ * upstream.{name}.circuit.window / circuit.failure-rate / circuit.open-duration（毫秒）
+ */
+@Slf4j
+@Component
+public class UpstreamHttpClient {
+
+    private static final int DEFAULT_MAX_CONNECTIONS = 32;
+    private static final long DEFAULT_CONNECT_TIMEOUT = 10000;
+    private static final long DEFAULT_READ_TIMEOUT = 30000;
+
+    private static final int DEFAULT_MAX_RETRIES = 2;
+    private static final int DEFAULT_CIRCUIT_WINDOW = 20;
+    private static final double DEFAULT_CIRCUIT_FAILURE_RATE = 0.5;
+    private static final long DEFAULT_CIRCUIT_OPEN_DURATION = 10000;
+
+    // 错误响应体最多读取的字节数
+    private static final int ERROR_BODY_LIMIT = 1024;
+
+    // 重试初始退避（毫秒），每次翻倍并加随机抖动
+    private static final long RETRY_BACKOFF = 100;
+
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD");
+
+    private static final String OBSERVATION_NAME = "upstream.requests";
+
+    // 每个请求允许的重试比例
+    @Value("${upstream.retry-budget.ratio:0.1}")
+    private double retryRatio;
+
+    // 重试预算的保底令牌数
+    @Value("${upstream.retry-budget.min-tokens:10}")
+    private int retryMinTokens;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    private final Map<String, Upstream> upstreams = new ConcurrentHashMap<>();
+
+    // 对冲请求在虚拟线程上执行，带上发起线程的追踪上下文
+    private final ExecutorService hedgeExecutor = TraceContext.wrap(Executors.newVirtualThreadPerTaskExecutor());
+
+    // 流式响应体的读取期限，正常关闭时取消，避免已取消的检查堆积
+    private final ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1,
+            Thread.ofPlatform().name("upstream-watchdog").daemon().factory());
+
+    private RetryBudget retryBudget;
+
+    @PostConstruct
+    public void validateConfig() {
+        if (retryRatio < 0 || retryMinTokens < 0) {
+            throw new IllegalArgumentException("重试预算配置不能小于0");
+        }
+        retryBudget = new RetryBudget(retryRatio, retryMinTokens, Math.max(retryMinTokens, 100));
+        watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hedgeExecutor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * 获取上游（首次使用时按配置创建）
+     * @param name 上游名称
+     */
+    public Upstream upstream(String name) {
+        return upstream(name, null);
+    }
+
+    /**
+     * 获取上游，首次使用时按配置创建并使用指定的代理选择器（如把连接固定到已校验的地址），之后的调用忽略该参数
+     * @param name 上游名称
+     * @param proxySelector 代理选择器，为 null 时不使用代理
+     */
+    public Upstream upstream(String name, ProxySelector proxySelector) {
+        return upstreams.computeIfAbsent(name, key -> create(key, proxySelector));
+    }
+
+    /**
+     * 各上游连接池统计
+     */
+    public List<UpstreamStats> getStats() {
+        return upstreams.values().stream().map(Upstream::getStats).toList();
+    }
+
+    private Upstream create(String name, ProxySelector proxySelector) {
+        String prefix = "upstream." + name + ".";
+        int maxConnections = environment.getProperty(prefix + "max-connections", Integer.class, DEFAULT_MAX_CONNECTIONS);
+        long connectTimeout = environment.getProperty(prefix + "connect-timeout", Long.class, DEFAULT_CONNECT_TIMEOUT);
+        long readTimeout = environment.getProperty(prefix + "read-timeout", Long.class, DEFAULT_READ_TIMEOUT);
+        boolean http2 = environment.getProperty(prefix + "http2", Boolean.class, false);
+        boolean followRedirects = environment.getProperty(prefix + "follow-redirects", Boolean.class, true);
+        int maxRetries = environment.getProperty(prefix + "max-retries", Integer.class, DEFAULT_MAX_RETRIES);
+        long hedgeDelay = environment.getProperty(prefix + "hedge-delay", Long.class, 0L);
+        int circuitWindow = environment.getProperty(prefix + "circuit.window", Integer.class, DEFAULT_CIRCUIT_WINDOW);
+        double failureRate = environment.getProperty(prefix + "circuit.failure-rate", Double.class, DEFAULT_CIRCUIT_FAILURE_RATE);
+        long openDuration = environment.getProperty(prefix + "circuit.open-duration", Long.class, DEFAULT_CIRCUIT_OPEN_DURATION);
+        if (maxConnections <= 0 || connectTimeout <= 0 || readTimeout <= 0 || circuitWindow <= 0 || openDuration <= 0) {
+            throw new IllegalArgumentException("上游配置必须大于0: " + name);
+        }
+        if (maxRetries < 0 || hedgeDelay < 0) {
+            throw new IllegalArgumentException("上游重试次数和对冲延迟不能小于0: " + name);
+        }
+        if (failureRate <= 0 || failureRate > 1) {
+            throw new IllegalArgumentException("熔断失败率必须在0-1之间: " + name);
+        }
+        log.info("上游客户端初始化，名称: {}，最大连接数: {}，连接超时: {}ms，读取超时: {}ms，HTTP/2: {}，跟随重定向: {}，最大重试: {}，对冲延迟: {}ms",
+                name, maxConnections, connectTimeout, readTimeout, http2, followRedirects, maxRetries, hedgeDelay);
+        Upstream upstream = new Upstream(name, maxConnections, Duration.ofMillis(connectTimeout), Duration.ofMillis(readTimeout),
+                http2, followRedirects, proxySelector);
+        upstream.maxRetries = maxRetries;
+        upstream.hedgeDelay = hedgeDelay;
+        upstream.breakerFactory = () -> new CircuitBreaker(circuitWindow, failureRate, openDuration);
+        upstream.retryBudget = retryBudget;
+        upstream.hedgeExecutor = hedgeExecutor;
+        upstream.watchdog = watchdog;
+        upstream.observationRegistry = observationRegistry;
+        bindMetrics(upstream);
+        return upstream;
+    }
+
+    private void bindMetrics(Upstream upstream) {
+        Tags tags = Tags.of("upstream", upstream.name);
+        Gauge.builder("upstream.connections.active", upstream.active, AtomicInteger::get)
+                .tags(tags).description("正在进行的上游请求数").register(meterRegistry);
+        Gauge.builder("upstream.connections.waiting", upstream.waiting, AtomicInteger::get)
+                .tags(tags).description("等待连接的上游请求数").register(meterRegistry);
+        Gauge.builder("upstream.connections.max", upstream, u -> u.maxConnections)
+                .tags(tags).register(meterRegistry);
+        FunctionCounter.builder("upstream.retries", upstream.retries, AtomicLong::get)
+                .tags(tags).description("上游请求重试次数").register(meterRegistry);
+        FunctionCounter.builder("upstream.hedges", upstream.hedges, AtomicLong::get)
+                .tags(tags).description("上游对冲请求次数").register(meterRegistry);
+        Gauge.builder("upstream.circuits.open", upstream, Upstream::openCircuitCount)
+                .tags(tags).description("未闭合的熔断器数").register(meterRegistry);
+    }
+
+    /**
+     * 单个上游
+     */
+    public static final class Upstream {
+
+        private final String name;
+        private final int maxConnections;
+        private final Duration readTimeout;
+        private final boolean followRedirects;
+        private final HttpClient client;
+        private final Semaphore permits;
+
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong hedges = new AtomicLong();
+
+        // 接口 -> 熔断器
+        private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+        private int maxRetries;
+        private long hedgeDelay;
+        private Callable<CircuitBreaker> breakerFactory;
+        private RetryBudget retryBudget;
+        private ExecutorService hedgeExecutor;
+        private ScheduledExecutorService watchdog;
+        private ObservationRegistry observationRegistry;
+
+        private Upstream(String name, int maxConnections, Duration connectTimeout, Duration readTimeout,
+                         boolean http2, boolean followRedirects, ProxySelector proxySelector) {
+            this.name = name;
+            this.maxConnections = maxConnections;
+            this.readTimeout = readTimeout;
+            this.followRedirects = followRedirects;
+            this.permits = new Semaphore(maxConnections);
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                    .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(connectTimeout)
+                    .followRedirects(followRedirects ? HttpClient.Redirect.NORMAL : HttpClient.Redirect.NEVER);
+            if (proxySelector != null) {
+                builder.proxy(proxySelector);
+            }
+            this.client = builder.build();
+        }
+
+        /**
+         * 是否自动跟随重定向（关闭时 3xx 原样返回给调用方）
+         */
+        public boolean isFollowRedirects() {
+            return followRedirects;
+        }
+
+        /**
+         * 底层 HttpClient（WebSocket 等长连接使用，不计入并发限制）
+         */
+        public HttpClient getClient() {
+            return client;
+        }
+
+        /**
+         * 创建请求（已设置读取超时）
+         */
+        public HttpRequest.Builder request(String url) {
+            return HttpRequest.newBuilder(URI.create(url)).timeout(readTimeout);
+        }
+
+        /**
+         * 发送请求
+         * 响应体为 InputStream 时，调用方必须关闭该流，关闭后才释放连接名额并记录成功或失败；
+         * 超过请求超时仍未关闭时流被强制关闭，读取抛出 HttpTimeoutException。其他响应体（如写入文件）在超时内未接收完时取消请求
+         * @param request 请求
+         * @param handler 响应体处理
+         * @return 响应
+         * @throws UpstreamException 网络异常、超时、等待连接超时或熔断打开
+         */
+        public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
+            // 请求头在 Span 创建后由追踪处理器写入，因此在可变的副本上发送
+            HttpRequest.Builder carrier = HttpRequest.newBuilder(request, (header, value) -> true);
+            RequestReplySenderContext<HttpRequest.Builder, HttpResponse<?>> context =
+                    new RequestReplySenderContext<>(HttpRequest.Builder::setHeader);
+            context.setCarrier(carrier);
+            context.setRemoteServiceName(name);
+            Observation observation = Observation.createNotStarted(OBSERVATION_NAME, () -> context, observationRegistry)
+                    .contextualName(request.method() + " " + name)
+                    .lowCardinalityKeyValue("upstream", name)
+                    .lowCardinalityKeyValue("endpoint", path(request.uri()))
+                    .lowCardinalityKeyValue("method", request.method())
+                    .highCardinalityKeyValue("uri", request.uri().toString())
+                    .start();
+            // 观测随请求占用一起结束：流式响应体在关闭流时，其他情况在返回或抛出前
+            Lease lease = new Lease(observation, context);
+            try (Observation.Scope ignored = observation.openScope()) {
+                return sendObserved(request, carrier, handler, lease);
+            } catch (UpstreamException e) {
+                lease.complete(null, e);
+                throw e;
+            }
+        }
+
+        private <T> HttpResponse<T> sendObserved(HttpRequest request, HttpRequest.Builder carrier,
+                                                 HttpResponse.BodyHandler<T> handler, Lease lease) {
+            CircuitBreaker breaker = breaker(request.uri());
+            if (!breaker.tryAcquire()) {
+                failures.incrementAndGet();
+                throw new UpstreamException(name + " 熔断中，快速失败: " + endpoint(request.uri()), UpstreamException.CIRCUIT_OPEN);
+            }
+            try {
+                acquire();
+            } catch (UpstreamException e) {
+                // 连接池长时间占满说明上游响应变慢，同样计入熔断统计；被取消的请求不计入
+                if (Thread.currentThread().isInterrupted()) {
+                    breaker.onIgnored();
+                } else {
+                    breaker.onFailure();
+                }
+                throw e;
+            }
+            lease.acquired(breaker);
+            // HttpRequest 的超时只约束等待响应头，响应体的接收在此（非流式）或由看门狗（流式）按同一期限约束
+            long timeout = request.timeout().orElse(readTimeout).toNanos();
+            CompletableFuture<HttpResponse<T>> future;
+            try {
+                future = client.sendAsync(carrier.build(), handler);
+            } catch (RuntimeException e) {
+                // 请求在发出前被拒绝（如代理选择器拒绝该地址）
+                throw new UpstreamException(name + " 请求失败: " + e.getMessage(), e);
+            }
+            HttpResponse<T> response;
+            try {
+                response = future.get(timeout, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                throw new UpstreamException(name + " 请求超时: " + request.uri().getPath(), e, UpstreamException.TIMEOUT);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof HttpTimeoutException) {
+                    throw new UpstreamException(name + " 请求超时: " + request.uri().getPath(), cause, UpstreamException.TIMEOUT);
+                }
+                throw new UpstreamException(name + " 请求失败: " + cause.getMessage(), cause);
+            } catch (InterruptedException e) {
+                // 对冲中落败的请求会被中断取消
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new UpstreamException(name + " 请求被中断", e, UpstreamException.CANCELLED);
+            }
+            if (response.body() instanceof InputStream body) {
+                // 响应体以流返回时在收到响应头后即返回，连接在读完响应体（关闭流）后才释放，结果也在此时记录
+                LeasedInputStream leased = new LeasedInputStream(body, lease, response);
+                leased.expireAfter(watchdog, timeout - (System.nanoTime() - lease.start));
+                @SuppressWarnings("unchecked")
+                HttpResponse<T> streaming = (HttpResponse<T>) new StreamingResponse((HttpResponse<InputStream>) response, leased);
+                return streaming;
+            }
+            lease.complete(response, null);
+            return response;
+        }
+
+        /**
+         * 发送请求，2xx 响应从流中解析为指定类型，其他状态只读取少量响应体用于错误信息
+         * 幂等请求在网络异常、5xx、429 时按重试预算重试，配置了对冲延迟时慢请求会并发发出对冲请求
+         * @param request 请求
+         * @param type 响应类型
+         * @return 响应
+         * @throws UpstreamException 重试后仍然网络异常、超时或熔断打开
+         */
+        public <T> JsonResponse<T> exchange(HttpRequest request, Type type) {
+            boolean idempotent = IDEMPOTENT_METHODS.contains(request.method());
+            retryBudget.deposit();
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    JsonResponse<T> response = idempotent && hedgeDelay > 0
+                            ? hedged(() -> exchangeOnce(request, type))
+                            : exchangeOnce(request, type);
+                    if (!idempotent || !isRetryable(response.getStatus()) || !canRetry(request, attempt)) {
+                        return response;
+                    }
+                    log.warn("上游请求失败，准备重试，名称: {}，接口: {}，状态码: {}", name, endpoint(request.uri()), response.getStatus());
+                } catch (UpstreamException e) {
+                    if (!idempotent || !canRetry(request, attempt)) {
+                        throw e;
+                    }
+                    log.warn("上游请求失败，准备重试，名称: {}，{}", name, e.getMessage());
+                }
+                retries.incrementAndGet();
+                backoff(attempt);
+            }
+        }
+
+        private <T> JsonResponse<T> exchangeOnce(HttpRequest request, Type type) {
+            HttpResponse<InputStream> response = send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream body = response.body()) {
+                int status = response.statusCode();
+                if (status / 100 == 2) {
+                    T value = JSON.parseObject(body, type);
+                    return new JsonResponse<>(status, value, null);
+                }
+                String error = new String(body.readNBytes(ERROR_BODY_LIMIT), StandardCharsets.UTF_8);
+                return new JsonResponse<>(status, null, error);
+            } catch (IOException e) {
+                throw readFailure(request, e);
+            } catch (JSONException e) {
+                // 从流中解析时的读取失败被包装为 JSONException
+                if (e.getCause() instanceof IOException cause) {
+                    throw readFailure(request, cause);
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * 读取响应体失败（失败已在关闭响应体流时记录）
+         */
+        private UpstreamException readFailure(HttpRequest request, IOException e) {
+            if (e instanceof HttpTimeoutException) {
+                return new UpstreamException(name + " 读取响应超时: " + request.uri().getPath(), e, UpstreamException.TIMEOUT);
+            }
+            return new UpstreamException(name + " 读取响应失败: " + e.getMessage(), e);
+        }
+
+        /**
+         * GET 请求并解析 JSON
+         */
+        public <T> JsonResponse<T> getJson(String url, Type type) {
+            return exchange(request(url).GET().build(), type);
+        }
+
+        /**
+         * POST JSON 请求体并解析 JSON
+         */
+        public <T> JsonResponse<T> postJson(String url, byte[] body, Type type) {
+            return exchange(request(url)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build(), type);
+        }
+
+        /**
+         * 对冲：首个请求在对冲延迟内未返回时（且重试预算允许）再发出一个相同请求，取先正常返回的结果，另一个取消
+         * 5xx、429 响应与异常一样视为失败，另一个请求仍在进行时等待它；都失败时优先返回错误响应，交给调用方决定是否重试
+         */
+        private <T> JsonResponse<T> hedged(Callable<JsonResponse<T>> call) {
+            CompletionService<JsonResponse<T>> completion = new ExecutorCompletionService<>(hedgeExecutor);
+            List<Future<JsonResponse<T>>> futures = new ArrayList<>(2);
+            futures.add(completion.submit(call));
+            try {
+                Future<JsonResponse<T>> done = completion.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    if (retryBudget.tryWithdraw()) {
+                        hedges.incrementAndGet();
+                        futures.add(completion.submit(call));
+                    }
+                    done = completion.take();
+                }
+                JsonResponse<T> errorResponse = null;
+                RuntimeException failure = null;
+                for (int remaining = futures.size() - 1; ; remaining--) {
+                    try {
+                        JsonResponse<T> response = done.get();
+                        if (!isRetryable(response.getStatus())) {
+                            return response;
+                        }
+                        errorResponse = response;
+                    } catch (ExecutionException e) {
+                        failure = e.getCause() instanceof RuntimeException re ? re : new UpstreamException(e.getCause().getMessage(), e.getCause());
+                    }
+                    if (remaining == 0) {
+                        if (errorResponse != null) {
+                            return errorResponse;
+                        }
+                        throw failure;
+                    }
+                    done = completion.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UpstreamException(name + " 请求被中断", e);
+            } finally {
+                futures.forEach(future -> future.cancel(true));
+            }
+        }
+
+        /**
+         * 是否还能重试：未超过次数、熔断未打开且重试预算足够
+         */
+        private boolean canRetry(HttpRequest request, int attempt) {
+            return attempt < maxRetries
+                    && breaker(request.uri()).getState() != CircuitBreaker.State.OPEN
+                    && retryBudget.tryWithdraw();
+        }
+
+        private void backoff(int attempt) {
+            long delay = RETRY_BACKOFF << attempt;
+            try {
+                Thread.sleep(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UpstreamException(name + " 请求被中断", e);
+            }
+        }
+
+        private CircuitBreaker breaker(URI uri) {
+            return breakers.computeIfAbsent(endpoint(uri), key -> {
+                try {
+                    return breakerFactory.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        /**
+         * 一级路径（如 /history），作为指标标签，不含主机避免回调地址等造成标签膨胀
+         */
+        private static String path(URI uri) {
+            String path = StrUtil.nullToEmpty(uri.getPath());
+            int end = path.indexOf('/', 1);
+            return end > 0 ? path.substring(0, end) : StrUtil.emptyToDefault(path, "/");
+        }
+
+        /**
+         * 接口标识：主机 + 一级路径（如 127.0.0.1:8188/history）
+         */
+        private static String endpoint(URI uri) {
+            String path = StrUtil.nullToEmpty(uri.getPath());
+            int end = path.indexOf('/', 1);
+            return uri.getAuthority() + (end > 0 ? path.substring(0, end) : path);
+        }
+
+        /**
+         * 预热：后台建立连接（含 TLS 握手），首个业务请求不再承担握手开销
+         */
+        public void warmup(String url) {
+            HttpRequest request = request(url).method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, e) -> {
+                        if (e != null) {
+                            log.warn("上游预热失败，名称: {}，{}", name, e.getMessage());
+                        }
+                    });
+        }
+
+        private int openCircuitCount() {
+            return (int) breakers.values().stream().filter(breaker -> breaker.getState() != CircuitBreaker.State.CLOSED).count();
+        }
+
+        public UpstreamStats getStats() {
+            long count = requests.get();
+            List<String> openCircuits = breakers.entrySet().stream()
+                    .filter(entry -> entry.getValue().getState() != CircuitBreaker.State.CLOSED)
+                    .map(Map.Entry::getKey)
+                    .sorted()
+                    .toList();
+            return new UpstreamStats(name, client.version().name(), maxConnections, active.get(), waiting.get(),
+                    count, failures.get(), count == 0 ? 0.0 : totalLatency.get() / 1_000_000.0 / count,
+                    retries.get(), hedges.get(), openCircuits);
+        }
+
+        private void acquire() {
+            waiting.incrementAndGet();
+            try {
+                if (!permits.tryAcquire(readTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    failures.incrementAndGet();
+                    throw new UpstreamException(name + " 连接池已满（最大连接数: " + maxConnections + "）", UpstreamException.POOL_EXHAUSTED);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UpstreamException(name + " 等待连接被中断", e, UpstreamException.CANCELLED);
+            } finally {
+                waiting.decrementAndGet();
+            }
+            active.incrementAndGet();
+        }
+
+        private void release(long start, boolean failed) {
+            active.decrementAndGet();
+            permits.release();
+            requests.incrementAndGet();
+            totalLatency.addAndGet(System.nanoTime() - start);
+            if (failed) {
+                failures.incrementAndGet();
+            }
+        }
+
+        /**
+         * 一次请求：观测、连接名额和熔断器结果，结束时（只生效一次）释放名额、记录结果并结束观测
+         */
+        private final class Lease {
+
+            private final Observation observation;
+            private final RequestReplySenderContext<HttpRequest.Builder, HttpResponse<?>> context;
+            private final AtomicBoolean completed = new AtomicBoolean();
+            // 取得连接名额后设置，此前失败的请求只结束观测
+            private CircuitBreaker breaker;
+            private long start;
+
+            private Lease(Observation observation, RequestReplySenderContext<HttpRequest.Builder, HttpResponse<?>> context) {
+                this.observation = observation;
+                this.context = context;
+            }
+
+            private void acquired(CircuitBreaker breaker) {
+                this.breaker = breaker;
+                this.start = System.nanoTime();
+            }
+
+            private boolean isCompleted() {
+                return completed.get();
+            }
+
+            /**
+             * @param response 收到的响应，未收到时为 null
+             * @param error 失败原因（含读取响应体失败），成功收到并读完响应时为 null
+             */
+            private void complete(HttpResponse<?> response, UpstreamException error) {
+                if (!completed.compareAndSet(false, true)) {
+                    return;
+                }
+                boolean cancelled = error != null && UpstreamException.CANCELLED.equals(error.getOutcome());
+                boolean failed = error != null ? !cancelled : isRetryable(response.statusCode());
+                if (breaker != null) {
+                    release(start, failed);
+                    if (cancelled) {
+                        breaker.onIgnored();
+                    } else if (failed) {
+                        breaker.onFailure();
+                    } else {
+                        breaker.onSuccess();
+                    }
+                }
+                if (response != null) {
+                    context.setResponse(response);
+                }
+                if (error != null) {
+                    observation.error(error);
+                }
+                observation.lowCardinalityKeyValue("status", response == null ? "NONE" : String.valueOf(response.statusCode()))
+                        .lowCardinalityKeyValue("outcome", error != null ? error.getOutcome() : outcome(response.statusCode()))
+                        .stop();
+            }
+        }
+    }
+
+    /**
+     * 响应体流：关闭时结束请求，读取中途超时或断开计为失败；
+     * 到期仍未关闭时由看门狗关闭底层流并结束请求（计为超时），阻塞中的读取随即抛出 HttpTimeoutException
+     */
+    private static final class LeasedInputStream extends FilterInputStream {
+
+        private final Upstream.Lease lease;
+        private final HttpResponse<?> response;
+        private volatile IOException readError;
+        private volatile boolean timedOut;
+        private ScheduledFuture<?> deadline;
+
+        private LeasedInputStream(InputStream in, Upstream.Lease lease, HttpResponse<?> response) {
+            super(in);
+            this.lease = lease;
+            this.response = response;
+        }
+
+        private void expireAfter(ScheduledExecutorService watchdog, long nanos) {
+            deadline = watchdog.schedule(this::expire, Math.max(nanos, 0), TimeUnit.NANOSECONDS);
+        }
+
+        private void expire() {
+            if (lease.isCompleted()) {
+                return;
+            }
+            timedOut = true;
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // 只为唤醒阻塞中的读取
+            }
+            lease.complete(response, new UpstreamException("读取响应体超时", UpstreamException.TIMEOUT));
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return super.read();
+            } catch (IOException e) {
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            try {
+                return super.read(b, off, len);
+            } catch (IOException e) {
+                throw failure(e);
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            try {
+                return super.skip(n);
+            } catch (IOException e) {
+                throw failure(e);
+            }
+        }
+
+        private IOException failure(IOException e) {
+            readError = e;
+            if (!timedOut) {
+                return e;
+            }
+            HttpTimeoutException timeout = new HttpTimeoutException("读取响应体超时");
+            timeout.initCause(e);
+            return timeout;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            try {
+                super.close();
+            } finally {
+                IOException error = readError;
+                // 对冲中落败的请求在读取响应体时被中断取消
+                lease.complete(response, error == null ? null : new UpstreamException("读取响应体失败: " + error.getMessage(), error,
+                        Thread.currentThread().isInterrupted() ? UpstreamException.CANCELLED : UpstreamException.ERROR));
+            }
+        }
+    }
+
+    /**
+     * 替换了响应体流的响应
+     */
+    private record StreamingResponse(HttpResponse<InputStream> delegate, InputStream body) implements HttpResponse<InputStream> {
+
+        @Override
+        public int statusCode() {
+            return delegate.statusCode();
+        }
+
+        @Override
+        public HttpRequest request() {
+            return delegate.request();
+        }
+
+        @Override
+        public Optional<HttpResponse<InputStream>> previousResponse() {
+            return delegate.previousResponse();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return delegate.headers();
+        }
+
+        @Override
+        public Optional<SSLSession> sslSession() {
+            return delegate.sslSession();
+        }
+
+        @Override
+        public URI uri() {
+            return delegate.uri();
+        }
+
+        @Override
+        public HttpClient.Version version() {
+            return delegate.version();
+        }
+    }
+
+    private static String outcome(int status) {
+        return switch (status / 100) {
+            case 1, 2, 3 -> "SUCCESS";
+            case 4 -> "CLIENT_ERROR";
+            case 5 -> "SERVER_ERROR";
+            default -> "UNKNOWN";
+        };
+    }
+
+    private static boolean isRetryable(int status) {
+        return status >= 500 || status == 429;
+    }
+
+    /**
+     * JSON 响应
+     */
+    public static final class JsonResponse<T> {
+
+        private final int status;
+        private final T body;
+        private final String errorBody;
+
+        private JsonResponse(int status, T body, String errorBody) {
+            this.status = status;
+            this.body = body;
+            this.errorBody = errorBody;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public boolean isSuccess() {
+            return status / 100 == 2;
+        }
+
+        /**
+         * 解析后的响应体（仅 2xx）
+         */
+        public T getBody() {
+            return body;
+        }
+
+        /**
+         * 非 2xx 响应的响应体前 1KB
+         */
+        public String getErrorBody() {
+            return errorBody;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.ai.center.service;
+
+import com.ai.center.model.SohuHotNewsResponse;
+import com.ai.center.model.SohuHotNewsResponse.NewsItem;
+import com.ai.center.util.SohuHotNewsClient;
+import com.ai.center.util.SohuNewsIngester;
+import com.ai.center.util.SohuNewsStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 新闻查询：热闻库还没有采集结果时直接请求搜狐，之后只读热闻库
+ */
+class NewsServiceTest {
+
+    @TempDir
+    Path dir;
+
+    private final SohuHotNewsClient sohuHotNewsClient = mock(SohuHotNewsClient.class);
+    private final SohuNewsIngester newsIngester = mock(SohuNewsIngester.class);
+    private final SohuNewsStore newsStore = new SohuNewsStore();
+    private final NewsService newsService = new NewsService();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(newsStore, "storeDir", dir.toString());
+        ReflectionTestUtils.setField(newsStore, "maxItems", 100);
+        newsStore.init();
+        when(newsIngester.isEnabled()).thenReturn(true);
+        ReflectionTestUtils.setField(newsService, "defaultCount", 10);
+        ReflectionTestUtils.setField(newsService, "sohuHotNewsClient", sohuHotNewsClient);
+        ReflectionTestUtils.setField(newsService, "newsIngester", newsIngester);
+        ReflectionTestUtils.setField(newsService, "newsStore", newsStore);
+    }
+
+    @AfterEach
+    void tearDown() {
+        newsStore.close();
+    }
+
+    @Test
+    void fallsBackToSohuUntilTheFirstIngest() {
+        SohuHotNewsResponse live = new SohuHotNewsResponse();
+        when(sohuHotNewsClient.getHotNews(10, null)).thenReturn(live);
+
+        assertThat(newsService.getLatestNews()).isSameAs(live);
+    }
+
+    @Test
+    void readsOnlyTheStoreAfterTheFirstIngest() throws Exception {
+        newsStore.ingest("", List.of(NewsItem.of("央行降准", "", "https://www.sohu.com/a/1")));
+
+        SohuHotNewsResponse response = newsService.getHotNews(5, null);
+
+        assertThat(response.getTotal()).isEqualTo(1);
+        assertThat(response.getData().getCoze_ark_001().getList()).extracting(NewsItem::getTitle).containsExactly("央行降准");
+        verify(sohuHotNewsClient, never()).getHotNews(anyInt(), any());
+    }
+}
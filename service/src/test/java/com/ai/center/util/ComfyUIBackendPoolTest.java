@@ -0,0 +1,181 @@
+package com.ai.center.util;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 节点池：按本地 ComfyUI 桩的队列深度选择节点，节点宕机后切换、恢复后重新启用
+ * 桩不支持 WebSocket，节点始终处于断线状态，队列深度和健康状态均由 /queue 探活得到
+ */
+@SpringJUnitConfig(classes = {ComfyUIBackendPool.class, ComfyUITaskTracker.class, ComfyUITaskJournal.class,
+        UpstreamHttpClient.class, UpstreamTestConfig.class})
+@TestPropertySource(properties = {
+        // 探活由测试手动触发
+        "comfyUi.health-check-interval=3600",
+        "upstream.comfyui.max-retries=0",
+        "upstream.comfyui.connect-timeout=500",
+        // 前一个用例中宕机节点的熔断器不影响后续用例的探活
+        "upstream.comfyui.circuit.open-duration=1"
+})
+class ComfyUIBackendPoolTest {
+
+    private static final StubComfyUI NODE_A = new StubComfyUI();
+    private static final StubComfyUI NODE_B = new StubComfyUI();
+    private static final StubComfyUI NODE_C = new StubComfyUI();
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("comfyUi.base-urls", () -> Stream.of(NODE_A, NODE_B, NODE_C)
+                .map(StubComfyUI::baseUrl).collect(Collectors.joining(",")));
+        registry.add("comfyUi.journal.dir", () -> {
+            try {
+                return Files.createTempDirectory("pool-journal").toString();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Autowired
+    private ComfyUIBackendPool pool;
+
+    @AfterAll
+    static void stopStubs() {
+        Stream.of(NODE_A, NODE_B, NODE_C).forEach(StubComfyUI::stop);
+    }
+
+    @BeforeEach
+    void setUp() {
+        Stream.of(NODE_A, NODE_B, NODE_C).forEach(StubComfyUI::start);
+        NODE_A.queueDepth = 3;
+        NODE_B.queueDepth = 0;
+        NODE_C.queueDepth = 1;
+        probe();
+    }
+
+    @Test
+    void selectsLeastLoadedNode() {
+        assertThat(pool.getBackends()).extracting(ComfyUIBackend::getQueueDepth).containsExactly(3, 0, 1);
+        for (int i = 0; i < 6; i++) {
+            assertThat(pool.select()).isSameAs(backend(NODE_B));
+        }
+        assertThat(pool.select(backend -> backend != backend(NODE_B))).isSameAs(backend(NODE_C));
+        assertThat(pool.select(backend -> false)).isNull();
+    }
+
+    @Test
+    void equallyLoadedNodesAreRotated() {
+        NODE_A.queueDepth = 0;
+        NODE_C.queueDepth = 0;
+        probe();
+
+        assertThat(Stream.generate(pool::select).limit(6).map(ComfyUIBackend::getId).distinct())
+                .hasSize(3);
+    }
+
+    @Test
+    void failsOverWhenNodeGoesDownAndBackWhenItRecovers() {
+        NODE_B.stop();
+        for (int i = 0; i < 3; i++) {
+            probe();
+        }
+        assertThat(backend(NODE_B).isHealthy()).isFalse();
+        assertThat(pool.select()).isSameAs(backend(NODE_C));
+
+        NODE_B.start();
+        probe();
+        assertThat(backend(NODE_B).isHealthy()).isTrue();
+        assertThat(pool.select()).isSameAs(backend(NODE_B));
+    }
+
+    @Test
+    void fallsBackToAllNodesWhenNoneIsHealthy() {
+        Stream.of(NODE_A, NODE_B, NODE_C).forEach(StubComfyUI::stop);
+        for (int i = 0; i < 3; i++) {
+            probe();
+        }
+        assertThat(pool.getBackends()).noneMatch(ComfyUIBackend::isHealthy);
+        assertThat(pool.select()).isNotNull();
+    }
+
+    private void probe() {
+        ReflectionTestUtils.invokeMethod(pool, "probeBackends");
+    }
+
+    private ComfyUIBackend backend(StubComfyUI node) {
+        return pool.getBackends().stream()
+                .filter(backend -> backend.getBaseUrl().equals(node.baseUrl()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    /**
+     * 只实现 /queue 的 ComfyUI 桩，可停止后在同一端口重新启动
+     */
+    private static final class StubComfyUI {
+
+        private final int port;
+        private volatile int queueDepth;
+        private HttpServer server;
+
+        private StubComfyUI() {
+            start();
+            port = server.getAddress().getPort();
+        }
+
+        private synchronized void start() {
+            if (server != null) {
+                return;
+            }
+            try {
+                server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            server.createContext("/queue", exchange -> {
+                String running = queueDepth > 0 ? "[[0, \"running\"]]" : "[]";
+                String pending = "[" + String.join(",", Collections.nCopies(Math.max(0, queueDepth - 1), "[1, \"pending\"]")) + "]";
+                byte[] body = ("{\"queue_running\": " + running + ", \"queue_pending\": " + pending + "}")
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+        }
+
+        private synchronized void stop() {
+            if (server != null) {
+                server.stop(0);
+                server = null;
+            }
+        }
+
+        private String baseUrl() {
+            return "http://127.0.0.1:" + port;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.ai.center.util;
+
+import com.ai.center.model.ComfyUIImage;
+import com.ai.center.model.TaskRecord;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 任务日志：重启回放、压缩、回调去重
+ */
+class ComfyUITaskJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private ComfyUITaskJournal journal;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        if (journal != null) {
+            journal.stop();
+        }
+    }
+
+    @Test
+    void replaysTaskStateAfterRestart() throws Exception {
+        journal = open();
+        journal.submit("t1", Map.of("prompt", "cat"), "INTERACTIVE", "client-a");
+        journal.dispatch("t1", "node-1", "u1");
+        journal.start("t1");
+        journal.progress("t1", 50.0);
+        journal.submit("t2", Map.of("prompt", "dog"), "BATCH", "client-b");
+        journal.dispatch("t2", "node-2", "t2");
+        journal.complete("t2", List.of(new ComfyUIImage("dog.png", "", "output")), List.of("/img/dog.png"), null);
+
+        journal = restart();
+
+        TaskRecord running = journal.find("t1");
+        assertThat(running.getStatus()).isEqualTo("running");
+        assertThat(running.getBackendId()).isEqualTo("node-1");
+        assertThat(running.getUpstreamPromptId()).isEqualTo("u1");
+        assertThat(running.getProgress()).isEqualTo(50.0);
+        assertThat(running.getParams()).containsEntry("prompt", "cat");
+
+        TaskRecord done = journal.find("t2");
+        assertThat(done.getStatus()).isEqualTo("success");
+        assertThat(done.getImages()).extracting(ComfyUIImage::getFilename).containsExactly("dog.png");
+        assertThat(done.getImageUrls()).containsExactly("/img/dog.png");
+        assertThat(done.getCompletedAt()).isPositive();
+
+        assertThat(journal.unfinished()).extracting(TaskRecord::getPromptId).containsExactly("t1");
+    }
+
+    @Test
+    void failsTasksStillQueuedLocallyAtRestart() throws Exception {
+        journal = open();
+        journal.submit("queued", Map.of(), "INTERACTIVE", "client-a");
+
+        journal = restart();
+
+        TaskRecord record = journal.find("queued");
+        assertThat(record.getStatus()).isEqualTo("error");
+        assertThat(record.getError()).isEqualTo("服务重启，任务未提交到节点");
+        assertThat(journal.unfinished()).isEmpty();
+    }
+
+    @Test
+    void compactsToOneSnapshotPerTaskOnStart() throws Exception {
+        journal = open();
+        journal.submit("t1", Map.of(), "INTERACTIVE", "client-a");
+        journal.dispatch("t1", "node-1", "t1");
+        for (int i = 1; i <= 20; i++) {
+            journal.progress("t1", i * 5.0);
+        }
+        journal.stop();
+        assertThat(lines()).hasSizeGreaterThan(20);
+
+        journal = open();
+
+        List<String> lines = lines();
+        assertThat(lines).hasSize(1);
+        assertThat(JSON.parseObject(lines.getFirst()).getString("op")).isEqualTo("snapshot");
+        assertThat(journal.find("t1").getProgress()).isEqualTo(100.0);
+    }
+
+    @Test
+    void callbackReplayedAfterSnapshotIsNotDuplicated() throws Exception {
+        journal = open();
+        journal.submit("t1", Map.of(), "INTERACTIVE", "client-a");
+        journal.dispatch("t1", "node-1", "t1");
+        assertThat(journal.callback("t1", "https://example.com/hook")).isTrue();
+        assertThat(journal.callback("t1", "https://example.com/hook")).isFalse();
+        journal = restart();
+
+        // 压缩快照已包含回调地址，随后又追加了排队中的同一回调事件
+        append(new JSONObject().fluentPut("op", "callback").fluentPut("id", "t1")
+                .fluentPut("t", System.currentTimeMillis()).fluentPut("url", "https://example.com/hook").toJSONString());
+        journal = restart();
+
+        assertThat(journal.find("t1").getCallbackUrls()).containsExactly("https://example.com/hook");
+    }
+
+    @Test
+    void dropsExpiredTasksAndSkipsTruncatedLines() throws Exception {
+        long expired = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(200);
+        TaskRecord old = new TaskRecord();
+        old.setPromptId("old");
+        old.setStatus("success");
+        old.setCreatedAt(expired);
+        old.setCompletedAt(expired);
+        Files.createDirectories(dir);
+        append(new JSONObject().fluentPut("op", "snapshot").fluentPut("record", old).toJSONString());
+        append(new JSONObject().fluentPut("op", "submit").fluentPut("id", "fresh").fluentPut("t", System.currentTimeMillis())
+                .fluentPut("params", Map.of()).toJSONString());
+        append(new JSONObject().fluentPut("op", "dispatch").fluentPut("id", "fresh")
+                .fluentPut("backendId", "node-1").fluentPut("t", System.currentTimeMillis()).toJSONString());
+        // 写入中途进程退出留下的不完整行
+        append("{\"op\":\"progress\",\"id\":\"fresh\",\"t\":");
+
+        journal = open();
+
+        assertThat(journal.find("old")).isNull();
+        assertThat(journal.find("fresh").getBackendId()).isEqualTo("node-1");
+        assertThat(lines()).hasSize(1);
+    }
+
+    private ComfyUITaskJournal open() throws Exception {
+        ComfyUITaskJournal opened = new ComfyUITaskJournal();
+        ReflectionTestUtils.setField(opened, "journalDir", dir.toString());
+        ReflectionTestUtils.setField(opened, "retentionHours", 168L);
+        ReflectionTestUtils.setField(opened, "compactIntervalMinutes", 60L);
+        opened.start();
+        return opened;
+    }
+
+    private ComfyUITaskJournal restart() throws Exception {
+        journal.stop();
+        return open();
+    }
+
+    private List<String> lines() throws Exception {
+        return Files.readAllLines(dir.resolve("tasks.jsonl"), StandardCharsets.UTF_8).stream()
+                .filter(line -> !line.isBlank())
+                .toList();
+    }
+
+    private void append(String line) throws Exception {
+        Files.writeString(dir.resolve("tasks.jsonl"), line + System.lineSeparator(), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,148 @@
+package com.ai.center.util;
+
+import com.ai.center.model.TaskPriority;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 本地调度器：优先级顺序、同优先级内按调用方轮转、队列容量
+ * 单节点且每节点只允许一个在途任务，任务逐个出队，出队顺序即提交顺序
+ */
+@SpringJUnitConfig(classes = {ComfyUITaskScheduler.class, ComfyUIBackendPool.class, ComfyUITaskTracker.class,
+        ComfyUITaskJournal.class, UpstreamHttpClient.class, UpstreamTestConfig.class})
+@TestPropertySource(properties = {
+        // 节点不可达，调度器只用到节点的提交名额
+        "comfyUi.base-url=http://127.0.0.1:9",
+        "comfyUi.health-check-interval=3600",
+        "comfyUi.scheduler.max-inflight-per-backend=1",
+        "comfyUi.scheduler.queue-capacity=5"
+})
+class ComfyUITaskSchedulerTest {
+
+    @DynamicPropertySource
+    static void journalDir(DynamicPropertyRegistry registry) {
+        registry.add("comfyUi.journal.dir", () -> {
+            try {
+                return Files.createTempDirectory("scheduler-journal").toString();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Autowired
+    private ComfyUITaskScheduler scheduler;
+
+    @Autowired
+    private ComfyUITaskTracker taskTracker;
+
+    @Autowired
+    private ComfyUIBackendPool backendPool;
+
+    private final BlockingQueue<String> dispatched = new LinkedBlockingQueue<>();
+    private final List<ComfyUITaskScheduler.ScheduledTask> admitted = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        scheduler.setDispatcher((task, backend) -> dispatched.add(task.getPromptId()));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        // 先取消排队中的任务，再结束已提交的任务，释放节点名额
+        List<String> submitted = new ArrayList<>();
+        for (ComfyUITaskScheduler.ScheduledTask task : admitted) {
+            if (!scheduler.cancel(task.getPromptId(), "测试结束")) {
+                submitted.add(task.getPromptId());
+            }
+        }
+        submitted.forEach(promptId -> taskTracker.fail(promptId, "测试结束"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (backendPool.getDefault().getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(backendPool.getDefault().getInFlight()).isZero();
+    }
+
+    @Test
+    void dispatchesByPriorityThenRoundRobinAcrossClients() throws InterruptedException {
+        String blocker = admit(TaskPriority.INTERACTIVE, "a");
+        assertThat(nextDispatched()).isEqualTo(blocker);
+
+        String batchA = admit(TaskPriority.BATCH, "a");
+        String batchB = admit(TaskPriority.BATCH, "b");
+        String interactiveA1 = admit(TaskPriority.INTERACTIVE, "a");
+        String interactiveA2 = admit(TaskPriority.INTERACTIVE, "a");
+        String interactiveB = admit(TaskPriority.INTERACTIVE, "b");
+        assertThat(dispatched).isEmpty();
+
+        List<String> order = new ArrayList<>();
+        String current = blocker;
+        for (int i = 0; i < 5; i++) {
+            taskTracker.fail(current, "完成");
+            current = nextDispatched();
+            order.add(current);
+        }
+
+        assertThat(order).containsExactly(interactiveA1, interactiveB, interactiveA2, batchA, batchB);
+    }
+
+    @Test
+    void rejectsWhenLocalQueueIsFull() throws InterruptedException {
+        String blocker = admit(TaskPriority.INTERACTIVE, "a");
+        assertThat(nextDispatched()).isEqualTo(blocker);
+        for (int i = 0; i < 5; i++) {
+            admit(TaskPriority.BATCH, "client-" + i);
+        }
+
+        assertThatThrownBy(() -> admit(TaskPriority.INTERACTIVE, "a")).isInstanceOf(TaskRejectedException.class);
+        assertThat(scheduler.getStatus().getQueued()).isEqualTo(5);
+        assertThat(scheduler.getStatus().getRejected()).isPositive();
+    }
+
+    @Test
+    void cancelledTaskIsNeverDispatched() throws InterruptedException {
+        String blocker = admit(TaskPriority.INTERACTIVE, "a");
+        assertThat(nextDispatched()).isEqualTo(blocker);
+        String cancelled = admit(TaskPriority.INTERACTIVE, "a");
+        String kept = admit(TaskPriority.INTERACTIVE, "b");
+
+        assertThat(scheduler.cancel(cancelled, "用户取消")).isTrue();
+        assertThat(taskTracker.getStatus(cancelled).getError()).isEqualTo("用户取消");
+        taskTracker.fail(blocker, "完成");
+
+        assertThat(nextDispatched()).isEqualTo(kept);
+        assertThat(dispatched.poll(200, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    private String admit(TaskPriority priority, String clientKey) {
+        ComfyUITaskScheduler.ScheduledTask task = scheduler.admit(Map.of(), priority, clientKey);
+        admitted.add(task);
+        return task.getPromptId();
+    }
+
+    private String nextDispatched() throws InterruptedException {
+        String promptId = dispatched.poll(5, TimeUnit.SECONDS);
+        assertThat(promptId).as("等待任务出队").isNotNull();
+        return promptId;
+    }
+}
@@ -0,0 +1,298 @@
+package com.ai.center.util;
+
+import com.ai.center.model.ComfyUIImage;
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 任务完成回调：向本地接收方投递，校验签名、失败重试、不跟随重定向，以及内部地址限制和连接地址固定
+ */
+@SpringJUnitConfig(classes = {ComfyUIWebhookDispatcher.class, ComfyUITaskTracker.class, ComfyUITaskJournal.class,
+        UpstreamHttpClient.class, UpstreamTestConfig.class})
+@TestPropertySource(properties = {
+        "comfyUi.webhook.secret=" + ComfyUIWebhookDispatcherTest.SECRET,
+        "comfyUi.webhook.max-attempts=3",
+        "comfyUi.webhook.public-base-url=https://tool.example.com/",
+        // 接收方在本机，须列入白名单
+        "comfyUi.webhook.allowed-hosts=127.0.0.1",
+        "upstream.webhook.follow-redirects=false"
+})
+class ComfyUIWebhookDispatcherTest {
+
+    static final String SECRET = "test-secret";
+
+    private static final Receiver RECEIVER = new Receiver();
+
+    @DynamicPropertySource
+    static void journalDir(DynamicPropertyRegistry registry) {
+        registry.add("comfyUi.journal.dir", () -> {
+            try {
+                return Files.createTempDirectory("webhook-journal").toString();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Autowired
+    private ComfyUIWebhookDispatcher dispatcher;
+
+    @Autowired
+    private ComfyUITaskTracker taskTracker;
+
+    @Autowired
+    private ComfyUITaskJournal taskJournal;
+
+    @Autowired
+    private UpstreamHttpClient upstreamHttpClient;
+
+    @AfterAll
+    static void stopReceiver() {
+        RECEIVER.server.stop(0);
+    }
+
+    @BeforeEach
+    void setUp() {
+        RECEIVER.requests.clear();
+        RECEIVER.statuses.clear();
+    }
+
+    @Test
+    void deliversSignedCompletionPayload() throws Exception {
+        String promptId = completedTask();
+        long before = System.currentTimeMillis() / 1000;
+
+        dispatcher.register(promptId, RECEIVER.url("/hook"));
+
+        Delivery delivery = RECEIVER.next();
+        assertThat(delivery.path).isEqualTo("/hook");
+        assertThat(delivery.id).isEqualTo(promptId);
+        assertThat(delivery.attempt).isEqualTo("1");
+        assertThat(Long.parseLong(delivery.timestamp)).isBetween(before, before + 60);
+        assertThat(delivery.signature).isEqualTo("sha256=" + hmac(delivery.timestamp + "." + delivery.body));
+
+        JSONObject payload = JSON.parseObject(delivery.body);
+        assertThat(payload.getString("event")).isEqualTo("task.completed");
+        assertThat(payload.getString("promptId")).isEqualTo(promptId);
+        assertThat(payload.getString("status")).isEqualTo("success");
+        assertThat(payload.getList("images", String.class)).containsExactly("cat.png");
+        assertThat(payload.getList("imageUrls", String.class))
+                .containsExactly("https://tool.example.com/comfyui/image/node-1/cat.png");
+        awaitNoPending();
+    }
+
+    @Test
+    void retriesServerErrorsWithTheSameSignedBody() throws Exception {
+        RECEIVER.statuses.addAll(List.of(500, 503));
+        String promptId = completedTask();
+
+        dispatcher.register(promptId, RECEIVER.url("/hook"));
+
+        List<Delivery> deliveries = List.of(RECEIVER.next(), RECEIVER.next(), RECEIVER.next());
+        assertThat(deliveries).extracting(delivery -> delivery.attempt).containsExactly("1", "2", "3");
+        assertThat(deliveries).extracting(delivery -> delivery.body).containsOnly(deliveries.getFirst().body);
+        for (Delivery delivery : deliveries) {
+            assertThat(delivery.signature).isEqualTo("sha256=" + hmac(delivery.timestamp + "." + delivery.body));
+        }
+        awaitNoPending();
+        assertThat(RECEIVER.requests.poll(1500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void givesUpOnClientErrorsAndRedirectsWithoutFollowingThem() throws Exception {
+        RECEIVER.statuses.add(302);
+        dispatcher.register(completedTask(), RECEIVER.url("/moved"));
+
+        assertThat(RECEIVER.next().path).isEqualTo("/moved");
+        awaitNoPending();
+        assertThat(RECEIVER.requests.poll(1500, TimeUnit.MILLISECONDS)).as("重定向目标不应收到请求").isNull();
+
+        RECEIVER.statuses.add(400);
+        dispatcher.register(completedTask(), RECEIVER.url("/bad"));
+        assertThat(RECEIVER.next().path).isEqualTo("/bad");
+        awaitNoPending();
+        assertThat(RECEIVER.requests.poll(1500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void registeringTheSameUrlTwiceDeliversOnce() throws Exception {
+        String promptId = completedTask();
+
+        dispatcher.register(promptId, RECEIVER.url("/hook"));
+        dispatcher.register(promptId, RECEIVER.url("/hook"));
+
+        assertThat(RECEIVER.next().id).isEqualTo(promptId);
+        awaitNoPending();
+        assertThat(RECEIVER.requests.poll(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void rejectsHostsOutsideTheWhitelist() {
+        assertThatCode(() -> dispatcher.validate(RECEIVER.url("/hook"))).doesNotThrowAnyException();
+        assertThatThrownBy(() -> dispatcher.validate("http://example.com/hook"))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> dispatcher.validate("ftp://127.0.0.1/hook"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void plainHttpConnectsToThePinnedAddressWithoutResolvingAgain() throws Exception {
+        // rebind.invalid 无法解析：请求能到达接收方说明连接的是校验时固定的地址，而不是重新解析的结果
+        String authority = "rebind.invalid:" + RECEIVER.port();
+        Map<String, InetSocketAddress> pinned = pinnedAddresses();
+        pinned.put(authority, new InetSocketAddress(InetAddress.getLoopbackAddress(), RECEIVER.port()));
+        UpstreamHttpClient.Upstream upstream = upstreamHttpClient.upstream("webhook");
+
+        HttpResponse<Void> response = upstream.send(upstream.request("http://" + authority + "/pinned")
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding());
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        Delivery delivery = RECEIVER.next();
+        assertThat(delivery.path).isEqualTo("/pinned");
+        assertThat(delivery.host).isEqualTo(authority);
+
+        // 没有校验记录的 http 地址在发出前被拒绝，不占用连接名额
+        assertThatThrownBy(() -> upstream.send(upstream.request("http://unpinned.invalid:" + RECEIVER.port() + "/x")
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.discarding()))
+                .isInstanceOf(UpstreamException.class);
+        assertThat(upstream.getStats().getActive()).isZero();
+        assertThat(RECEIVER.requests.poll(300, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void rejectsInternalAddressesWithoutWhitelist() {
+        ComfyUIWebhookDispatcher open = new ComfyUIWebhookDispatcher();
+        ReflectionTestUtils.setField(open, "secret", SECRET);
+        ReflectionTestUtils.setField(open, "maxAttempts", 1);
+        ReflectionTestUtils.setField(open, "concurrency", 1);
+        ReflectionTestUtils.setField(open, "queueCapacity", 1);
+        ReflectionTestUtils.setField(open, "publicBaseUrl", "");
+        ReflectionTestUtils.setField(open, "allowedHosts", "");
+        ReflectionTestUtils.setField(open, "upstreamHttpClient", upstreamHttpClient);
+        open.validateConfig();
+
+        for (String url : List.of("http://127.0.0.1:8080/hook", "http://localhost/hook", "http://10.1.2.3/hook",
+                "http://192.168.0.10/hook", "http://169.254.169.254/latest/meta-data", "http://0.0.0.0/hook",
+                "http://[::1]/hook", "http://[fd00::1]/hook")) {
+            assertThatThrownBy(() -> open.validate(url)).as(url).isInstanceOf(IllegalArgumentException.class);
+        }
+        assertThatCode(() -> open.validate("https://93.184.216.34/hook")).doesNotThrowAnyException();
+    }
+
+    /**
+     * 创建一个已成功完成的任务
+     */
+    private String completedTask() {
+        String promptId = UUID.randomUUID().toString();
+        taskJournal.submit(promptId, Map.of(), "INTERACTIVE", "client-a");
+        taskTracker.register(promptId, "node-1");
+        taskTracker.completeCached(promptId, List.of(new ComfyUIImage("cat.png", "", "output")),
+                List.of("/comfyui/image/node-1/cat.png"));
+        return promptId;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, InetSocketAddress> pinnedAddresses() {
+        return (Map<String, InetSocketAddress>) ReflectionTestUtils.getField(dispatcher, "pinnedAddresses");
+    }
+
+    private void awaitNoPending() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (dispatcher.getPending() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(dispatcher.getPending()).isZero();
+    }
+
+    private static String hmac(String content) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return HexFormat.of().formatHex(mac.doFinal(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private record Delivery(String path, String host, String id, String timestamp, String signature, String attempt, String body) {
+    }
+
+    /**
+     * 本地回调接收方：记录每次请求，按预设顺序返回状态码（用完后返回 200）
+     */
+    private static final class Receiver {
+
+        private final HttpServer server;
+        private final BlockingQueue<Delivery> requests = new LinkedBlockingQueue<>();
+        private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+
+        private Receiver() {
+            try {
+                server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            server.createContext("/", exchange -> {
+                String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                requests.add(new Delivery(exchange.getRequestURI().getPath(),
+                        exchange.getRequestHeaders().getFirst("Host"),
+                        exchange.getRequestHeaders().getFirst("X-Webhook-Id"),
+                        exchange.getRequestHeaders().getFirst("X-Webhook-Timestamp"),
+                        exchange.getRequestHeaders().getFirst("X-Webhook-Signature"),
+                        exchange.getRequestHeaders().getFirst("X-Webhook-Attempt"),
+                        body));
+                Integer status = statuses.poll();
+                if (status != null && status == 302) {
+                    exchange.getResponseHeaders().set("Location", url("/redirected"));
+                }
+                exchange.sendResponseHeaders(status == null ? 200 : status, -1);
+                exchange.close();
+            });
+            server.start();
+        }
+
+        private String url(String path) {
+            return "http://127.0.0.1:" + port() + path;
+        }
+
+        private int port() {
+            return server.getAddress().getPort();
+        }
+
+        private Delivery next() throws InterruptedException {
+            Delivery delivery = requests.poll(10, TimeUnit.SECONDS);
+            assertThat(delivery).as("等待回调请求").isNotNull();
+            return delivery;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.ai.center.util;
+
+import com.ai.center.model.SohuHotNewsResponse.NewsItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 本地热闻库：关键词索引、全文匹配及其缓存失效、重启回放、是否已有采集结果
+ */
+class SohuNewsStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private SohuNewsStore store;
+
+    @AfterEach
+    void tearDown() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    void queriesByIngestedKeywordAndByTextMatch() throws Exception {
+        store = open();
+        store.ingest("", List.of(
+                NewsItem.of("央行降准", "释放流动性", "https://www.sohu.com/a/1"),
+                NewsItem.of("暴雨预警", "多地降雨", "https://www.sohu.com/a/2")));
+        store.ingest("天气", List.of(NewsItem.of("暴雨预警", "多地降雨", "https://www.sohu.com/a/2#comment")));
+
+        assertThat(titles(store.query(10, ""))).containsExactly("央行降准", "暴雨预警");
+        assertThat(titles(store.query(10, "天气"))).containsExactly("暴雨预警");
+        assertThat(titles(store.query(10, "降"))).containsExactly("央行降准", "暴雨预警");
+        assertThat(store.query(1, "降").total()).isEqualTo(2);
+        assertThat(store.query(10, "不存在").total()).isZero();
+    }
+
+    @Test
+    void textMatchReflectsLaterIngests() throws Exception {
+        store = open();
+        store.ingest("", List.of(NewsItem.of("暴雨预警", "", "https://www.sohu.com/a/1")));
+        assertThat(titles(store.query(10, "暴雨"))).containsExactly("暴雨预警");
+
+        store.ingest("", List.of(NewsItem.of("暴雨过后", "", "https://www.sohu.com/a/2")));
+
+        assertThat(titles(store.query(10, "暴雨"))).containsExactly("暴雨过后", "暴雨预警");
+    }
+
+    @Test
+    void readyOnlyAfterAnIngestOrReplayedNews() throws Exception {
+        store = open();
+        assertThat(store.isReady()).isFalse();
+
+        store.ingest("", List.of(NewsItem.of("央行降准", "", "https://www.sohu.com/a/1")));
+        assertThat(store.isReady()).isTrue();
+        store.close();
+
+        store = open();
+        assertThat(store.isReady()).isTrue();
+    }
+
+    @Test
+    void replaysNewsAndKeywordsAfterRestart() throws Exception {
+        store = open();
+        store.ingest("", List.of(NewsItem.of("央行降准", "", "https://www.sohu.com/a/1")));
+        store.ingest("财经", List.of(NewsItem.of("央行降准", "", "https://www.sohu.com/a/1")));
+        store.close();
+
+        store = open();
+
+        assertThat(store.size()).isEqualTo(1);
+        assertThat(store.keywords()).containsExactly("财经");
+        assertThat(titles(store.query(10, "财经"))).containsExactly("央行降准");
+    }
+
+    private SohuNewsStore open() throws Exception {
+        SohuNewsStore opened = new SohuNewsStore();
+        ReflectionTestUtils.setField(opened, "storeDir", dir.toString());
+        ReflectionTestUtils.setField(opened, "maxItems", 100);
+        opened.init();
+        return opened;
+    }
+
+    private static List<String> titles(SohuNewsStore.Page page) {
+        return page.items().stream().map(NewsItem::getTitle).toList();
+    }
+}
@@ -0,0 +1,222 @@
+package com.ai.center.util;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 上游客户端：对本地桩服务验证读取超时覆盖整个响应体，观测覆盖响应体读取
+ * /stall 返回响应头和部分响应体后停住，直到测试结束；/slow 发出响应头后延迟一段时间再发完响应体；
+ * /flaky 第一个请求稍慢后返回 503，之后的请求更慢但返回 200
+ */
+@SpringJUnitConfig(classes = {UpstreamHttpClient.class, UpstreamTestConfig.class})
+@TestPropertySource(properties = {
+        "upstream.stall.read-timeout=300",
+        "upstream.stall.max-connections=1",
+        "upstream.stall.max-retries=0",
+        "upstream.hedge.hedge-delay=100",
+        "upstream.hedge.max-retries=0"
+})
+class UpstreamHttpClientTest {
+
+    private static final Stub STUB = new Stub();
+
+    @Autowired
+    private UpstreamHttpClient upstreamHttpClient;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @TempDir
+    Path dir;
+
+    @AfterAll
+    static void stopStub() {
+        STUB.stop();
+    }
+
+    @Test
+    void stalledJsonBodyTimesOutAndReleasesTheConnection() {
+        UpstreamHttpClient.Upstream upstream = upstreamHttpClient.upstream("stall");
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> upstream.getJson(STUB.url("/stall"), JSONObject.class))
+                .isInstanceOfSatisfying(UpstreamException.class,
+                        e -> assertThat(e.getOutcome()).isEqualTo(UpstreamException.TIMEOUT));
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+
+        // 唯一的连接名额已释放，后续请求不会因连接池已满失败
+        UpstreamHttpClient.JsonResponse<JSONObject> response = upstream.getJson(STUB.url("/ok"), JSONObject.class);
+        assertThat(response.getBody().getBooleanValue("ok")).isTrue();
+        assertThat(upstream.getStats().getActive()).isZero();
+    }
+
+    @Test
+    void observationCoversTheBodyAndRecordsBodyTimeouts() {
+        UpstreamHttpClient.Upstream observed = upstreamHttpClient.upstream("observed");
+        UpstreamHttpClient.JsonResponse<JSONObject> response = observed.getJson(STUB.url("/slow"), JSONObject.class);
+        assertThat(response.getBody().getBooleanValue("ok")).isTrue();
+
+        Timer slow = meterRegistry.get("upstream.requests")
+                .tags("upstream", "observed", "endpoint", "/slow", "status", "200", "outcome", "SUCCESS").timer();
+        assertThat(slow.count()).isEqualTo(1);
+        assertThat(slow.totalTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(Stub.SLOW_BODY_MILLIS);
+
+        UpstreamHttpClient.Upstream upstream = upstreamHttpClient.upstream("stall");
+        assertThatThrownBy(() -> upstream.getJson(STUB.url("/stall"), JSONObject.class)).isInstanceOf(UpstreamException.class);
+        assertThat(meterRegistry.get("upstream.requests")
+                .tags("upstream", "stall", "endpoint", "/stall", "status", "200", "outcome", "TIMEOUT").timer().count())
+                .isPositive();
+        assertThat(meterRegistry.find("upstream.requests")
+                .tags("upstream", "stall", "endpoint", "/stall", "outcome", "SUCCESS").timer()).isNull();
+    }
+
+    @Test
+    void hedgeWaitsForTheOtherAttemptWhenOneFailsWithServerError() {
+        UpstreamHttpClient.Upstream upstream = upstreamHttpClient.upstream("hedge");
+
+        // 首个请求 150ms 后返回 503，对冲请求在 100ms 时发出、再过 200ms 返回 200
+        UpstreamHttpClient.JsonResponse<JSONObject> response = upstream.getJson(STUB.url("/flaky"), JSONObject.class);
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(upstream.getStats().getHedges()).isEqualTo(1);
+        assertThat(STUB.flaky.get()).isEqualTo(2);
+    }
+
+    @Test
+    void unclosedStreamIsReleasedAtTheDeadline() throws Exception {
+        UpstreamHttpClient.Upstream upstream = upstreamHttpClient.upstream("stall");
+        HttpResponse<InputStream> response = upstream.send(upstream.request(STUB.url("/stall")).GET().build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        assertThat(response.statusCode()).isEqualTo(200);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (upstream.getStats().getActive() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(upstream.getStats().getActive()).isZero();
+        try (InputStream body = response.body()) {
+            assertThatThrownBy(body::readAllBytes).isInstanceOf(HttpTimeoutException.class);
+        }
+    }
+
+    @Test
+    void stalledFileDownloadIsBoundedByTheRequestTimeout() {
+        UpstreamHttpClient.Upstream upstream = upstreamHttpClient.upstream("stall");
+
+        long start = System.nanoTime();
+        assertThatThrownBy(() -> upstream.send(upstream.request(STUB.url("/stall"))
+                        .timeout(Duration.ofMillis(500)).GET().build(),
+                HttpResponse.BodyHandlers.ofFile(dir.resolve("image.png"))))
+                .isInstanceOfSatisfying(UpstreamException.class,
+                        e -> assertThat(e.getOutcome()).isEqualTo(UpstreamException.TIMEOUT));
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+        assertThat(upstream.getStats().getActive()).isZero();
+    }
+
+    /**
+     * 本地桩服务，每个请求一个线程，停住的请求不影响其他请求
+     */
+    private static final class Stub {
+
+        private static final long SLOW_BODY_MILLIS = 400;
+
+        private final HttpServer server;
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final AtomicInteger flaky = new AtomicInteger();
+
+        private Stub() {
+            try {
+                server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/ok", exchange -> respond(exchange, "{\"ok\":true}"));
+            server.createContext("/flaky", exchange -> {
+                boolean first = flaky.incrementAndGet() == 1;
+                try {
+                    Thread.sleep(first ? 150 : 200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (first) {
+                    exchange.sendResponseHeaders(503, -1);
+                    exchange.close();
+                } else {
+                    respond(exchange, "{\"ok\":true}");
+                }
+            });
+            server.createContext("/slow", exchange -> {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write("{\"ok\":".getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    Thread.sleep(SLOW_BODY_MILLIS);
+                    out.write("true}".getBytes(StandardCharsets.UTF_8));
+                } catch (InterruptedException ignored) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            server.createContext("/stall", exchange -> {
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                // 分块响应：先发出响应头和部分响应体，之后不再发送
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write("{\"ok\":".getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    released.await(30, TimeUnit.SECONDS);
+                } catch (InterruptedException | IOException ignored) {
+                    // 客户端已断开
+                }
+            });
+            server.start();
+        }
+
+        private static void respond(HttpExchange exchange, String body) throws IOException {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+
+        private String url(String path) {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+        }
+
+        private void stop() {
+            released.countDown();
+            server.stop(0);
+        }
+    }
+}